@@ -0,0 +1,76 @@
+package benchmark;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import server.Server;
+import server.ServerConfig;
+
+/**
+ * Measures put throughput against the leader for a range of batch sizes. Many client threads write
+ * at once so that operations queue up and can be proposed together in one Paxos decision.
+ *
+ * Usage: java benchmark.BatchingBenchmark [clients] [operationsPerClient] [delayMillis]
+ */
+public class BatchingBenchmark {
+    private static final int[] BATCH_SIZES = {1, 4, 16, 64};
+
+    /**
+     * Runs one cluster per batch size and prints one CSV line per batch size.
+     */
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int operationsPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        long delayMillis = args.length > 2 ? Long.parseLong(args[2]) : 1;
+
+        System.out.println("batch_size,operations,committed,ops_per_sec,p50_ms,p99_ms");
+        for (int batchSize : BATCH_SIZES) {
+            ServerConfig config = new ServerConfig().setBatchSize(batchSize);
+            InProcessCluster cluster = new InProcessCluster(5, config, (fromId, peer) -> new DelayedPeer(peer, delayMillis));
+            Server leader = cluster.node(0);
+            leader.put("warmup-" + batchSize, "value");
+
+            ExecutorService executor = Executors.newFixedThreadPool(clients);
+            List<Future<LatencyRecorder>> results = new ArrayList<>(clients);
+            long start = System.nanoTime();
+            for (int client = 0; client < clients; client++) {
+                String prefix = batchSize + "-" + client + "-";
+                results.add(executor.submit(() -> runClient(leader, prefix, operationsPerClient)));
+            }
+            LatencyRecorder recorder = new LatencyRecorder();
+            for (Future<LatencyRecorder> result : results) {
+                recorder.merge(result.get());
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            executor.shutdown();
+
+            int committed = 0;
+            for (int client = 0; client < clients; client++) {
+                for (int i = 0; i < operationsPerClient; i++) {
+                    if (leader.get(batchSize + "-" + client + "-" + i) != null) {
+                        committed += 1;
+                    }
+                }
+            }
+            System.out.printf("%d,%d,%d,%.1f,%.3f,%.3f%n", batchSize, recorder.count(), committed,
+                    committed / seconds, recorder.percentileMillis(50), recorder.percentileMillis(99));
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Writes distinct keys one after the other, recording the latency of each put.
+     */
+    private static LatencyRecorder runClient(Server leader, String prefix, int operations) throws RemoteException {
+        LatencyRecorder recorder = new LatencyRecorder();
+        for (int i = 0; i < operations; i++) {
+            long start = System.nanoTime();
+            leader.put(prefix + i, "value");
+            recorder.record(System.nanoTime() - start);
+        }
+        return recorder;
+    }
+}
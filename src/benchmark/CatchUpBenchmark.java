@@ -0,0 +1,80 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import server.ReadResult;
+import server.Server;
+import server.ServerConfig;
+
+/**
+ * Measures how long a replica cut off from the others takes to catch up once it is reconnected, on
+ * servers that take no snapshots and only keep a window of the latest decisions. The replica misses more
+ * decisions than the window holds, so it can only catch up from a snapshot of the store a peer takes
+ * for it. The run fails if the replica does not reach the others within the time limit.
+ *
+ * Usage: java benchmark.CatchUpBenchmark [missedWrites] [retainedSlots] [timeoutSeconds]
+ */
+public class CatchUpBenchmark {
+    // The replica cut off from the others; it never leads since server 0 takes the leadership first
+    private static final int LAGGING = 4;
+
+    /**
+     * Cuts a replica off, writes while it is away, reconnects it and prints one CSV line once it caught up.
+     */
+    public static void main(String[] args) throws Exception {
+        int missedWrites = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        long retainedSlots = args.length > 1 ? Long.parseLong(args[1]) : 500;
+        long timeoutSeconds = args.length > 2 ? Long.parseLong(args[2]) : 60;
+
+        ServerConfig config = new ServerConfig().setDurable(false).setRetainedSlots(retainedSlots).setBatchSize(1);
+        List<DelayedPeer> links = new ArrayList<>();
+        List<Integer> callers = new ArrayList<>();
+        List<Server> targets = new ArrayList<>();
+        InProcessCluster cluster = new InProcessCluster(5, config, (fromId, peer) -> {
+            DelayedPeer link = new DelayedPeer(peer, 0);
+            links.add(link);
+            callers.add(fromId);
+            targets.add(peer);
+            return link;
+        });
+        Server lagging = cluster.node(LAGGING);
+        cluster.node(0).put("warmup", "value");
+
+        setReachable(links, callers, targets, lagging, false);
+        int written = 0;
+        for (int i = 0; i < missedWrites; i++) {
+            if (cluster.node(0).put("key-" + i, "value-" + i).contains("SUCCESS")) {
+                written++;
+            }
+        }
+        String lastKey = "key-" + (missedWrites - 1);
+        String expected = cluster.node(0).get(lastKey);
+        long target = cluster.node(0).get(lastKey, Long.MAX_VALUE, Long.MAX_VALUE).getSlot();
+
+        long start = System.nanoTime();
+        setReachable(links, callers, targets, lagging, true);
+        long deadline = start + timeoutSeconds * 1_000_000_000L;
+        ReadResult local = lagging.get(lastKey, Long.MAX_VALUE, Long.MAX_VALUE);
+        while (local.getSlot() < target && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            local = lagging.get(lastKey, Long.MAX_VALUE, Long.MAX_VALUE);
+        }
+        double catchUpMillis = (System.nanoTime() - start) / 1e6;
+        boolean caughtUp = local.getSlot() >= target && expected != null && expected.equals(local.getValue());
+
+        System.out.println("missed_writes,retained_slots,target_slot,replica_slot,caught_up,catch_up_ms");
+        System.out.printf("%d,%d,%d,%d,%b,%.1f%n", written, retainedSlots, target, local.getSlot(), caughtUp, catchUpMillis);
+        System.exit(caughtUp ? 0 : 1);
+    }
+
+    /**
+     * Cuts every message between the given server and the others, or reconnects them.
+     */
+    private static void setReachable(List<DelayedPeer> links, List<Integer> callers, List<Server> targets, Server server, boolean reachable) {
+        for (int i = 0; i < links.size(); i++) {
+            if (callers.get(i) == LAGGING || targets.get(i) == server) {
+                links.get(i).setReachable(reachable);
+            }
+        }
+    }
+}
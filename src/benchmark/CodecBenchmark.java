@@ -0,0 +1,108 @@
+package benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import server.Server;
+import server.ValueCodec;
+
+/**
+ * Compares ValueCodec with Java serialization on the values servers exchange: a single put, a batch
+ * of puts and a promise carrying accepted proposals. For each it reports the encoded size and the
+ * average time to encode and to decode one value, measured after a warm-up.
+ *
+ * Usage: java benchmark.CodecBenchmark [iterations]
+ */
+public class CodecBenchmark {
+    // Consumes the results, so the JIT cannot drop the work measured
+    private static long sink;
+
+    /**
+     * Encodes and decodes every value in both formats and prints one CSV line per value and format.
+     */
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("operation", new Server.Operation("PUT", "user:1042", "value-1042"));
+        List<Server.Operation> operations = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            operations.add(new Server.Operation("PUT", "user:" + i, "value-" + i));
+        }
+        values.put("batch32", new Server.Batch(operations));
+        Map<Long, Server.Proposal> accepted = new TreeMap<>();
+        long ballot = (System.currentTimeMillis() << 16) | 3;
+        for (long slot = 1000; slot < 1016; slot++) {
+            accepted.put(slot, new Server.Proposal(ballot, new Server.Operation("DELETE", "user:" + slot)));
+        }
+        values.put("promise16", new Server.Promise(1, accepted));
+
+        System.out.println("value,format,bytes,encode_ns,decode_ns");
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+            for (boolean codec : new boolean[]{false, true}) {
+                // Warm up, then measure
+                measure(value.getValue(), codec, iterations / 4);
+                double[] nanos = measure(value.getValue(), codec, iterations);
+                System.out.printf("%s,%s,%d,%.0f,%.0f%n", value.getKey(), codec ? "ValueCodec" : "ObjectOutputStream",
+                        encode(value.getValue(), codec).length, nanos[0], nanos[1]);
+            }
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * Returns the average nanoseconds to encode and to decode a value.
+     */
+    private static double[] measure(Object value, boolean codec, int iterations) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += encode(value, codec).length;
+        }
+        double encodeNanos = (double) (System.nanoTime() - start) / iterations;
+
+        byte[] encoded = encode(value, codec);
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += decode(encoded, codec).hashCode();
+        }
+        double decodeNanos = (double) (System.nanoTime() - start) / iterations;
+        return new double[]{encodeNanos, decodeNanos};
+    }
+
+    /**
+     * Encodes a value with ValueCodec or Java serialization.
+     */
+    private static byte[] encode(Object value, boolean codec) throws IOException {
+        if (codec) {
+            return ValueCodec.encode(value);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a value encoded by encode.
+     */
+    private static Object decode(byte[] encoded, boolean codec) throws IOException {
+        if (codec) {
+            return ValueCodec.decode(encoded);
+        }
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(encoded))) {
+            return input.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package benchmark;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import server.Server;
+import server.ServerConfig;
+
+/**
+ * Measures the throughput of a mixed read/write workload with a growing number of concurrent clients,
+ * each attached to one server of the cluster. With the servers taking no global lock, reads and Paxos
+ * traffic on a node keep flowing while its proposers wait on the network, so throughput should keep
+ * rising with the number of clients until the leader or the pipeline window saturates.
+ *
+ * Usage: java benchmark.ConcurrentClientsBenchmark [seconds] [readPercentage] [delayMillis]
+ */
+public class ConcurrentClientsBenchmark {
+    private static final int[] CLIENT_COUNTS = {1, 8, 32, 128};
+    private static final int KEYS = 1000;
+
+    /**
+     * Runs one cluster per client count and prints one CSV line per client count.
+     */
+    public static void main(String[] args) throws Exception {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 5;
+        int readPercentage = args.length > 1 ? Integer.parseInt(args[1]) : 90;
+        long delayMillis = args.length > 2 ? Long.parseLong(args[2]) : 1;
+
+        System.out.println("clients,operations,ops_per_sec,p50_ms,p99_ms");
+        for (int clients : CLIENT_COUNTS) {
+            InProcessCluster cluster = new InProcessCluster(5, new ServerConfig(), (fromId, peer) -> new DelayedPeer(peer, delayMillis));
+            // Elect a leader before measuring
+            cluster.node(0).put("warmup", "value");
+
+            ExecutorService executor = Executors.newFixedThreadPool(clients);
+            List<Future<LatencyRecorder>> results = new ArrayList<>(clients);
+            long start = System.nanoTime();
+            long deadline = start + seconds * 1_000_000_000L;
+            for (int client = 0; client < clients; client++) {
+                Server server = cluster.node(client % cluster.size());
+                String prefix = clients + "-" + client + "-";
+                results.add(executor.submit(() -> runClient(server, prefix, readPercentage, deadline)));
+            }
+            LatencyRecorder recorder = new LatencyRecorder();
+            for (Future<LatencyRecorder> result : results) {
+                recorder.merge(result.get());
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            executor.shutdown();
+
+            System.out.printf("%d,%d,%.1f,%.3f,%.3f%n", clients, recorder.count(), recorder.count() / elapsed,
+                    recorder.percentileMillis(50), recorder.percentileMillis(99));
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Issues reads of random keys and puts of fresh keys until the deadline, recording the latency of each.
+     */
+    private static LatencyRecorder runClient(Server server, String prefix, int readPercentage, long deadline) throws RemoteException {
+        LatencyRecorder recorder = new LatencyRecorder();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int written = 0;
+        while (System.nanoTime() < deadline) {
+            long start = System.nanoTime();
+            if (random.nextInt(100) < readPercentage) {
+                server.get("key-" + random.nextInt(KEYS));
+            } else {
+                server.put(prefix + written++, "value");
+            }
+            recorder.record(System.nanoTime() - start);
+        }
+        return recorder;
+    }
+}
@@ -0,0 +1,133 @@
+package benchmark;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import server.Server;
+import server.ServerConfig;
+import server.VersionedResult;
+
+/**
+ * Compares two ways for concurrent clients to increment a shared counter, with a delay on every message
+ * between servers: reading the counter and writing it in a transaction that checks it still has the value
+ * read, reading it again after every conflict, versus replacing it if it still has the version read, where
+ * a conflict returns the current value and version so the retry needs no read. For each it reports the
+ * increments per second, and the requests and Paxos values decided per increment.
+ *
+ * Usage: java benchmark.ConditionalWriteBenchmark [increments] [delayMillis]
+ */
+public class ConditionalWriteBenchmark {
+    private static final String COUNTER = "counter";
+
+    /**
+     * Runs each strategy with 1, 4 and 16 clients on a fresh cluster and prints one CSV line per run.
+     */
+    public static void main(String[] args) throws Exception {
+        int increments = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+        long delayMillis = args.length > 1 ? Long.parseLong(args[1]) : 1;
+
+        System.out.println("strategy,clients,increments,increments_per_sec,requests_per_increment,decisions_per_increment,final_value");
+        for (String strategy : new String[]{"get+transaction", "cas"}) {
+            for (int clients : new int[]{1, 4, 16}) {
+                ServerConfig config = new ServerConfig().setReadConsistency(ServerConfig.ReadConsistency.READ_INDEX);
+                InProcessCluster cluster = new InProcessCluster(5, config, (fromId, peer) -> new DelayedPeer(peer, delayMillis));
+                cluster.node(0).put(COUNTER, "0");
+                run(cluster, strategy, clients, increments);
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Increments the counter from clients spread over the replicas that do not lead, and prints the result.
+     */
+    private static void run(InProcessCluster cluster, String strategy, int clients, int increments) throws Exception {
+        AtomicLong requests = new AtomicLong();
+        long decisionsBefore = decisions(cluster);
+        List<Thread> threads = new ArrayList<>(clients);
+        List<Exception> failures = Collections.synchronizedList(new ArrayList<>());
+        long start = System.nanoTime();
+        for (int client = 0; client < clients; client++) {
+            Server server = cluster.node(1 + client % (cluster.size() - 1));
+            int count = increments / clients + (client < increments % clients ? 1 : 0);
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        requests.addAndGet("cas".equals(strategy) ? incrementWithVersion(server) : incrementWithTransaction(server));
+                    }
+                } catch (RemoteException e) {
+                    failures.add(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (!failures.isEmpty()) {
+            throw failures.get(0);
+        }
+        long decided = decisions(cluster) - decisionsBefore;
+        System.out.printf("%s,%d,%d,%.1f,%.2f,%.2f,%s%n", strategy, clients, increments, increments / seconds,
+                (double) requests.get() / increments, (double) decided / increments, cluster.node(0).get(COUNTER));
+    }
+
+    /**
+     * Reads the counter and writes it back incremented if it still has the value read, reading it again
+     * after each conflict.
+     *
+     * @return The number of requests it took.
+     */
+    private static int incrementWithTransaction(Server server) throws RemoteException {
+        int requests = 0;
+        while (true) {
+            String value = server.get(COUNTER);
+            String result = server.transaction(Collections.singletonMap(COUNTER, value), Collections.singletonMap(COUNTER, next(value)));
+            requests += 2;
+            if (result.contains("SUCCESS")) {
+                return requests;
+            }
+        }
+    }
+
+    /**
+     * Reads the counter and its version, and replaces it incremented if it still has the version read,
+     * retrying with the value and version returned by each conflict.
+     *
+     * @return The number of requests it took.
+     */
+    private static int incrementWithVersion(Server server) throws RemoteException {
+        VersionedResult current = server.getVersioned(COUNTER);
+        int requests = 1;
+        while (true) {
+            VersionedResult result = server.replace(COUNTER, next(current.getValue()), current.getVersion());
+            requests += 1;
+            if (result.isApplied()) {
+                return requests;
+            }
+            current = result;
+        }
+    }
+
+    /**
+     * Returns the value of the counter after an increment.
+     */
+    private static String next(String value) {
+        return Long.toString(Long.parseLong(value) + 1);
+    }
+
+    /**
+     * Returns how many values the servers of a cluster have decided as proposers.
+     */
+    private static long decisions(InProcessCluster cluster) throws RemoteException {
+        long committed = 0;
+        for (int serverId = 0; serverId < cluster.size(); serverId++) {
+            committed += cluster.node(serverId).stats().getCounters().get("committed");
+        }
+        return committed;
+    }
+}
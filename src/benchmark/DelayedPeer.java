@@ -0,0 +1,125 @@
+package benchmark;
+
+import java.rmi.RemoteException;
+import java.util.List;
+import server.IAcceptor;
+import server.ILearner;
+import server.IProposer;
+import server.Server;
+
+/**
+ * Wraps a peer server and delays every Paxos message sent to it, standing in for network latency
+ * or a slow replica when the cluster runs inside one JVM. It can also be cut off, standing in for a
+ * network partition between the caller and the peer.
+ */
+public class DelayedPeer implements IAcceptor, ILearner, IProposer {
+    private final Server peer;
+    private final long delayMillis;
+    private volatile boolean reachable = true;
+
+    /**
+     * Constructs a delayed view of a peer.
+     *
+     * @param peer The server receiving the messages.
+     * @param delayMillis The delay added before each message is delivered.
+     */
+    public DelayedPeer(Server peer, long delayMillis) {
+        this.peer = peer;
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * Cuts the peer off, so every message fails as if the network dropped it, or reconnects it.
+     *
+     * @param reachable Whether messages reach the peer.
+     */
+    public void setReachable(boolean reachable) {
+        this.reachable = reachable;
+    }
+
+    /**
+     * Sleeps for the configured delay, or fails if the peer is cut off.
+     */
+    private void delay() throws RemoteException {
+        if (!this.reachable) {
+            throw new RemoteException(this.peer + " is unreachable");
+        }
+        try {
+            Thread.sleep(this.delayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while delivering a message to " + this.peer);
+        }
+    }
+
+    @Override
+    public Object prepare(long sequenceNumber, long fromSlot) throws RemoteException {
+        this.delay();
+        return this.peer.prepare(sequenceNumber, fromSlot);
+    }
+
+    @Override
+    public long accept(long sequenceNumber, long slot, Object proposalValue) throws RemoteException {
+        this.delay();
+        return this.peer.accept(sequenceNumber, slot, proposalValue);
+    }
+
+    @Override
+    public boolean grantLease(long sequenceNumber, long leaseMillis) throws RemoteException {
+        this.delay();
+        return this.peer.grantLease(sequenceNumber, leaseMillis);
+    }
+
+    @Override
+    public boolean heartbeat(long sequenceNumber) throws RemoteException {
+        this.delay();
+        return this.peer.heartbeat(sequenceNumber);
+    }
+
+    @Override
+    public void learn(long slot, Object acceptedValue) throws RemoteException {
+        this.delay();
+        this.peer.learn(slot, acceptedValue);
+    }
+
+    @Override
+    public Object fetchDecisions(long fromSlot, int maxSlots) throws RemoteException {
+        this.delay();
+        return this.peer.fetchDecisions(fromSlot, maxSlots);
+    }
+
+    @Override
+    public byte[] fetchSnapshotChunk(long snapshotSlot, long offset, int maxBytes) throws RemoteException {
+        this.delay();
+        return this.peer.fetchSnapshotChunk(snapshotSlot, offset, maxBytes);
+    }
+
+    @Override
+    public boolean runExecutePaxosAlgorithm(long sequenceNumber, Object proposalValue) throws RemoteException {
+        this.delay();
+        return this.peer.runExecutePaxosAlgorithm(sequenceNumber, proposalValue);
+    }
+
+    @Override
+    public Object forward(Object operation) throws RemoteException {
+        this.delay();
+        return this.peer.forward(operation);
+    }
+
+    @Override
+    public List<String> forwardBatch(Object batch) throws RemoteException {
+        this.delay();
+        return this.peer.forwardBatch(batch);
+    }
+
+    @Override
+    public long readIndex() throws RemoteException {
+        this.delay();
+        return this.peer.readIndex();
+    }
+
+    @Override
+    public String toString() {
+        return this.peer.toString();
+    }
+}
@@ -0,0 +1,350 @@
+package benchmark;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import server.Server;
+import server.ServerConfig;
+import server.ValueCodec;
+
+/**
+ * Measures the throughput of the hot paths of a server inside one JVM, without RMI. Like a JMH run,
+ * each benchmark is warmed up over a few timed iterations and then measured over more, every thread
+ * runs the benchmarked call in a loop and the results are consumed so the JIT cannot drop the work.
+ *
+ * - apply: decided batches of puts and deletes learned and applied to the store, in operations.
+ * - get: local reads by 1 and by 8 threads while another thread keeps applying decisions.
+ * - round: full prepare/accept/learn rounds of runExecutePaxosAlgorithm with two in-memory acceptors.
+ * - codec: encoding and decoding an Operation and a Promise carrying 16 accepted proposals.
+ *
+ * Results are printed as CSV and, given a result file, also written to it as JSON with the score of
+ * every measured iteration, so runs on different commits can be compared.
+ *
+ * Usage: java benchmark.HotPathBenchmark [filter] [resultFile]
+ */
+public class HotPathBenchmark {
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    private static final long ITERATION_MILLIS = 1000;
+
+    // Keys written by each applied batch, and read by the get benchmark
+    private static final int BATCH_SIZE = 32;
+
+    // Consumes the results, so the JIT cannot drop the work measured
+    private static final AtomicLong sink = new AtomicLong();
+
+    private final Pattern filter;
+    private final List<Result> results = new ArrayList<>();
+
+    /**
+     * Runs every benchmark matching the filter and prints one CSV line per benchmark.
+     */
+    public static void main(String[] args) throws Exception {
+        HotPathBenchmark benchmark = new HotPathBenchmark(Pattern.compile(args.length > 0 ? args[0] : ".*"));
+        System.out.println("benchmark,threads,unit,score,stddev,min,max");
+        benchmark.apply();
+        benchmark.get(1);
+        benchmark.get(8);
+        benchmark.round();
+        benchmark.codec();
+        if (args.length > 1) {
+            benchmark.writeJson(args[1]);
+        }
+        if (sink.get() == 42) {
+            System.out.println();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Constructs a run of the benchmarks whose name matches a filter.
+     */
+    private HotPathBenchmark(Pattern filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Measures applying decided values: every slot is learned on a single server, which applies it to
+     * its store at once. Slots alternate between a batch of puts and a batch deleting the same keys, so
+     * every operation changes the store and the store stays small.
+     */
+    private void apply() throws Exception {
+        if (!this.filter.matcher("apply").find()) {
+            return;
+        }
+        Server server = new InProcessCluster(1, benchmarkConfig()).node(0);
+        Server.Batch[] batches = putAndDeleteBatches("apply-");
+        long[] slot = {0};
+        this.measure("apply", 1, BATCH_SIZE, thread -> {
+            server.learn(slot[0], batches[(int) (slot[0] & 1)]);
+            slot[0] += 1;
+            return slot[0];
+        });
+    }
+
+    /**
+     * Measures reads served from the local store while a writer applies decisions to other keys.
+     *
+     * @param threads The number of reading threads.
+     */
+    private void get(int threads) throws Exception {
+        if (!this.filter.matcher("get").find()) {
+            return;
+        }
+        ServerConfig config = benchmarkConfig().setReadConsistency(ServerConfig.ReadConsistency.LOCAL);
+        Server server = new InProcessCluster(1, config).node(0);
+        server.learn(0, putAndDeleteBatches("get-")[0]);
+
+        Server.Batch[] writes = putAndDeleteBatches("write-");
+        StopFlag writing = new StopFlag();
+        Thread writer = new Thread(() -> {
+            for (long slot = 1; !writing.stop; slot++) {
+                try {
+                    server.learn(slot, writes[(int) (slot & 1)]);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }, "writer");
+        writer.start();
+
+        String[] keys = new String[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            keys[i] = "get-" + i;
+        }
+        int[][] next = new int[threads][1];
+        this.measure("get", threads, 1, thread -> {
+            int i = next[thread][0]++;
+            return server.get(keys[i & (BATCH_SIZE - 1)]).length();
+        });
+        writing.stop = true;
+        writer.join();
+    }
+
+    /**
+     * Measures full Paxos rounds run by one server of three, each deciding one put in the next slot.
+     */
+    private void round() throws Exception {
+        if (!this.filter.matcher("round").find()) {
+            return;
+        }
+        Server proposer = new InProcessCluster(3, benchmarkConfig()).node(0);
+        Server.Operation operation = new Server.Operation("PUT", "round", "value");
+        // Ballots above any the servers generate for themselves, owned by server 0
+        long[] ballot = {(System.currentTimeMillis() + 3_600_000) << 16};
+        this.measure("round", 1, 1, thread -> {
+            ballot[0] += 1 << 16;
+            return proposer.runExecutePaxosAlgorithm(ballot[0], operation) ? 1 : 0;
+        });
+    }
+
+    /**
+     * Measures encoding and decoding the values servers send each other most often.
+     */
+    private void codec() throws Exception {
+        Server.Operation operation = new Server.Operation("PUT", "user:1042", "value-1042");
+        Map<Long, Server.Proposal> accepted = new TreeMap<>();
+        long ballot = (System.currentTimeMillis() << 16) | 3;
+        for (long slot = 1000; slot < 1016; slot++) {
+            accepted.put(slot, new Server.Proposal(ballot, new Server.Operation("DELETE", "user:" + slot)));
+        }
+        Server.Promise promise = new Server.Promise(1, accepted);
+
+        byte[] encodedOperation = ValueCodec.encode(operation);
+        byte[] encodedPromise = ValueCodec.encode(promise);
+        if (this.filter.matcher("codec.encode.operation").find()) {
+            this.measure("codec.encode.operation", 1, 1, thread -> ValueCodec.encode(operation).length);
+        }
+        if (this.filter.matcher("codec.decode.operation").find()) {
+            this.measure("codec.decode.operation", 1, 1, thread -> ValueCodec.decode(encodedOperation).hashCode());
+        }
+        if (this.filter.matcher("codec.encode.promise").find()) {
+            this.measure("codec.encode.promise", 1, 1, thread -> ValueCodec.encode(promise).length);
+        }
+        if (this.filter.matcher("codec.decode.promise").find()) {
+            this.measure("codec.decode.promise", 1, 1, thread -> ValueCodec.decode(encodedPromise).hashCode());
+        }
+    }
+
+    /**
+     * Returns the configuration of the benchmarked servers: in memory only, so the disk is not measured.
+     */
+    private static ServerConfig benchmarkConfig() {
+        return new ServerConfig().setDurable(false).setCatchUpIntervalMillis(0);
+    }
+
+    /**
+     * Returns a batch putting BATCH_SIZE keys and a batch deleting them.
+     */
+    private static Server.Batch[] putAndDeleteBatches(String prefix) {
+        List<Server.Operation> puts = new ArrayList<>(BATCH_SIZE);
+        List<Server.Operation> deletes = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            puts.add(new Server.Operation("PUT", prefix + i, "value-" + i));
+            deletes.add(new Server.Operation("DELETE", prefix + i));
+        }
+        return new Server.Batch[]{new Server.Batch(puts), new Server.Batch(deletes)};
+    }
+
+    /**
+     * Runs a benchmark for the warm-up and measurement iterations, and prints and keeps its result.
+     *
+     * @param name The name of the benchmark.
+     * @param threads The number of threads calling it at once.
+     * @param operationsPerCall How many operations one call performs.
+     * @param call The benchmarked call, given the index of the calling thread.
+     */
+    private void measure(String name, int threads, int operationsPerCall, Call call) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            runIteration(threads, call);
+        }
+        double[] scores = new double[MEASUREMENT_ITERATIONS];
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            scores[i] = runIteration(threads, call) * operationsPerCall;
+        }
+        Result result = new Result(name, threads, scores);
+        this.results.add(result);
+        System.out.printf("%s,%d,ops/s,%.1f,%.1f,%.1f,%.1f%n", name, threads, result.mean(), result.stddev(),
+                result.min(), result.max());
+    }
+
+    /**
+     * Runs one timed iteration and returns how many calls per second all threads made together.
+     */
+    private static double runIteration(int threads, Call call) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        long[] calls = new long[threads];
+        Exception[] failure = new Exception[1];
+        Thread[] workers = new Thread[threads];
+        StopFlag iteration = new StopFlag();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers[t] = new Thread(() -> {
+                long count = 0;
+                long consumed = 0;
+                try {
+                    start.await();
+                    while (!iteration.stop) {
+                        consumed += call.run(thread);
+                        count += 1;
+                    }
+                } catch (Exception e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                }
+                calls[thread] = count;
+                sink.addAndGet(consumed);
+            }, "benchmark-" + t);
+            workers[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(ITERATION_MILLIS);
+        iteration.stop = true;
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        long total = 0;
+        for (int t = 0; t < threads; t++) {
+            workers[t].join();
+            total += calls[t];
+        }
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+        return total / seconds;
+    }
+
+    /**
+     * Writes the results as a JSON array with one object per benchmark.
+     */
+    private void writeJson(String file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8))) {
+            out.println("[");
+            for (int i = 0; i < this.results.size(); i++) {
+                Result result = this.results.get(i);
+                StringBuilder scores = new StringBuilder();
+                for (double score : result.scores) {
+                    scores.append(scores.length() == 0 ? "" : ", ").append(String.format("%.1f", score));
+                }
+                out.printf("  {\"benchmark\": \"%s\", \"threads\": %d, \"unit\": \"ops/s\", \"score\": %.1f, "
+                                + "\"stddev\": %.1f, \"min\": %.1f, \"max\": %.1f, \"iterations\": [%s]}%s%n",
+                        result.name, result.threads, result.mean(), result.stddev(), result.min(), result.max(), scores,
+                        i + 1 < this.results.size() ? "," : "");
+            }
+            out.println("]");
+        }
+    }
+
+    /**
+     * A benchmarked call, returning a value that is consumed
+     */
+    private interface Call {
+        long run(int thread) throws Exception;
+    }
+
+    /**
+     * Tells threads running in a loop to stop
+     */
+    private static final class StopFlag {
+        volatile boolean stop;
+    }
+
+    /**
+     * The scores of the measured iterations of one benchmark, in operations per second
+     */
+    private static final class Result {
+        final String name;
+        final int threads;
+        final double[] scores;
+
+        Result(String name, int threads, double[] scores) {
+            this.name = name;
+            this.threads = threads;
+            this.scores = scores;
+        }
+
+        double mean() {
+            double sum = 0;
+            for (double score : this.scores) {
+                sum += score;
+            }
+            return sum / this.scores.length;
+        }
+
+        double stddev() {
+            double mean = this.mean();
+            double squares = 0;
+            for (double score : this.scores) {
+                squares += (score - mean) * (score - mean);
+            }
+            return this.scores.length < 2 ? 0 : Math.sqrt(squares / (this.scores.length - 1));
+        }
+
+        double min() {
+            double min = Double.MAX_VALUE;
+            for (double score : this.scores) {
+                min = Math.min(min, score);
+            }
+            return min;
+        }
+
+        double max() {
+            double max = 0;
+            for (double score : this.scores) {
+                max = Math.max(max, score);
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package benchmark;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import server.IAcceptor;
+import server.ILearner;
+import server.IProposer;
+import server.PeerConnection;
+import server.PeerListener;
+import server.Server;
+import server.ServerConfig;
+
+/**
+ * Wires a group of servers together inside one JVM, the same way ServerMain does but without
+ * binding them to an RMI registry, so benchmarks can drive the Paxos engine directly.
+ * A durable cluster writes its write-ahead logs to a fresh temporary directory, so a run never recovers
+ * the state left by an earlier one. With the NIO transport, the acceptor and learner messages go through
+ * loopback connections to a PeerListener of each server, unless the peers are wrapped.
+ */
+public class InProcessCluster {
+    private final Server[] nodes;
+
+    /**
+     * Starts a cluster where every server talks to its peers directly.
+     *
+     * @param totalNodes The number of servers.
+     * @param config The configuration shared by all servers.
+     */
+    public InProcessCluster(int totalNodes, ServerConfig config) throws IOException {
+        this(totalNodes, config, (fromId, peer) -> peer);
+    }
+
+    /**
+     * Starts a cluster where the peers seen by each server can be wrapped, for example to inject latency.
+     *
+     * @param totalNodes The number of servers.
+     * @param config The configuration shared by all servers.
+     * @param wrapper Given the id of the calling server and a peer, returns the peer to use.
+     */
+    public InProcessCluster(int totalNodes, ServerConfig config, BiFunction<Integer, Server, Object> wrapper) throws IOException {
+        if (config.isDurable()) {
+            config.setWalDirectory(Files.createTempDirectory("paxos-wal").toString());
+        }
+        this.nodes = new Server[totalNodes];
+        int[] peerPorts = new int[totalNodes];
+        for (int serverId = 0; serverId < totalNodes; serverId++) {
+            this.nodes[serverId] = new Server(serverId, 0, totalNodes - 1, config);
+            if (config.getTransport() == ServerConfig.Transport.NIO) {
+                PeerListener listener = new PeerListener(0, this.nodes[serverId], this.nodes[serverId]);
+                this.nodes[serverId].setPeerListener(listener);
+                peerPorts[serverId] = listener.getPort();
+            }
+        }
+        for (int serverId = 0; serverId < totalNodes; serverId++) {
+            List<IAcceptor> acceptors = new ArrayList<>(totalNodes - 1);
+            List<ILearner> learners = new ArrayList<>(totalNodes - 1);
+            Map<Long, IProposer> proposers = new HashMap<>(totalNodes - 1);
+            for (int otherServerId = 0; otherServerId < totalNodes; otherServerId++) {
+                if (otherServerId != serverId) {
+                    Object peer = wrapper.apply(serverId, this.nodes[otherServerId]);
+                    Object messages = peer;
+                    if (peer == this.nodes[otherServerId] && config.getTransport() == ServerConfig.Transport.NIO) {
+                        messages = new PeerConnection(new InetSocketAddress(InetAddress.getLoopbackAddress(), peerPorts[otherServerId]),
+                                config.getPhaseTimeoutMillis());
+                    }
+                    acceptors.add((IAcceptor) messages);
+                    learners.add((ILearner) messages);
+                    proposers.put((long) otherServerId, (IProposer) peer);
+                }
+            }
+            this.nodes[serverId].setServerAcceptors(acceptors);
+            this.nodes[serverId].setServerLearners(learners);
+            this.nodes[serverId].setServerProposers(proposers);
+        }
+    }
+
+    /**
+     * Returns the server with the given id.
+     */
+    public Server node(int serverId) {
+        return this.nodes[serverId];
+    }
+
+    /**
+     * Returns the number of servers in the cluster.
+     */
+    public int size() {
+        return this.nodes.length;
+    }
+}
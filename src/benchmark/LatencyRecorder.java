@@ -0,0 +1,55 @@
+package benchmark;
+
+import java.util.Arrays;
+
+/**
+ * Collects latency samples of a benchmark run and reports percentiles over them.
+ * Not thread safe: each worker keeps its own recorder and they are merged at the end.
+ */
+public class LatencyRecorder {
+    private long[] samples = new long[1024];
+    private int count;
+
+    /**
+     * Records one latency sample.
+     *
+     * @param nanos The measured latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        if (this.count == this.samples.length) {
+            this.samples = Arrays.copyOf(this.samples, this.count * 2);
+        }
+        this.samples[this.count++] = nanos;
+    }
+
+    /**
+     * Adds all samples of another recorder to this one.
+     */
+    public void merge(LatencyRecorder other) {
+        for (int i = 0; i < other.count; i++) {
+            this.record(other.samples[i]);
+        }
+    }
+
+    /**
+     * Returns the number of recorded samples.
+     */
+    public int count() {
+        return this.count;
+    }
+
+    /**
+     * Returns the latency at the given percentile in milliseconds.
+     *
+     * @param percentile A percentile between 0 and 100.
+     */
+    public double percentileMillis(double percentile) {
+        if (this.count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(this.samples, this.count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * this.count) - 1;
+        return sorted[Math.max(0, Math.min(index, this.count - 1))] / 1_000_000.0;
+    }
+}
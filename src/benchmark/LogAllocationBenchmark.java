@@ -0,0 +1,66 @@
+package benchmark;
+
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import server.Server;
+import server.ServerConfig;
+import utils.Logger;
+
+/**
+ * Profiles the allocations of the put path under each log level: sequential puts are sent to the leader
+ * of an in-process cluster, and the run reports the bytes allocated per put by every thread of the JVM,
+ * which includes the servers answering the leader, along with the put latency. At DEBUG every Paxos step
+ * builds its message, as every log call did before levels existed; at INFO those messages are skipped.
+ *
+ * Usage: java benchmark.LogAllocationBenchmark [puts] [levels...]
+ */
+public class LogAllocationBenchmark {
+
+    /**
+     * Runs the puts once per level and prints one CSV line per level.
+     */
+    public static void main(String[] args) throws Exception {
+        int puts = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        String[] levels = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : new String[]{"DEBUG", "INFO"};
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        System.out.println("level,puts,committed,bytes_per_put,p50_put_ms,p99_put_ms");
+        for (String level : levels) {
+            // The servers create their loggers from the system properties
+            System.setProperty(Logger.LEVEL_PROPERTY, level);
+            InProcessCluster cluster = new InProcessCluster(5, new ServerConfig().setBatchSize(1));
+            Server leader = cluster.node(0);
+            for (int i = 0; i < puts; i++) {
+                leader.put("warmup-" + level + "-" + i, "value");
+            }
+
+            LatencyRecorder recorder = new LatencyRecorder();
+            int committed = 0;
+            long allocatedBefore = allocatedBytes(threads);
+            for (int i = 0; i < puts; i++) {
+                long start = System.nanoTime();
+                if (leader.put(level + "-" + i, "value").contains("SUCCESS")) {
+                    committed += 1;
+                }
+                recorder.record(System.nanoTime() - start);
+            }
+            long allocated = allocatedBytes(threads) - allocatedBefore;
+            System.out.printf("%s,%d,%d,%d,%.3f,%.3f%n", level, puts, committed, allocated / puts,
+                    recorder.percentileMillis(50), recorder.percentileMillis(99));
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Returns the bytes allocated so far by the live threads of the JVM.
+     */
+    private static long allocatedBytes(ThreadMXBean threads) {
+        long total = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            // -1 for a thread that ended meanwhile
+            total += Math.max(0, allocated);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,105 @@
+package benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import server.Server;
+import server.ServerConfig;
+import utils.Logger;
+
+/**
+ * Measures the asynchronous logger, first on its own: concurrent threads log as fast as they can, and
+ * the run reports log calls per second, the p99 of a call and how many of the messages reached the file
+ * under each overflow policy. Then its effect on the servers: the put latency of a cluster whose servers
+ * log every Paxos step, with each overflow policy.
+ *
+ * Usage: java benchmark.LoggerBenchmark [messagesPerThread] [puts]
+ */
+public class LoggerBenchmark {
+    private static final int[] THREAD_COUNTS = {1, 4, 16};
+
+    /**
+     * Runs both parts and prints one CSV table per part.
+     */
+    public static void main(String[] args) throws Exception {
+        int messagesPerThread = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int puts = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        System.out.println("policy,threads,log_calls,calls_per_sec,p99_call_us,written");
+        for (Logger.OverflowPolicy policy : Logger.OverflowPolicy.values()) {
+            for (int threads : THREAD_COUNTS) {
+                runLogger(policy, threads, messagesPerThread);
+            }
+        }
+
+        System.out.println("policy,puts,committed,p50_put_ms,p99_put_ms");
+        System.setProperty(Logger.LEVEL_PROPERTY, "DEBUG");
+        for (Logger.OverflowPolicy policy : Logger.OverflowPolicy.values()) {
+            // The servers create their loggers from the system properties
+            System.setProperty(Logger.OVERFLOW_POLICY_PROPERTY, policy.name());
+            InProcessCluster cluster = new InProcessCluster(5, new ServerConfig().setBatchSize(1));
+            Server leader = cluster.node(0);
+            for (int i = 0; i < puts / 10; i++) {
+                leader.put("warmup-" + policy + "-" + i, "value");
+            }
+            LatencyRecorder recorder = new LatencyRecorder();
+            int committed = 0;
+            for (int i = 0; i < puts; i++) {
+                long start = System.nanoTime();
+                if (leader.put(policy + "-" + i, "value").contains("SUCCESS")) {
+                    committed += 1;
+                }
+                recorder.record(System.nanoTime() - start);
+            }
+            System.out.printf("%s,%d,%d,%.3f,%.3f%n", policy, puts, committed, recorder.percentileMillis(50), recorder.percentileMillis(99));
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Logs from concurrent threads into a fresh file and prints one CSV line.
+     */
+    private static void runLogger(Logger.OverflowPolicy policy, int threads, int messagesPerThread) throws Exception {
+        String fileName = "LoggerBenchmark-" + policy + "-" + threads + ".log";
+        Path file = Paths.get("logs", fileName);
+        Files.deleteIfExists(file);
+        Logger logger = new Logger("benchmark", fileName, 8192, policy);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<LatencyRecorder>> results = new ArrayList<>(threads);
+        long start = System.nanoTime();
+        for (int thread = 0; thread < threads; thread++) {
+            int id = thread;
+            results.add(executor.submit(() -> {
+                LatencyRecorder recorder = new LatencyRecorder();
+                for (int i = 0; i < messagesPerThread; i++) {
+                    long callStart = System.nanoTime();
+                    logger.log("> Operation{type='PUT', key='key-" + id + "-" + i + "', value='value'} accepted in slot " + i);
+                    recorder.record(System.nanoTime() - callStart);
+                }
+                return recorder;
+            }));
+        }
+        LatencyRecorder recorder = new LatencyRecorder();
+        for (Future<LatencyRecorder> result : results) {
+            recorder.merge(result.get());
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        executor.shutdown();
+        logger.close();
+
+        long written;
+        try (Stream<String> lines = Files.lines(file)) {
+            written = lines.filter(line -> line.contains("accepted in slot")).count();
+        }
+        Files.delete(file);
+        System.out.printf("%s,%d,%d,%.0f,%.3f,%d%n", policy, threads, recorder.count(), recorder.count() / seconds,
+                recorder.percentileMillis(99) * 1000, written);
+    }
+}
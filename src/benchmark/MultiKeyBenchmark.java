@@ -0,0 +1,104 @@
+package benchmark;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import server.Server;
+import server.ServerConfig;
+
+/**
+ * Compares writing, reading and deleting many keys one call per key with the batched multiPut, multiGet
+ * and multiDelete, and writing them one transaction per key with transactions of many keys, from one
+ * client of a replica that is not the leader, with a delay on every message between servers. For each it
+ * reports the keys per second and how many Paxos values were decided.
+ *
+ * Usage: java benchmark.MultiKeyBenchmark [keys] [batchSize] [delayMillis]
+ */
+public class MultiKeyBenchmark {
+
+    /**
+     * Runs each access pattern on a fresh cluster and prints one CSV line per pattern.
+     */
+    public static void main(String[] args) throws Exception {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        long delayMillis = args.length > 2 ? Long.parseLong(args[2]) : 1;
+
+        System.out.println("operation,keys,batch_size,keys_per_sec,decisions");
+        for (int batch : new int[]{1, batchSize}) {
+            // A replica confirms every read with the leader, so batched reads share one confirmation
+            ServerConfig config = new ServerConfig().setReadConsistency(ServerConfig.ReadConsistency.READ_INDEX);
+            InProcessCluster cluster = new InProcessCluster(5, config, (fromId, peer) -> new DelayedPeer(peer, delayMillis));
+            cluster.node(0).put("warmup-" + batch, "value");
+            Server client = cluster.node(1);
+
+            run(cluster, "put", keys, batch, chunk -> {
+                if (chunk.size() == 1) {
+                    client.put(chunk.get(0), "value");
+                } else {
+                    Map<String, String> entries = new LinkedHashMap<>();
+                    chunk.forEach(key -> entries.put(key, "value"));
+                    client.multiPut(entries);
+                }
+            });
+            run(cluster, "get", keys, batch, chunk -> {
+                if (chunk.size() == 1) {
+                    client.get(chunk.get(0));
+                } else {
+                    client.multiGet(chunk);
+                }
+            });
+            run(cluster, "delete", keys, batch, chunk -> {
+                if (chunk.size() == 1) {
+                    client.delete(chunk.get(0));
+                } else {
+                    client.multiDelete(chunk);
+                }
+            });
+            run(cluster, "transaction", keys, batch, chunk -> {
+                Map<String, String> writes = new LinkedHashMap<>();
+                chunk.forEach(key -> writes.put(key, "value"));
+                client.transaction(Collections.emptyMap(), writes);
+            });
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Sends every key in chunks of the batch size and prints the throughput and the decisions it took.
+     */
+    private static void run(InProcessCluster cluster, String operation, int keys, int batch, Chunk call) throws RemoteException {
+        long decisionsBefore = decisions(cluster);
+        long start = System.nanoTime();
+        for (int first = 0; first < keys; first += batch) {
+            List<String> chunk = new ArrayList<>(batch);
+            for (int key = first; key < Math.min(keys, first + batch); key++) {
+                chunk.add("key-" + key);
+            }
+            call.send(chunk);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s,%d,%d,%.1f,%d%n", operation, keys, batch, keys / seconds, decisions(cluster) - decisionsBefore);
+    }
+
+    /**
+     * Returns how many values the servers of a cluster have decided as proposers.
+     */
+    private static long decisions(InProcessCluster cluster) throws RemoteException {
+        long committed = 0;
+        for (int serverId = 0; serverId < cluster.size(); serverId++) {
+            committed += cluster.node(serverId).stats().getCounters().get("committed");
+        }
+        return committed;
+    }
+
+    /**
+     * Sends one chunk of keys
+     */
+    private interface Chunk {
+        void send(List<String> keys) throws RemoteException;
+    }
+}
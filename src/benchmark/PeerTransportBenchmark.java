@@ -0,0 +1,87 @@
+package benchmark;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.rmi.RemoteException;
+import java.rmi.server.RemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import server.IAcceptor;
+import server.PeerConnection;
+import server.PeerListener;
+import server.Server;
+import server.ServerConfig;
+
+/**
+ * Compares the peer transports on loopback: concurrent threads send accept requests to one acceptor
+ * through its RMI stub, then through a PeerConnection to its PeerListener. The acceptor is not durable,
+ * so the numbers measure the transport rather than the disk. A simulated failure of the acceptor still
+ * travels back to the caller, so it is counted as a message like any other.
+ *
+ * Usage: java benchmark.PeerTransportBenchmark [threads] [messagesPerThread]
+ */
+public class PeerTransportBenchmark {
+
+    /**
+     * Runs every transport and prints one CSV line per transport.
+     */
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int messagesPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        Server acceptor = new Server(0, 0, 4, new ServerConfig().setDurable(false));
+        PeerListener listener = new PeerListener(0, acceptor, acceptor);
+        long timeoutMillis = new ServerConfig().getPhaseTimeoutMillis();
+
+        System.out.println("transport,threads,messages,messages_per_sec,p50_ms,p99_ms");
+        for (ServerConfig.Transport transport : ServerConfig.Transport.values()) {
+            IAcceptor peer = transport == ServerConfig.Transport.RMI
+                    ? (IAcceptor) RemoteObject.toStub(acceptor)
+                    : new PeerConnection(new InetSocketAddress(InetAddress.getLoopbackAddress(), listener.getPort()), timeoutMillis);
+            AtomicLong slots = new AtomicLong();
+            // Warm up the connections and the JIT first
+            run(peer, slots, threads, messagesPerThread / 10);
+            long start = System.nanoTime();
+            LatencyRecorder recorder = run(peer, slots, threads, messagesPerThread);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("%s,%d,%d,%.1f,%.3f,%.3f%n", transport, threads, recorder.count(),
+                    recorder.count() / seconds, recorder.percentileMillis(50), recorder.percentileMillis(99));
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Sends accept requests from concurrent threads and records the round trip of each.
+     */
+    private static LatencyRecorder run(IAcceptor peer, AtomicLong slots, int threads, int messagesPerThread) throws Exception {
+        long ballot = (System.currentTimeMillis() << 16) | 1;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<LatencyRecorder>> results = new ArrayList<>(threads);
+        for (int thread = 0; thread < threads; thread++) {
+            results.add(executor.submit(() -> {
+                LatencyRecorder recorder = new LatencyRecorder();
+                for (int i = 0; i < messagesPerThread; i++) {
+                    long start = System.nanoTime();
+                    try {
+                        peer.accept(ballot, slots.getAndIncrement(), "value-" + i);
+                    } catch (RemoteException e) {
+                        // Simulated failure of the acceptor, answered like a success
+                    }
+                    recorder.record(System.nanoTime() - start);
+                }
+                return recorder;
+            }));
+        }
+        LatencyRecorder recorder = new LatencyRecorder();
+        for (Future<LatencyRecorder> result : results) {
+            recorder.merge(result.get());
+        }
+        executor.shutdown();
+        return recorder;
+    }
+}
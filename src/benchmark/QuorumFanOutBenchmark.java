@@ -0,0 +1,59 @@
+package benchmark;
+
+import java.io.IOException;
+import server.Server;
+import server.ServerConfig;
+
+/**
+ * Compares the commit latency of puts when the Paxos phases contact the acceptors one after
+ * the other against sending them to all acceptors at once and returning on a majority.
+ * Every peer answers after a small delay and one peer is much slower than the rest.
+ *
+ * Usage: java benchmark.QuorumFanOutBenchmark [operations] [delayMillis] [slowDelayMillis]
+ */
+public class QuorumFanOutBenchmark {
+
+    /**
+     * Runs both modes and prints one CSV line per mode.
+     */
+    public static void main(String[] args) throws IOException {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        long delayMillis = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        long slowDelayMillis = args.length > 2 ? Long.parseLong(args[2]) : 20;
+
+        System.out.println("mode,operations,committed,p50_ms,p99_ms");
+        for (boolean parallel : new boolean[]{false, true}) {
+            ServerConfig config = new ServerConfig().setParallelFanOut(parallel);
+            // The last server is the slow replica
+            InProcessCluster cluster = new InProcessCluster(5, config,
+                    (fromId, peer) -> new DelayedPeer(peer, delayOf(peer, delayMillis, slowDelayMillis)));
+            Server leader = cluster.node(0);
+
+            // Warm up and elect the leader
+            for (int i = 0; i < operations / 10; i++) {
+                leader.put("warmup-" + parallel + "-" + i, "value");
+            }
+
+            LatencyRecorder recorder = new LatencyRecorder();
+            int committed = 0;
+            for (int i = 0; i < operations; i++) {
+                long start = System.nanoTime();
+                String result = leader.put("key-" + parallel + "-" + i, "value");
+                recorder.record(System.nanoTime() - start);
+                if (result.contains("SUCCESS")) {
+                    committed += 1;
+                }
+            }
+            System.out.printf("%s,%d,%d,%.3f,%.3f%n", parallel ? "parallel" : "sequential", operations, committed,
+                    recorder.percentileMillis(50), recorder.percentileMillis(99));
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Returns the delay of a peer: the server with id 4 is the slow one.
+     */
+    private static long delayOf(Server peer, long delayMillis, long slowDelayMillis) {
+        return peer.toString().equals("Server{serverId=4}") ? slowDelayMillis : delayMillis;
+    }
+}
@@ -0,0 +1,82 @@
+package benchmark;
+
+import java.rmi.RemoteException;
+import server.RequestId;
+import server.Server;
+import server.ServerConfig;
+
+/**
+ * Measures what retries cost when every write is sent again several times, as clients do when their calls
+ * time out during a failure, with a delay on every message between servers. Without request ids every
+ * retry is forwarded to the leader again and a retried put that was applied fails as if the key already
+ * existed; with them a retry is answered from the replicated table of each client's latest request on the
+ * replica it reaches, without contacting the leader. For each it reports the latency of the retries,
+ * the Paxos values decided per write and how many retries were reported as failures.
+ *
+ * Usage: java benchmark.RetryBenchmark [writes] [retries] [delayMillis]
+ */
+public class RetryBenchmark {
+
+    /**
+     * Runs the writes and their retries without and with request ids on a fresh cluster each, and prints
+     * one CSV line per run.
+     */
+    public static void main(String[] args) throws Exception {
+        int writes = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int retries = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        long delayMillis = args.length > 2 ? Long.parseLong(args[2]) : 1;
+
+        System.out.println("mode,writes,retries_per_write,p50_retry_ms,p99_retry_ms,decisions_per_write,failed_retries");
+        for (boolean withRequestIds : new boolean[]{false, true}) {
+            InProcessCluster cluster = new InProcessCluster(5, new ServerConfig(), (fromId, peer) -> new DelayedPeer(peer, delayMillis));
+            cluster.node(0).put("warmup", "value");
+            run(cluster, withRequestIds, writes, retries);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Sends every write followed by its retries from a replica that does not lead, and prints the result.
+     */
+    private static void run(InProcessCluster cluster, boolean withRequestIds, int writes, int retries) throws RemoteException {
+        Server client = cluster.node(1);
+        RequestId requestId = RequestId.firstOfNewClient();
+        LatencyRecorder recorder = new LatencyRecorder();
+        int failedRetries = 0;
+        long decisionsBefore = decisions(cluster);
+        for (int write = 0; write < writes; write++) {
+            String key = "key-" + write;
+            send(client, key, withRequestIds ? requestId : null);
+            for (int retry = 0; retry < retries; retry++) {
+                long start = System.nanoTime();
+                String result = send(client, key, withRequestIds ? requestId : null);
+                recorder.record(System.nanoTime() - start);
+                if (result.contains("Error")) {
+                    failedRetries++;
+                }
+            }
+            requestId = requestId.next();
+        }
+        System.out.printf("%s,%d,%d,%.3f,%.3f,%.2f,%d%n", withRequestIds ? "request_ids" : "plain", writes, retries,
+                recorder.percentileMillis(50), recorder.percentileMillis(99),
+                (double) (decisions(cluster) - decisionsBefore) / writes, failedRetries);
+    }
+
+    /**
+     * Sends one attempt of a put, with a request id unless it is null.
+     */
+    private static String send(Server client, String key, RequestId requestId) throws RemoteException {
+        return requestId == null ? client.put(key, "value") : client.put(key, "value", requestId);
+    }
+
+    /**
+     * Returns how many values the servers of a cluster have decided as proposers.
+     */
+    private static long decisions(InProcessCluster cluster) throws RemoteException {
+        long committed = 0;
+        for (int serverId = 0; serverId < cluster.size(); serverId++) {
+            committed += cluster.node(serverId).stats().getCounters().get("committed");
+        }
+        return committed;
+    }
+}
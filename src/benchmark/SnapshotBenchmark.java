@@ -0,0 +1,66 @@
+package benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import server.KeyValueStore;
+
+/**
+ * Measures the cost of snapshotting a large store and of loading it back on restart. The main thread
+ * keeps applying writes to the store, as the apply path of a server would, while the snapshot is written,
+ * and the write latencies show whether the snapshot held it up.
+ *
+ * Usage: java benchmark.SnapshotBenchmark [keys] [valueBytes]
+ */
+public class SnapshotBenchmark {
+
+    /**
+     * Fills a store, snapshots it under concurrent writes, loads the snapshot into a new store and prints
+     * one CSV line.
+     */
+    public static void main(String[] args) throws Exception {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int valueBytes = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        String value = "v".repeat(valueBytes);
+
+        KeyValueStore store = new KeyValueStore();
+        for (int i = 0; i < keys; i++) {
+            store.put("key-" + i, value);
+        }
+        Path file = Files.createTempDirectory("paxos-snapshot").resolve("benchmark.snapshot");
+
+        // This thread plays the applying thread: it fixes the snapshot between two writes and keeps writing
+        store.beginSnapshot();
+        long snapshotStart = System.nanoTime();
+        CompletableFuture<Long> snapshot = CompletableFuture.supplyAsync(() -> {
+            try {
+                return store.writeSnapshot(file, keys);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        LatencyRecorder writes = new LatencyRecorder();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (!snapshot.isDone()) {
+            long start = System.nanoTime();
+            store.put("key-" + random.nextInt(keys * 2), value);
+            writes.record(System.nanoTime() - start);
+        }
+        long snapshotEntries = snapshot.get();
+        double snapshotMillis = (System.nanoTime() - snapshotStart) / 1e6;
+
+        long loadStart = System.nanoTime();
+        KeyValueStore restarted = new KeyValueStore();
+        restarted.loadSnapshot(file);
+        double loadMillis = (System.nanoTime() - loadStart) / 1e6;
+
+        System.out.println("keys,snapshot_entries,snapshot_ms,snapshot_bytes,writes_during_snapshot,p99_write_ms,max_write_ms,load_ms");
+        System.out.printf("%d,%d,%.1f,%d,%d,%.3f,%.3f,%.1f%n", keys, snapshotEntries, snapshotMillis, Files.size(file),
+                writes.count(), writes.percentileMillis(99), writes.percentileMillis(100), loadMillis);
+        Files.delete(file);
+        Files.delete(file.getParent());
+    }
+}
@@ -0,0 +1,74 @@
+package benchmark;
+
+import java.nio.file.Files;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import server.Server;
+import server.ServerConfig;
+
+/**
+ * Measures how fast a single acceptor answers concurrent accept requests when each accepted value has
+ * to reach the disk first, with every record forced on its own versus records sharing one fsync
+ * (group commit). Simulated failures of the acceptor are not counted.
+ *
+ * Usage: java benchmark.WalGroupCommitBenchmark [threads] [acceptsPerThread]
+ */
+public class WalGroupCommitBenchmark {
+
+    /**
+     * Runs the acceptor once per mode and prints one CSV line per mode.
+     */
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int acceptsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        System.out.println("group_commit,threads,accepts,accepts_per_sec,p50_ms,p99_ms");
+        for (boolean groupCommit : new boolean[]{false, true}) {
+            ServerConfig config = new ServerConfig()
+                    .setWalDirectory(Files.createTempDirectory("paxos-wal").toString())
+                    .setWalGroupCommit(groupCommit);
+            Server acceptor = new Server(0, 0, 4, config);
+            AtomicLong slots = new AtomicLong();
+            long ballot = (System.currentTimeMillis() << 16) | 1;
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<LatencyRecorder>> results = new ArrayList<>(threads);
+            long start = System.nanoTime();
+            for (int thread = 0; thread < threads; thread++) {
+                results.add(executor.submit(() -> runProposer(acceptor, ballot, slots, acceptsPerThread)));
+            }
+            LatencyRecorder recorder = new LatencyRecorder();
+            for (Future<LatencyRecorder> result : results) {
+                recorder.merge(result.get());
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            executor.shutdown();
+
+            System.out.printf("%b,%d,%d,%.1f,%.3f,%.3f%n", groupCommit, threads, recorder.count(),
+                    recorder.count() / seconds, recorder.percentileMillis(50), recorder.percentileMillis(99));
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Sends accept requests for fresh slots one after the other, recording the latency of each successful one.
+     */
+    private static LatencyRecorder runProposer(Server acceptor, long ballot, AtomicLong slots, int accepts) {
+        LatencyRecorder recorder = new LatencyRecorder();
+        for (int i = 0; i < accepts; i++) {
+            long start = System.nanoTime();
+            try {
+                acceptor.accept(ballot, slots.getAndIncrement(), "value-" + i);
+                recorder.record(System.nanoTime() - start);
+            } catch (RemoteException e) {
+                // Simulated failure of the acceptor
+            }
+        }
+        return recorder;
+    }
+}
@@ -5,9 +5,15 @@ import java.rmi.ConnectException;
 import java.rmi.Naming;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Scanner;
 import server.IStore;
+import server.PaxosStats;
+import server.RequestId;
 import utils.ILogger;
+import utils.ILogger.Level;
 import utils.Logger;
 
 /**
@@ -18,11 +24,15 @@ public class Client implements IClient {
 
     // Base port number to calculate other port numbers dynamically
     private static final int BASE_PORT = 1100;
+    // Times a write is sent before its failure is reported; the retries reuse its request id
+    private static final int MAX_WRITE_ATTEMPTS = 3;
 
     // Client logger for logging events
     private final ILogger logger;
     private final Scanner scanner;
     private IStore server;
+    // The id of the next write request, so a retry of a write that timed out is not applied twice
+    private RequestId nextRequestId = RequestId.firstOfNewClient();
 
     /**
      * Constructs a Client object.
@@ -65,7 +75,7 @@ public class Client implements IClient {
      * @param e The exception associated with the error.
      */
     private void handleInitializationError(String message, Exception e) {
-        this.logger.log("> Error: " + message + " \n" + e.getMessage());
+        this.logger.log(Level.WARN, "> Error: " + message + " \n" + e.getMessage());
         System.err.println("> Error: " + message + " \n" + e.getMessage());
         this.logger.close();
         this.scanner.close();
@@ -81,13 +91,13 @@ public class Client implements IClient {
             this.logger.log("> Pre-populating database started");
             System.out.println("> Pre-populating database started");
             // Example data being put into the store
-            System.out.println(this.server.put("name", "saleh"));
-            System.out.println(this.server.put("car", "nissan"));
-            System.out.println(this.server.put("city", "malden"));
-            System.out.println(this.server.put("device", "iphone"));
-            System.out.println(this.server.put("laptop", "macbook"));
-            System.out.println(this.server.put("zipcode", "02148"));
-            System.out.println(this.server.put("state", "massachusetts"));
+            System.out.println(this.put("name", "saleh"));
+            System.out.println(this.put("car", "nissan"));
+            System.out.println(this.put("city", "malden"));
+            System.out.println(this.put("device", "iphone"));
+            System.out.println(this.put("laptop", "macbook"));
+            System.out.println(this.put("zipcode", "02148"));
+            System.out.println(this.put("state", "massachusetts"));
             this.logger.log("> Pre-populating database done");
             System.out.println("> Pre-populating database done");
             Thread.sleep(1000);
@@ -110,11 +120,11 @@ public class Client implements IClient {
             System.out.println("> Running five commands for each method on database started");
 
             // Examples of PUT
-            System.out.println(this.server.put("lastname", "alkhalifa"));
-            System.out.println(this.server.put("plant", "mint"));
-            System.out.println(this.server.put("university", "neu"));
-            System.out.println(this.server.put("role", "developer"));
-            System.out.println(this.server.put("job", "datascience"));
+            System.out.println(this.put("lastname", "alkhalifa"));
+            System.out.println(this.put("plant", "mint"));
+            System.out.println(this.put("university", "neu"));
+            System.out.println(this.put("role", "developer"));
+            System.out.println(this.put("job", "datascience"));
 
             // Examples of GET
             System.out.println(this.server.get("name"));
@@ -124,11 +134,11 @@ public class Client implements IClient {
             System.out.println(this.server.get("role"));
 
             // Examples of DELTE
-            System.out.println(this.server.delete("name"));
-            System.out.println(this.server.delete("lastname"));
-            System.out.println(this.server.delete("university"));
-            System.out.println(this.server.delete("job"));
-            System.out.println(this.server.delete("role"));
+            System.out.println(this.delete("name"));
+            System.out.println(this.delete("lastname"));
+            System.out.println(this.delete("university"));
+            System.out.println(this.delete("job"));
+            System.out.println(this.delete("role"));
 
             this.logger.log("> Running five commands for each method on database done");
             System.out.println("> Running five commands for each method on database done");
@@ -149,7 +159,7 @@ public class Client implements IClient {
      * @param e The exception associated with the error.
      */
     private void handleConnectionError(String message, Exception e) {
-        this.logger.log("> Error: " + message + ": " + e.getMessage());
+        this.logger.log(Level.WARN, "> Error: " + message + ": " + e.getMessage());
         System.err.println("> Error: " + message + ": " + e.getMessage());
     }
 
@@ -160,7 +170,7 @@ public class Client implements IClient {
      */
     @Override
     public String getRequest() {
-        System.out.print("> Enter operation (PUT/GET/DELETE:key:value[only with PUT]): ");
+        System.out.print("> Enter operation (PUT/GET/DELETE:key:value[only with PUT], MPUT:key=value,..., MGET/MDELETE:key,..., or STATS): ");
         return this.scanner.nextLine();
     }
 
@@ -171,6 +181,9 @@ public class Client implements IClient {
      * @return The result of the request execution.
      */
     private String parseRequest(String request) {
+        if ("STATS".equalsIgnoreCase(request.trim())) {
+            return handleStatsOperation();
+        }
         String[] elements = request.split(":");
         if (elements.length < 2 || elements.length > 3) {
             return logAndReturnError("> Error: Received malformed request: " + request, "Check to make sure you follow the predefined protocol PUT/GET/DELETE:key:value[with PUT only] and try again");
@@ -188,12 +201,20 @@ public class Client implements IClient {
                     }
                     value = elements[2].toLowerCase();
                     this.logger.log("> Received a request to save " + "\"" + key + "\"" + " mapped to " + "\"" + value + "\"");
-                    return this.server.put(key, value);
+                    return this.put(key, value);
                 case "GET":
                     return handleGetOperation(key);
                 case "DELETE":
                     this.logger.log("> Received a request to delete the key-value pair associated with the key: \"" + key + "\"");
-                    return this.server.delete(key);
+                    return this.delete(key);
+                case "MPUT":
+                    return handleMultiPutOperation(key);
+                case "MGET":
+                    this.logger.log("> Received a request to retrieve the values mapped to " + key);
+                    return formatResults(this.server.multiGet(Arrays.asList(key.split(","))));
+                case "MDELETE":
+                    this.logger.log("> Received a request to delete the key-value pairs associated with " + key);
+                    return formatResults(this.sendWrite(requestId -> this.server.multiDelete(Arrays.asList(key.split(",")), requestId)));
                 default:
                     return logAndReturnError("Received an invalid request: " + request, "Invalid request, must follow predefined protocol PUT/GET/DELETE:key:value[with PUT only] and try again");
             }
@@ -210,10 +231,64 @@ public class Client implements IClient {
      * @return The formatted error message.
      */
     private String logAndReturnError(String logMessage, String errorMessage) {
-        this.logger.log("> Error: " + logMessage);
+        this.logger.log(Level.WARN, "> Error: " + logMessage);
         return "> Error: " + errorMessage;
     }
 
+    /**
+     * Sends a write with the next request id, sending it again with the same id when the call fails, e.g.
+     * because no response arrived within the RMI response timeout. The servers recognise the retry, so a
+     * write that was applied is not applied again and the retry returns the result it had.
+     *
+     * @param write Sends the write with a request id.
+     * @return The result of the write.
+     * @throws RemoteException If every attempt failed.
+     */
+    private <T> T sendWrite(Write<T> write) throws RemoteException {
+        RequestId requestId = this.nextRequestId;
+        this.nextRequestId = requestId.next();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return write.send(requestId);
+            } catch (RemoteException e) {
+                if (attempt == MAX_WRITE_ATTEMPTS) {
+                    throw e;
+                }
+                this.logger.log(Level.WARN, "> Error: attempt " + attempt + " of request " + requestId.getSequence() + " failed, retrying: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Sends one attempt of a write
+     */
+    private interface Write<T> {
+        T send(RequestId requestId) throws RemoteException;
+    }
+
+    /**
+     * Stores a value with the next request id, as the PUT command does.
+     *
+     * @param key The key under which the value should be stored.
+     * @param value The value to be associated with the key.
+     * @return The result of the write.
+     * @throws RemoteException If every attempt failed.
+     */
+    private String put(String key, String value) throws RemoteException {
+        return this.sendWrite(requestId -> this.server.put(key, value, requestId));
+    }
+
+    /**
+     * Removes a value with the next request id, as the DELETE command does.
+     *
+     * @param key The key whose associated value is to be removed.
+     * @return The result of the removal.
+     * @throws RemoteException If every attempt failed.
+     */
+    private String delete(String key) throws RemoteException {
+        return this.sendWrite(requestId -> this.server.delete(key, requestId));
+    }
+
     /**
      * Handles the 'GET' operation.
      *
@@ -236,6 +311,70 @@ public class Client implements IClient {
         }
     }
 
+    /**
+     * Handles the 'MPUT' operation, which saves every key=value pair of a comma-separated list at once.
+     *
+     * @param pairs The comma-separated key=value pairs.
+     * @return The result for each key, or an error message.
+     */
+    private String handleMultiPutOperation(String pairs) throws RemoteException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        for (String pair : pairs.split(",")) {
+            String[] keyValue = pair.split("=");
+            if (keyValue.length != 2) {
+                return logAndReturnError("Parsing error because of invalid pair " + pair, "Error parsing the pair requested. Please follow the predefined protocol MPUT:key=value,key=value and try again");
+            }
+            entries.put(keyValue[0], keyValue[1]);
+        }
+        this.logger.log("> Received a request to save " + entries);
+        return formatResults(this.sendWrite(requestId -> this.server.multiPut(entries, requestId)));
+    }
+
+    /**
+     * Formats the result for each key of a multi-key operation, one key per line.
+     */
+    private static String formatResults(Map<String, String> results) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, String> result : results.entrySet()) {
+            text.append(text.length() == 0 ? "" : "\n").append(result.getKey()).append(": ").append(result.getValue());
+        }
+        return text.toString();
+    }
+
+    /**
+     * Handles the 'STATS' operation by fetching the metrics of the server and formatting them as tables.
+     *
+     * @return The formatted metrics, or an error message.
+     */
+    private String handleStatsOperation() {
+        try {
+            PaxosStats stats = this.server.stats();
+            this.logger.log("> Received request to retrieve the stats of Server{serverId=" + stats.getServerId() + "}");
+            StringBuilder text = new StringBuilder("> Stats of Server{serverId=" + stats.getServerId() + "}\n");
+            text.append(String.format("%-28s %10s %10s %10s %10s %10s %10s %10s%n", "latency (ms)", "count", "mean", "p50", "p90", "p99", "p99.9", "max"));
+            for (Map.Entry<String, PaxosStats.Distribution> latency : stats.getLatencies().entrySet()) {
+                PaxosStats.Distribution d = latency.getValue();
+                text.append(String.format("%-28s %10d %10.3f %10.3f %10.3f %10.3f %10.3f %10.3f%n", latency.getKey(), d.getCount(),
+                        d.getMean() / 1e6, d.getP50() / 1e6, d.getP90() / 1e6, d.getP99() / 1e6, d.getP999() / 1e6, d.getMax() / 1e6));
+            }
+            text.append(String.format("%-28s %10s %10s %10s %10s %10s %10s %10s%n", "value", "count", "mean", "p50", "p90", "p99", "p99.9", "max"));
+            for (Map.Entry<String, PaxosStats.Distribution> distribution : stats.getDistributions().entrySet()) {
+                PaxosStats.Distribution d = distribution.getValue();
+                text.append(String.format("%-28s %10d %10.2f %10d %10d %10d %10d %10d%n", distribution.getKey(), d.getCount(),
+                        d.getMean(), d.getP50(), d.getP90(), d.getP99(), d.getP999(), d.getMax()));
+            }
+            text.append(String.format("%-28s %10s%n", "counter", "value"));
+            for (Map.Entry<String, Long> counter : stats.getCounters().entrySet()) {
+                text.append(String.format("%-28s %10d%n", counter.getKey(), counter.getValue()));
+            }
+            return text.toString();
+        } catch (ConnectException ce) {
+            return handleExceptionDuringRequest("Server timed out", ce);
+        } catch (RemoteException re) {
+            return handleExceptionDuringRequest("RMI error", re);
+        }
+    }
+
     /**
      * Handles exceptions that occur during request processing by logging and formatting an error message.
      *
@@ -244,7 +383,7 @@ public class Client implements IClient {
      * @return A formatted error message based on the exception.
      */
     private String handleExceptionDuringRequest(String message, Exception e) {
-        this.logger.log("> Error: " + message + ": " + e.getMessage());
+        this.logger.log(Level.WARN, "> Error: " + message + ": " + e.getMessage());
         return "> Error: " + message + ": " + e.getMessage();
     }
 
@@ -305,7 +444,7 @@ public class Client implements IClient {
      * @param e The exception that occurred.
      */
     private void handleExceptionDuringShutdown(Exception e) {
-        this.logger.log("> Error during shutdown: " + e.getMessage());
+        this.logger.log(Level.WARN, "> Error during shutdown: " + e.getMessage());
         System.err.println("> Error during shutdown: " + e.getMessage());
     }
 }
@@ -0,0 +1,156 @@
+package client;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Picks the index of the key a request uses, following one of the key distributions of YCSB. Choosers
+ * are shared by all workers and keep no mutable state of their own, so they need no locking.
+ */
+abstract class KeyChooser {
+    // The skew of the Zipfian distributions, as in YCSB
+    private static final double ZIPFIAN_CONSTANT = 0.99;
+
+    // The hot set of the hotspot distribution and the share of requests it receives
+    private static final double HOT_KEY_FRACTION = 0.2;
+    private static final double HOT_REQUEST_FRACTION = 0.8;
+
+    /**
+     * Returns the index of the key of the next request.
+     */
+    abstract long next(ThreadLocalRandom random);
+
+    /**
+     * Returns a chooser for a distribution.
+     *
+     * @param distribution The distribution to follow.
+     * @param keys The number of keys written before the run.
+     * @param nextInsert The index the next inserted key gets, which grows during the run.
+     */
+    static KeyChooser of(LoadConfig.Distribution distribution, long keys, AtomicLong nextInsert) {
+        switch (distribution) {
+            case ZIPFIAN:
+                return new Zipfian(keys, true);
+            case LATEST:
+                return new Latest(keys, nextInsert);
+            case HOTSPOT:
+                return new Hotspot(keys);
+            default:
+                return new Uniform(keys);
+        }
+    }
+
+    /**
+     * Every key equally likely
+     */
+    private static final class Uniform extends KeyChooser {
+        private final long keys;
+
+        Uniform(long keys) {
+            this.keys = keys;
+        }
+
+        @Override
+        long next(ThreadLocalRandom random) {
+            return random.nextLong(this.keys);
+        }
+    }
+
+    /**
+     * The key of rank i drawn in proportion to 1 / i^0.99, with the algorithm of Gray et al. that YCSB
+     * uses. Scrambled, the ranks are hashed over the key space so the popular keys are not neighbours.
+     */
+    private static final class Zipfian extends KeyChooser {
+        private final long keys;
+        private final boolean scrambled;
+        private final double zetan;
+        private final double alpha;
+        private final double eta;
+
+        Zipfian(long keys, boolean scrambled) {
+            this.keys = keys;
+            this.scrambled = scrambled;
+            double zeta = 0;
+            for (long i = 1; i <= keys; i++) {
+                zeta += 1 / Math.pow(i, ZIPFIAN_CONSTANT);
+            }
+            double zeta2 = 1 + 1 / Math.pow(2, ZIPFIAN_CONSTANT);
+            this.zetan = zeta;
+            this.alpha = 1 / (1 - ZIPFIAN_CONSTANT);
+            this.eta = (1 - Math.pow(2.0 / keys, 1 - ZIPFIAN_CONSTANT)) / (1 - zeta2 / zeta);
+        }
+
+        @Override
+        long next(ThreadLocalRandom random) {
+            long rank = this.rank(random);
+            return this.scrambled ? Math.floorMod(fnv(rank), this.keys) : rank;
+        }
+
+        /**
+         * Returns the rank of the next key, 0 being the most popular.
+         */
+        long rank(ThreadLocalRandom random) {
+            double u = random.nextDouble();
+            double uz = u * this.zetan;
+            if (uz < 1) {
+                return 0;
+            }
+            if (uz < 1 + Math.pow(0.5, ZIPFIAN_CONSTANT)) {
+                return 1;
+            }
+            return Math.min(this.keys - 1, (long) (this.keys * Math.pow(this.eta * u - this.eta + 1, this.alpha)));
+        }
+
+        /**
+         * Hashes a rank with 64-bit FNV-1a.
+         */
+        private static long fnv(long value) {
+            long hash = 0xCBF29CE484222325L;
+            for (int i = 0; i < Long.BYTES; i++) {
+                hash ^= value & 0xFF;
+                hash *= 0x100000001B3L;
+                value >>>= 8;
+            }
+            return hash;
+        }
+    }
+
+    /**
+     * The most recently inserted keys the most popular, Zipfian over how long ago they were inserted
+     */
+    private static final class Latest extends KeyChooser {
+        private final Zipfian recency;
+        private final AtomicLong nextInsert;
+
+        Latest(long keys, AtomicLong nextInsert) {
+            this.recency = new Zipfian(keys, false);
+            this.nextInsert = nextInsert;
+        }
+
+        @Override
+        long next(ThreadLocalRandom random) {
+            return Math.max(0, this.nextInsert.get() - 1 - this.recency.rank(random));
+        }
+    }
+
+    /**
+     * A fifth of the keys receiving four fifths of the requests, each set uniformly
+     */
+    private static final class Hotspot extends KeyChooser {
+        private final long keys;
+        private final long hotKeys;
+
+        Hotspot(long keys) {
+            this.keys = keys;
+            this.hotKeys = Math.max(1, (long) (keys * HOT_KEY_FRACTION));
+        }
+
+        @Override
+        long next(ThreadLocalRandom random) {
+            if (this.hotKeys >= this.keys || random.nextDouble() < HOT_REQUEST_FRACTION) {
+                return random.nextLong(this.hotKeys);
+            }
+            return this.hotKeys + random.nextLong(this.keys - this.hotKeys);
+        }
+    }
+}
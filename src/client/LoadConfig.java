@@ -0,0 +1,365 @@
+package client;
+
+/**
+ * Holds the settings of a load generator run. Settings are read from system properties, like the ones of
+ * the servers, e.g. java -Dload.mode=open -Dload.rate=2000 main.ClientMain load localhost
+ */
+public class LoadConfig {
+
+    /**
+     * How requests are issued
+     */
+    public enum Mode {
+        // Every worker sends its next request as soon as the previous one was answered
+        CLOSED,
+        // Requests arrive at a fixed average rate whether or not earlier ones were answered
+        OPEN
+    }
+
+    /**
+     * How popular each key is
+     */
+    public enum Distribution {
+        // Every key equally likely
+        UNIFORM,
+        // A few keys take most requests, spread over the key space
+        ZIPFIAN,
+        // The most recently inserted keys take most requests
+        LATEST,
+        // A fifth of the keys takes four fifths of the requests
+        HOTSPOT
+    }
+
+    // Property names:
+    public static final String MODE_PROPERTY = "load.mode";
+    public static final String THREADS_PROPERTY = "load.threads";
+    public static final String RATE_PROPERTY = "load.rate";
+    public static final String GET_PERCENT_PROPERTY = "load.getPercent";
+    public static final String PUT_PERCENT_PROPERTY = "load.putPercent";
+    public static final String DELETE_PERCENT_PROPERTY = "load.deletePercent";
+    public static final String KEYS_PROPERTY = "load.keys";
+    public static final String WARMUP_PROPERTY = "load.warmupSeconds";
+    public static final String DURATION_PROPERTY = "load.durationSeconds";
+    public static final String WORKLOAD_PROPERTY = "load.workload";
+    public static final String DISTRIBUTION_PROPERTY = "load.distribution";
+    public static final String KEY_SIZE_PROPERTY = "load.keySize";
+    public static final String VALUE_SIZE_PROPERTY = "load.valueSize";
+    public static final String RECORD_TRACE_PROPERTY = "load.recordTrace";
+    public static final String REPLAY_TRACE_PROPERTY = "load.replayTrace";
+    public static final String REPLAY_SPEED_PROPERTY = "load.replaySpeed";
+
+    // Settings:
+    private Mode mode = Mode.CLOSED;
+    private int threads = 32;
+    private double rate = 1000;
+    private int getPercent = 80;
+    private int putPercent = 15;
+    private int deletePercent = 5;
+    private int keys = 10000;
+    private long warmupSeconds = 5;
+    private long durationSeconds = 30;
+    private Workload workload = Workload.CUSTOM;
+    private Distribution distribution = null;
+    private int keySize = 16;
+    private int valueSize = 100;
+    private String recordTrace = null;
+    private String replayTrace = null;
+    private double replaySpeed = 1;
+
+    /**
+     * Constructs a configuration holding the default settings
+     */
+    public LoadConfig() {
+    }
+
+    /**
+     * Builds a configuration from the system properties, falling back to the defaults for any
+     * property that is not set
+     */
+    public static LoadConfig fromSystemProperties() {
+        LoadConfig config = new LoadConfig();
+        config.mode = Mode.valueOf(System.getProperty(MODE_PROPERTY, config.mode.name()).toUpperCase());
+        config.threads = Integer.getInteger(THREADS_PROPERTY, config.threads);
+        config.rate = Double.parseDouble(System.getProperty(RATE_PROPERTY, Double.toString(config.rate)));
+        config.getPercent = Integer.getInteger(GET_PERCENT_PROPERTY, config.getPercent);
+        config.putPercent = Integer.getInteger(PUT_PERCENT_PROPERTY, config.putPercent);
+        config.deletePercent = Integer.getInteger(DELETE_PERCENT_PROPERTY, config.deletePercent);
+        config.keys = Integer.getInteger(KEYS_PROPERTY, config.keys);
+        config.warmupSeconds = Long.getLong(WARMUP_PROPERTY, config.warmupSeconds);
+        config.durationSeconds = Long.getLong(DURATION_PROPERTY, config.durationSeconds);
+        config.workload = Workload.valueOf(System.getProperty(WORKLOAD_PROPERTY, config.workload.name()).toUpperCase());
+        String distribution = System.getProperty(DISTRIBUTION_PROPERTY);
+        config.distribution = distribution == null ? null : Distribution.valueOf(distribution.toUpperCase());
+        config.keySize = Integer.getInteger(KEY_SIZE_PROPERTY, config.keySize);
+        config.valueSize = Integer.getInteger(VALUE_SIZE_PROPERTY, config.valueSize);
+        config.recordTrace = System.getProperty(RECORD_TRACE_PROPERTY, config.recordTrace);
+        config.replayTrace = System.getProperty(REPLAY_TRACE_PROPERTY, config.replayTrace);
+        config.replaySpeed = Double.parseDouble(System.getProperty(REPLAY_SPEED_PROPERTY, Double.toString(config.replaySpeed)));
+        return config;
+    }
+
+    /**
+     * Whether the run is closed-loop, at a fixed concurrency, or open-loop, at a fixed arrival rate
+     */
+    public Mode getMode() {
+        return this.mode;
+    }
+
+    /**
+     * Setter for the mode
+     */
+    public LoadConfig setMode(Mode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    /**
+     * The number of worker threads, spread over the servers. In open-loop runs it bounds how many
+     * requests can be outstanding at once
+     */
+    public int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * Setter for the number of worker threads
+     */
+    public LoadConfig setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * The average number of requests per second of an open-loop run, over all workers
+     */
+    public double getRate() {
+        return this.rate;
+    }
+
+    /**
+     * Setter for the open-loop arrival rate
+     */
+    public LoadConfig setRate(double rate) {
+        this.rate = rate;
+        return this;
+    }
+
+    /**
+     * The share of GET requests of a CUSTOM workload, relative to the sum of the three percentages
+     */
+    public int getGetPercent() {
+        return this.getPercent;
+    }
+
+    /**
+     * Setter for the share of GET requests
+     */
+    public LoadConfig setGetPercent(int getPercent) {
+        this.getPercent = getPercent;
+        return this;
+    }
+
+    /**
+     * The share of PUT requests of a CUSTOM workload, relative to the sum of the three percentages
+     */
+    public int getPutPercent() {
+        return this.putPercent;
+    }
+
+    /**
+     * Setter for the share of PUT requests
+     */
+    public LoadConfig setPutPercent(int putPercent) {
+        this.putPercent = putPercent;
+        return this;
+    }
+
+    /**
+     * The share of DELETE requests of a CUSTOM workload, relative to the sum of the three percentages
+     */
+    public int getDeletePercent() {
+        return this.deletePercent;
+    }
+
+    /**
+     * Setter for the share of DELETE requests
+     */
+    public LoadConfig setDeletePercent(int deletePercent) {
+        this.deletePercent = deletePercent;
+        return this;
+    }
+
+    /**
+     * The number of distinct keys requests are spread over; every key is written once before the run
+     */
+    public int getKeys() {
+        return this.keys;
+    }
+
+    /**
+     * Setter for the number of keys
+     */
+    public LoadConfig setKeys(int keys) {
+        this.keys = keys;
+        return this;
+    }
+
+    /**
+     * How long the load runs before latencies are recorded
+     */
+    public long getWarmupSeconds() {
+        return this.warmupSeconds;
+    }
+
+    /**
+     * Setter for the warm-up duration
+     */
+    public LoadConfig setWarmupSeconds(long warmupSeconds) {
+        this.warmupSeconds = warmupSeconds;
+        return this;
+    }
+
+    /**
+     * How long latencies are recorded for, after the warm-up
+     */
+    public long getDurationSeconds() {
+        return this.durationSeconds;
+    }
+
+    /**
+     * Setter for the measured duration
+     */
+    public LoadConfig setDurationSeconds(long durationSeconds) {
+        this.durationSeconds = durationSeconds;
+        return this;
+    }
+
+    /**
+     * The operation mix: one of the YCSB core workloads A to F, or CUSTOM for the GET, PUT and DELETE
+     * percentages
+     */
+    public Workload getWorkload() {
+        return this.workload;
+    }
+
+    /**
+     * Setter for the workload
+     */
+    public LoadConfig setWorkload(Workload workload) {
+        this.workload = workload;
+        return this;
+    }
+
+    /**
+     * How popular each key is; unless set, the distribution of the workload
+     */
+    public Distribution getDistribution() {
+        return this.distribution != null ? this.distribution : this.workload.getDistribution();
+    }
+
+    /**
+     * Setter for the key distribution, or null for the one of the workload
+     */
+    public LoadConfig setDistribution(Distribution distribution) {
+        this.distribution = distribution;
+        return this;
+    }
+
+    /**
+     * The length of the keys, which are zero-padded up to it
+     */
+    public int getKeySize() {
+        return this.keySize;
+    }
+
+    /**
+     * Setter for the key length
+     */
+    public LoadConfig setKeySize(int keySize) {
+        this.keySize = keySize;
+        return this;
+    }
+
+    /**
+     * The length of the values written
+     */
+    public int getValueSize() {
+        return this.valueSize;
+    }
+
+    /**
+     * Setter for the value length
+     */
+    public LoadConfig setValueSize(int valueSize) {
+        this.valueSize = valueSize;
+        return this;
+    }
+
+    /**
+     * The file the requests of the run are recorded to, or null to record none
+     */
+    public String getRecordTrace() {
+        return this.recordTrace;
+    }
+
+    /**
+     * Setter for the trace file to record
+     */
+    public LoadConfig setRecordTrace(String recordTrace) {
+        this.recordTrace = recordTrace;
+        return this;
+    }
+
+    /**
+     * A trace file whose requests are sent again at the times they were recorded, instead of generating
+     * requests, or null to generate them
+     */
+    public String getReplayTrace() {
+        return this.replayTrace;
+    }
+
+    /**
+     * Setter for the trace file to replay
+     */
+    public LoadConfig setReplayTrace(String replayTrace) {
+        this.replayTrace = replayTrace;
+        return this;
+    }
+
+    /**
+     * How much faster than recorded a trace is replayed: 2 sends its requests in half the time
+     */
+    public double getReplaySpeed() {
+        return this.replaySpeed;
+    }
+
+    /**
+     * Setter for the replay speed
+     */
+    public LoadConfig setReplaySpeed(double replaySpeed) {
+        this.replaySpeed = replaySpeed;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadConfig{" +
+                "mode=" + mode +
+                ", threads=" + threads +
+                ", rate=" + rate +
+                ", getPercent=" + getPercent +
+                ", putPercent=" + putPercent +
+                ", deletePercent=" + deletePercent +
+                ", keys=" + keys +
+                ", warmupSeconds=" + warmupSeconds +
+                ", durationSeconds=" + durationSeconds +
+                ", workload=" + workload +
+                ", distribution=" + getDistribution() +
+                ", keySize=" + keySize +
+                ", valueSize=" + valueSize +
+                ", recordTrace='" + recordTrace + '\'' +
+                ", replayTrace='" + replayTrace + '\'' +
+                ", replaySpeed=" + replaySpeed +
+                '}';
+    }
+}
@@ -0,0 +1,411 @@
+package client;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.MalformedURLException;
+import java.nio.file.Paths;
+import java.rmi.Naming;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import server.Histogram;
+import server.IStore;
+import server.PaxosStats;
+
+/**
+ * Generates load against all five servers from many threads and reports the throughput and latency
+ * percentiles of each operation type. Worker i sends its requests to server i mod 5. Every request picks
+ * its operation from the mix of the workload and its key from the key distribution, or comes from a
+ * recorded trace replayed at its original times.
+ *
+ * In a closed-loop run each worker sends its next request as soon as the previous one was answered, so
+ * the load adapts to the servers and a latency is the time a request took. In an open-loop run, and when
+ * replaying a trace, requests are scheduled ahead of time and a latency runs from when the request was
+ * scheduled rather than when it was sent. A request held back because its worker was still waiting on a
+ * slow one then counts the time it waited too, so a stall shows in the percentiles instead of keeping
+ * the requests that would have measured it from being sent (coordinated omission). The time from
+ * sending to answer is reported alongside as the service time.
+ */
+public class LoadGenerator {
+    private static final int BASE_PORT = 1100;
+    private static final int SERVERS = 5;
+
+    // A scan reads up to this many consecutive keys, as in YCSB workload E
+    private static final int MAX_SCAN_LENGTH = 100;
+
+    // Prefixes the zero-padded index of every key
+    private static final String KEY_PREFIX = "key-";
+
+    private final LoadConfig config;
+    private final IStore[] servers = new IStore[SERVERS];
+
+    // The cumulative shares of the operations, so a draw below the total falls on one of them
+    private final int[] cumulativeMix = new int[LoadOperation.values().length];
+    private final KeyChooser keyChooser;
+    // The index of the next key inserted; keys below it were written
+    private final AtomicLong nextInsert;
+
+    // Per operation type, in the order of LoadOperation, and over all of them
+    private final OperationStats[] stats = new OperationStats[LoadOperation.values().length];
+    private final OperationStats all = new OperationStats();
+
+    // The length of the keys, and characters values are cut from
+    private int keySize;
+    private String values;
+    private double measuredSeconds;
+
+    /**
+     * Connects to every server.
+     *
+     * @param host The host the servers run on.
+     * @param config The settings of the run.
+     */
+    public LoadGenerator(String host, LoadConfig config) throws RemoteException, NotBoundException, MalformedURLException {
+        // The same timeouts as the interactive client
+        System.setProperty("sun.rmi.transport.tcp.responseTimeout", "2000");
+        System.setProperty("sun.rmi.transport.proxy.connectTimeout", "5000");
+
+        int[] mix = config.getWorkload().mix(config);
+        int total = 0;
+        for (int i = 0; i < mix.length; i++) {
+            total += mix[i];
+            this.cumulativeMix[i] = total;
+        }
+        if (total <= 0 && config.getReplayTrace() == null) {
+            throw new IllegalArgumentException("> Error: the operation mix is empty");
+        }
+        if (config.getKeys() <= 0) {
+            throw new IllegalArgumentException("> Error: there must be at least one key");
+        }
+        this.config = config;
+        this.nextInsert = new AtomicLong(config.getKeys());
+        this.keyChooser = KeyChooser.of(config.getDistribution(), config.getKeys(), this.nextInsert);
+        for (int serverId = 0; serverId < SERVERS; serverId++) {
+            this.servers[serverId] = (IStore) Naming.lookup("rmi://" + host + ":" + (BASE_PORT + serverId) + "/KVStore" + serverId);
+        }
+        for (int i = 0; i < this.stats.length; i++) {
+            this.stats[i] = new OperationStats();
+        }
+    }
+
+    /**
+     * Writes every key once, runs the warm-up and the measured load or replays a trace, and prints the
+     * results as CSV.
+     */
+    public void run(PrintStream out) throws InterruptedException, IOException {
+        Trace replay = this.config.getReplayTrace() != null ? Trace.read(Paths.get(this.config.getReplayTrace())) : null;
+        this.keySize = replay != null ? replay.keySize : this.config.getKeySize();
+        int longestValue = this.config.getValueSize();
+        if (replay != null) {
+            for (Trace.Request request : replay.requests) {
+                longestValue = Math.max(longestValue, request.length);
+            }
+        }
+        this.values = randomCharacters(longestValue);
+
+        System.out.println("> Running " + this.config);
+        System.out.println("> Writing " + this.config.getKeys() + " keys...");
+        this.runWorkers(this::populate);
+
+        long start = System.nanoTime();
+        long measureFrom = start + this.config.getWarmupSeconds() * 1_000_000_000L;
+        if (replay != null) {
+            long end = replay.requests.isEmpty() ? start
+                    : start + (long) (replay.requests.get(replay.requests.size() - 1).offsetNanos / this.config.getReplaySpeed());
+            System.out.println("> Replaying " + replay.requests.size() + " requests over " + (end - start) / 1_000_000_000L
+                    + " s, the first " + this.config.getWarmupSeconds() + " s as a warm-up...");
+            this.runWorkers(worker -> this.replay(worker, replay.requests, start, measureFrom));
+            this.measuredSeconds = Math.max(0, end - measureFrom) / 1e9;
+        } else {
+            System.out.println("> Warming up for " + this.config.getWarmupSeconds() + " s, then measuring for "
+                    + this.config.getDurationSeconds() + " s...");
+            long until = measureFrom + this.config.getDurationSeconds() * 1_000_000_000L;
+            List<List<Trace.Request>> recorded = new ArrayList<>();
+            for (int worker = 0; worker < this.config.getThreads(); worker++) {
+                recorded.add(this.config.getRecordTrace() != null ? new ArrayList<>() : null);
+            }
+            this.runWorkers(worker -> this.generate(worker, start, measureFrom, until, recorded.get(worker)));
+            this.measuredSeconds = this.config.getDurationSeconds();
+
+            if (this.config.getRecordTrace() != null) {
+                List<Trace.Request> requests = new ArrayList<>();
+                recorded.forEach(requests::addAll);
+                new Trace(this.keySize, requests).write(Paths.get(this.config.getRecordTrace()));
+                System.out.println("> Recorded " + requests.size() + " requests to " + this.config.getRecordTrace());
+            }
+        }
+        this.report(out);
+    }
+
+    /**
+     * Runs a task on every worker thread and waits for them all.
+     */
+    private void runWorkers(Worker task) throws InterruptedException {
+        Thread[] workers = new Thread[this.config.getThreads()];
+        for (int worker = 0; worker < workers.length; worker++) {
+            int id = worker;
+            workers[worker] = new Thread(() -> task.run(id), "load-" + worker);
+            workers[worker].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    /**
+     * Writes the keys assigned to a worker, so GETs and DELETEs find them.
+     */
+    private void populate(int worker) {
+        IStore server = this.servers[worker % SERVERS];
+        for (long key = worker; key < this.config.getKeys(); key += this.config.getThreads()) {
+            try {
+                server.put(this.keyOf(key), this.valueOf(this.config.getValueSize()));
+            } catch (RemoteException e) {
+                System.err.println("> Error: could not write \"" + this.keyOf(key) + "\": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Sends requests from one worker until the end of the run, recording those scheduled after the warm-up.
+     *
+     * @param worker The index of the worker.
+     * @param start When the run started, in System.nanoTime.
+     * @param measureFrom When the warm-up ends.
+     * @param until When the run ends.
+     * @param trace Collects the requests sent, or null to keep none.
+     */
+    private void generate(int worker, long start, long measureFrom, long until, List<Trace.Request> trace) {
+        IStore server = this.servers[worker % SERVERS];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean open = this.config.getMode() == LoadConfig.Mode.OPEN;
+        // Every worker takes its share of the rate, which together arrive at the configured rate
+        double meanIntervalNanos = this.config.getThreads() * 1e9 / this.config.getRate();
+        long scheduled = start;
+        while (true) {
+            if (open) {
+                // Exponential intervals, so arrivals follow a Poisson process
+                scheduled += (long) (-Math.log(1 - random.nextDouble()) * meanIntervalNanos);
+                if (scheduled >= until) {
+                    return;
+                }
+                waitUntil(scheduled);
+            } else {
+                scheduled = System.nanoTime();
+                if (scheduled >= until) {
+                    return;
+                }
+            }
+
+            LoadOperation operation = this.pick(random.nextInt(this.cumulativeMix[this.cumulativeMix.length - 1]));
+            long key = operation == LoadOperation.INSERT ? this.nextInsert.getAndIncrement() : this.keyChooser.next(random);
+            int length = operation == LoadOperation.SCAN ? 1 + random.nextInt(MAX_SCAN_LENGTH) : this.config.getValueSize();
+            if (trace != null) {
+                trace.add(new Trace.Request(scheduled - start, operation, key, length));
+            }
+            this.execute(server, operation, key, length, scheduled, measureFrom);
+        }
+    }
+
+    /**
+     * Sends the requests of a trace assigned to one worker at their recorded times, scaled by the replay
+     * speed, recording those scheduled after the warm-up.
+     */
+    private void replay(int worker, List<Trace.Request> requests, long start, long measureFrom) {
+        IStore server = this.servers[worker % SERVERS];
+        for (int i = worker; i < requests.size(); i += this.config.getThreads()) {
+            Trace.Request request = requests.get(i);
+            long scheduled = start + (long) (request.offsetNanos / this.config.getReplaySpeed());
+            waitUntil(scheduled);
+            this.execute(server, request.operation, request.key, request.length, scheduled, measureFrom);
+        }
+    }
+
+    /**
+     * Parks the calling thread until the given System.nanoTime.
+     */
+    private static void waitUntil(long deadline) {
+        long wait;
+        while ((wait = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    /**
+     * Picks the operation a draw below the total of the mix falls on.
+     */
+    private LoadOperation pick(int draw) {
+        for (int i = 0; i < this.cumulativeMix.length; i++) {
+            if (draw < this.cumulativeMix[i]) {
+                return LoadOperation.values()[i];
+            }
+        }
+        throw new IllegalStateException("> Error: the draw " + draw + " is outside the operation mix");
+    }
+
+    /**
+     * Sends one request and records its latencies if it was scheduled after the warm-up.
+     */
+    private void execute(IStore server, LoadOperation operation, long key, int length, long scheduled, long measureFrom) {
+        long sent = System.nanoTime();
+        boolean rejected = false;
+        boolean failed = false;
+        try {
+            rejected = this.send(server, operation, key, length);
+        } catch (RemoteException e) {
+            failed = true;
+        }
+        long answered = System.nanoTime();
+        if (scheduled >= measureFrom) {
+            this.stats[operation.ordinal()].record(answered - scheduled, answered - sent, rejected, failed);
+            this.all.record(answered - scheduled, answered - sent, rejected, failed);
+        }
+    }
+
+    /**
+     * Runs one request as calls to the store.
+     *
+     * @param length The size of the value written, or the number of keys scanned.
+     * @return true if the store refused it: a read or delete of a missing key, a write of an existing
+     * one, or an error reported by the server.
+     */
+    private boolean send(IStore server, LoadOperation operation, long key, int length) throws RemoteException {
+        switch (operation) {
+            case GET:
+                return server.get(this.keyOf(key)) == null;
+            case PUT:
+            case INSERT:
+                return isError(server.put(this.keyOf(key), this.valueOf(length)));
+            case DELETE:
+                return isError(server.delete(this.keyOf(key)));
+            case UPDATE:
+                return this.update(server, key, length);
+            case SCAN:
+                boolean missing = server.get(this.keyOf(key)) == null;
+                for (int i = 1; i < length; i++) {
+                    server.get(this.keyOf(key + i));
+                }
+                return missing;
+            default:
+                boolean absent = server.get(this.keyOf(key)) == null;
+                return this.update(server, key, length) || absent;
+        }
+    }
+
+    /**
+     * Replaces the value of a key. PUT refuses to overwrite a key, so the key is deleted first.
+     *
+     * @return true if the new value could not be written.
+     */
+    private boolean update(IStore server, long key, int length) throws RemoteException {
+        server.delete(this.keyOf(key));
+        return isError(server.put(this.keyOf(key), this.valueOf(length)));
+    }
+
+    /**
+     * Whether the result of a PUT or DELETE reports an error.
+     */
+    private static boolean isError(String result) {
+        return result == null || result.startsWith("> Error");
+    }
+
+    /**
+     * Returns the key with the given index, its digits zero-padded up to the key size.
+     */
+    private String keyOf(long key) {
+        String digits = Long.toString(key);
+        StringBuilder builder = new StringBuilder(Math.max(this.keySize, KEY_PREFIX.length() + digits.length()));
+        builder.append(KEY_PREFIX);
+        for (int i = KEY_PREFIX.length() + digits.length(); i < this.keySize; i++) {
+            builder.append('0');
+        }
+        return builder.append(digits).toString();
+    }
+
+    /**
+     * Returns a value of the given length.
+     */
+    private String valueOf(int length) {
+        return this.values.substring(0, Math.min(length, this.values.length()));
+    }
+
+    /**
+     * Returns random letters and digits.
+     */
+    private static String randomCharacters(int length) {
+        String alphabet = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Prints one CSV line per operation type sent and latency measure, and one over all operations.
+     */
+    private void report(PrintStream out) {
+        out.println("operation,latency,count,rejected,errors,ops_per_sec,p50_ms,p90_ms,p99_ms,p999_ms,max_ms");
+        for (LoadOperation operation : LoadOperation.values()) {
+            if (this.stats[operation.ordinal()].service.snapshot().getCount() > 0) {
+                this.report(out, operation.name(), this.stats[operation.ordinal()]);
+            }
+        }
+        this.report(out, "ALL", this.all);
+    }
+
+    /**
+     * Prints the lines of one operation type; a closed-loop run only has service times.
+     */
+    private void report(PrintStream out, String operation, OperationStats stats) {
+        if (this.config.getMode() == LoadConfig.Mode.OPEN || this.config.getReplayTrace() != null) {
+            this.report(out, operation, "response", stats, stats.response.snapshot());
+        }
+        this.report(out, operation, "service", stats, stats.service.snapshot());
+    }
+
+    /**
+     * Prints one line.
+     */
+    private void report(PrintStream out, String operation, String latency, OperationStats stats, PaxosStats.Distribution distribution) {
+        out.printf("%s,%s,%d,%d,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%.3f%n", operation, latency, distribution.getCount(),
+                stats.rejected.sum(), stats.errors.sum(), this.measuredSeconds > 0 ? distribution.getCount() / this.measuredSeconds : 0,
+                distribution.getP50() / 1e6, distribution.getP90() / 1e6, distribution.getP99() / 1e6,
+                distribution.getP999() / 1e6, distribution.getMax() / 1e6);
+    }
+
+    /**
+     * A task run by every worker, given its index
+     */
+    private interface Worker {
+        void run(int worker);
+    }
+
+    /**
+     * The latencies and outcomes of the measured requests of one operation type
+     */
+    private static final class OperationStats {
+        // From when a request was scheduled, and from when it was sent, to its answer
+        final Histogram response = new Histogram();
+        final Histogram service = new Histogram();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        void record(long responseNanos, long serviceNanos, boolean rejected, boolean failed) {
+            this.response.record(responseNanos);
+            this.service.record(serviceNanos);
+            if (rejected) {
+                this.rejected.increment();
+            }
+            if (failed) {
+                this.errors.increment();
+            }
+        }
+    }
+}
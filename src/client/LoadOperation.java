@@ -0,0 +1,22 @@
+package client;
+
+/**
+ * The requests a load generator sends. The YCSB operations the store has no call for are made of
+ * several calls to it, timed together as one request.
+ */
+public enum LoadOperation {
+    // Reads a key
+    GET,
+    // Writes a key, refused if it exists
+    PUT,
+    // Deletes a key
+    DELETE,
+    // Writes a key no request used before
+    INSERT,
+    // Replaces the value of a key, by deleting it and writing it again
+    UPDATE,
+    // Reads a run of consecutive keys
+    SCAN,
+    // Reads a key, then updates it
+    READ_MODIFY_WRITE
+}
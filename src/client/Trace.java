@@ -0,0 +1,114 @@
+package client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import server.ValueCodec;
+
+/**
+ * The requests of a load generator run, in the order they were scheduled, so they can be replayed
+ * later. A trace file is gzip-compressed and holds a header with the key size, then each request
+ * as varints: the microseconds since the previous one, the operation, the key index and the length, a
+ * value size or the number of keys scanned. A request takes a few bytes before compression.
+ */
+final class Trace {
+    // Identifies a trace file and the version of its layout
+    private static final int MAGIC = 0x50585452;
+    private static final byte VERSION = 1;
+
+    final int keySize;
+    final List<Request> requests;
+
+    /**
+     * Constructs a trace.
+     *
+     * @param keySize The length of the keys of the run.
+     * @param requests The requests of the run.
+     */
+    Trace(int keySize, List<Request> requests) {
+        this.keySize = keySize;
+        this.requests = requests;
+    }
+
+    /**
+     * Writes a trace to a file, ordering its requests by when they were scheduled.
+     */
+    void write(Path file) throws IOException {
+        List<Request> ordered = new ArrayList<>(this.requests);
+        ordered.sort(Comparator.comparingLong(request -> request.offsetNanos));
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file))))) {
+            output.writeInt(MAGIC);
+            output.writeByte(VERSION);
+            ValueCodec.writeVarLong(output, this.keySize);
+            ValueCodec.writeVarLong(output, ordered.size());
+            long previousMicros = 0;
+            for (Request request : ordered) {
+                long micros = request.offsetNanos / 1000;
+                ValueCodec.writeVarLong(output, micros - previousMicros);
+                output.writeByte(request.operation.ordinal());
+                ValueCodec.writeVarLong(output, request.key);
+                ValueCodec.writeVarLong(output, request.length);
+                previousMicros = micros;
+            }
+        }
+    }
+
+    /**
+     * Reads a trace written by write.
+     */
+    static Trace read(Path file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException(file + " is not a trace");
+            }
+            byte version = input.readByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported trace version " + version + " in " + file);
+            }
+            int keySize = (int) ValueCodec.readVarLong(input);
+            long count = ValueCodec.readVarLong(input);
+            LoadOperation[] operations = LoadOperation.values();
+            List<Request> requests = new ArrayList<>((int) Math.min(count, 1 << 20));
+            long micros = 0;
+            for (long i = 0; i < count; i++) {
+                micros += ValueCodec.readVarLong(input);
+                int operation = input.readUnsignedByte();
+                if (operation >= operations.length) {
+                    throw new IOException("Unknown operation " + operation + " in " + file);
+                }
+                long key = ValueCodec.readVarLong(input);
+                int length = (int) ValueCodec.readVarLong(input);
+                requests.add(new Request(micros * 1000, operations[operation], key, length));
+            }
+            return new Trace(keySize, requests);
+        }
+    }
+
+    /**
+     * One request of a trace
+     */
+    static final class Request {
+        // When the request was scheduled, since the start of the run
+        final long offsetNanos;
+        final LoadOperation operation;
+        final long key;
+        // The size of the value written, or the number of keys scanned
+        final int length;
+
+        Request(long offsetNanos, LoadOperation operation, long key, int length) {
+            this.offsetNanos = offsetNanos;
+            this.operation = operation;
+            this.key = key;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package client;
+
+/**
+ * The operation mixes a load generator can run: the core workloads of YCSB, or a mix of GETs, PUTs and
+ * DELETEs set by the load.getPercent, load.putPercent and load.deletePercent properties. Each workload
+ * also picks how popular each key is, unless load.distribution says otherwise.
+ */
+public enum Workload {
+    //     distribution                    GET PUT DELETE INSERT UPDATE SCAN READ_MODIFY_WRITE
+    CUSTOM(LoadConfig.Distribution.UNIFORM, 0, 0, 0, 0, 0, 0, 0),
+    // Update heavy, like a session store recording recent actions
+    A(LoadConfig.Distribution.ZIPFIAN, 50, 0, 0, 0, 50, 0, 0),
+    // Read mostly, like photo tagging
+    B(LoadConfig.Distribution.ZIPFIAN, 95, 0, 0, 0, 5, 0, 0),
+    // Read only, like a profile cache
+    C(LoadConfig.Distribution.ZIPFIAN, 100, 0, 0, 0, 0, 0, 0),
+    // Read latest, like status updates where the newest are read the most
+    D(LoadConfig.Distribution.LATEST, 95, 0, 0, 5, 0, 0, 0),
+    // Short ranges, like threaded conversations
+    E(LoadConfig.Distribution.ZIPFIAN, 0, 0, 0, 5, 0, 95, 0),
+    // Read-modify-write, like a user database updating records it read
+    F(LoadConfig.Distribution.ZIPFIAN, 50, 0, 0, 0, 0, 0, 50);
+
+    private final LoadConfig.Distribution distribution;
+    private final int[] mix;
+
+    /**
+     * Constructs a workload from its key distribution and the percentage of each operation.
+     */
+    Workload(LoadConfig.Distribution distribution, int... mix) {
+        this.distribution = distribution;
+        this.mix = mix;
+    }
+
+    /**
+     * Returns the key distribution the workload runs with unless another one is set.
+     */
+    public LoadConfig.Distribution getDistribution() {
+        return this.distribution;
+    }
+
+    /**
+     * Returns the share of each operation, indexed by the ordinal of its LoadOperation.
+     *
+     * @param config The settings holding the mix of a CUSTOM workload.
+     */
+    public int[] mix(LoadConfig config) {
+        if (this != CUSTOM) {
+            return this.mix.clone();
+        }
+        int[] mix = new int[LoadOperation.values().length];
+        mix[LoadOperation.GET.ordinal()] = config.getGetPercent();
+        mix[LoadOperation.PUT.ordinal()] = config.getPutPercent();
+        mix[LoadOperation.DELETE.ordinal()] = config.getDeletePercent();
+        return mix;
+    }
+}
@@ -1,6 +1,8 @@
 package main;
 
 import client.Client;
+import client.LoadConfig;
+import client.LoadGenerator;
 
 /**
  * The main entry point for the Client application.
@@ -9,14 +11,18 @@ public class ClientMain {
 
     /**
      * The main method which starts the client. It expects two command-line arguments:
-     * the hostname and the port number of the server to connect
+     * the hostname and the port number of the server to connect, or "load" and the hostname
+     * the servers run on to generate load against all of them
      */
     public static void main(String[] args) {
         try {
             // Check if we have correct number of arguments are provided.
             if (args.length != 2) {
-                System.err.println("> Error: Correct usage of this is: java main.ClientMain <hostname> <port>");
+                System.err.println("> Error: Correct usage of this is: java main.ClientMain <hostname> <port>"
+                        + " or java main.ClientMain load <hostname>");
                 System.exit(1);
+            } else if ("load".equals(args[0])) {
+                runLoad(args[1]);
             } else {
                 // Parse user entry to get the port number and validate its range.
                 int portNumber = Integer.parseInt(args[1]);
@@ -35,4 +41,17 @@ public class ClientMain {
             System.exit(1);
         }
     }
+
+    /**
+     * Runs the load generator against the servers on a host, with the settings of the system properties.
+     */
+    private static void runLoad(String host) {
+        try {
+            new LoadGenerator(host, LoadConfig.fromSystemProperties()).run(System.out);
+            System.exit(0);
+        } catch (Exception e) {
+            System.err.println("> Error: The load could not be generated: " + e.getMessage());
+            System.exit(1);
+        }
+    }
 }
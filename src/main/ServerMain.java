@@ -1,13 +1,23 @@
 package main;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import server.IAcceptor;
 import server.ILearner;
+import server.IProposer;
+import server.MetricsEndpoint;
+import server.PeerConnection;
+import server.PeerListener;
 import server.Server;
+import server.ServerConfig;
 
 /**
  * ServerMain class initializes a set of distributed nodes and configures them
@@ -23,6 +33,13 @@ public class ServerMain {
             // Assign nodes and ports
             int totalNodes = 5;
             int startingPort = 1100;
+            // With the NIO transport, each node also listens for its peers on its port plus this offset
+            int peerPortOffset = 100;
+            ServerConfig config = ServerConfig.fromSystemProperties();
+            if (config.isDurable()) {
+                // Each node rebuilds its state from its write-ahead log, if a previous run left one
+                System.out.println("> Recovering state from the write-ahead logs in " + config.getWalDirectory() + "...");
+            }
 
             Server[] nodes = new Server[totalNodes];
 
@@ -32,7 +49,7 @@ public class ServerMain {
             for (int serverId = 0; serverId < totalNodes; serverId++) {
                 int port = startingPort + serverId;
 
-                nodes[serverId] = new Server(serverId, port, totalNodes - 1);
+                nodes[serverId] = new Server(serverId, port, totalNodes - 1, config);
 
                 // Create a registry for each node on its specific port
                 Registry registry = LocateRegistry.createRegistry(port);
@@ -42,21 +59,42 @@ public class ServerMain {
 
                 // Store the registry in the node for later use
                 nodes[serverId].setRegistry(registry);
+
+                if (config.getTransport() == ServerConfig.Transport.NIO) {
+                    nodes[serverId].setPeerListener(new PeerListener(port + peerPortOffset, nodes[serverId], nodes[serverId]));
+                }
+
+                if (config.getMetricsPort() > 0) {
+                    // Each node serves its metrics on its own port, next to the ones of the nodes before it
+                    nodes[serverId].setMetricsEndpoint(new MetricsEndpoint(config.getMetricsPort() + serverId, nodes[serverId]));
+                }
             }
 
             // Setup acceptors and learners for each node to communicate with other nodes
             for (int serverId = 0; serverId < totalNodes; serverId++) {
                 List<IAcceptor> acceptors = new ArrayList<>(totalNodes - 1);
                 List<ILearner> learners = new ArrayList<>(totalNodes - 1);
+                Map<Long, IProposer> proposers = new HashMap<>(totalNodes - 1);
                 for (int otherserverId = 0; otherserverId < totalNodes; otherserverId++) {
                     if (otherserverId != serverId) {
-                        acceptors.add(nodes[otherserverId]);
-                        learners.add(nodes[otherserverId]);
+                        if (config.getTransport() == ServerConfig.Transport.NIO) {
+                            // One connection per peer carries both the acceptor and the learner messages
+                            PeerConnection peer = new PeerConnection(
+                                    new InetSocketAddress(InetAddress.getLoopbackAddress(), startingPort + otherserverId + peerPortOffset),
+                                    config.getPhaseTimeoutMillis());
+                            acceptors.add(peer);
+                            learners.add(peer);
+                        } else {
+                            acceptors.add(nodes[otherserverId]);
+                            learners.add(nodes[otherserverId]);
+                        }
+                        proposers.put((long) otherserverId, nodes[otherserverId]);
                     }
                 }
                 // Set the lists of acceptors and learners, excluding the node itself
                 nodes[serverId].setServerAcceptors(acceptors);
                 nodes[serverId].setServerLearners(learners);
+                nodes[serverId].setServerProposers(proposers);
             }
             System.out.println("> Server is online and all nodes are ready...");
         } catch (RemoteException e) {
@@ -64,6 +102,10 @@ public class ServerMain {
             System.err.println("> Error: The registry could not be created due to RMI error: " + e.getMessage());
             e.printStackTrace();
             System.exit(1);
+        } catch (IOException e) {
+            System.err.println("> Error: The peer listeners or metrics endpoints could not be started: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
         }
     }
 }
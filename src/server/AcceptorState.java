@@ -0,0 +1,162 @@
+package server;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The state an acceptor has to keep consistent across Paxos messages: the highest promised sequence
+ * number, the proposal accepted in each undecided slot and the read lease granted to a leader.
+ * It is guarded by its own monitor, held only for the few field updates of one message, so incoming
+ * acceptor traffic never waits for a proposer, a learner or a client read on the same server.
+ * The promised sequence number is volatile so that heartbeats and ballot checks read it without the lock.
+ *
+ * With a write-ahead log, promises and accepted values are appended under the lock, so the log holds them
+ * in the order they took effect, and made durable after releasing it, before the caller replies.
+ */
+class AcceptorState {
+    private final WriteAheadLog wal;
+    private volatile long promisedSequenceNumber = -Long.MAX_VALUE;
+    private final TreeMap<Long, Server.Proposal> acceptedProposals = new TreeMap<>();
+    private long grantedLeaseSequenceNumber = -1;
+    private long grantedLeaseExpiresAtNanos;
+
+    /**
+     * Constructs an empty acceptor state.
+     *
+     * @param wal The log the state is persisted to, or null to keep it in memory only.
+     */
+    AcceptorState(WriteAheadLog wal) {
+        this.wal = wal;
+    }
+
+    /**
+     * Returns the highest sequence number promised or accepted so far.
+     */
+    long promised() {
+        return this.promisedSequenceNumber;
+    }
+
+    /**
+     * Raises the promised sequence number, used for the proposals of this server itself.
+     */
+    synchronized void observe(long sequenceNumber) {
+        if (sequenceNumber > this.promisedSequenceNumber) {
+            this.promisedSequenceNumber = sequenceNumber;
+        }
+    }
+
+    /**
+     * Promises a sequence number if it is higher than every one seen so far and no other server holds
+     * a read lease granted by this acceptor.
+     *
+     * @return The proposals accepted in the slots from fromSlot on, or null if no promise was made.
+     */
+    Map<Long, Server.Proposal> prepare(long sequenceNumber, long fromSlot) throws IOException {
+        Map<Long, Server.Proposal> acceptedSlots;
+        long position;
+        synchronized (this) {
+            if (this.leaseHeldByAnotherServer(sequenceNumber) || sequenceNumber <= this.promisedSequenceNumber) {
+                return null;
+            }
+            this.promisedSequenceNumber = sequenceNumber;
+            acceptedSlots = new TreeMap<>(this.acceptedProposals.tailMap(fromSlot));
+            position = this.wal == null ? 0 : this.wal.appendPromise(sequenceNumber);
+        }
+        this.sync(position);
+        return acceptedSlots;
+    }
+
+    /**
+     * Accepts a value in a slot unless a higher sequence number has been promised.
+     *
+     * @return The promised sequence number afterwards, which is the given one if the value was accepted.
+     */
+    long accept(long sequenceNumber, long slot, Object value) throws IOException {
+        // Serialize the value before taking the lock
+        byte[] encoded = this.wal == null ? null : ValueCodec.encode(value);
+        long position;
+        synchronized (this) {
+            if (sequenceNumber < this.promisedSequenceNumber) {
+                return this.promisedSequenceNumber;
+            }
+            this.acceptedProposals.put(slot, new Server.Proposal(sequenceNumber, value));
+            this.promisedSequenceNumber = sequenceNumber;
+            position = this.wal == null ? 0 : this.wal.appendAccept(sequenceNumber, slot, encoded);
+        }
+        this.sync(position);
+        return sequenceNumber;
+    }
+
+    /**
+     * Grants or extends a read lease unless a higher sequence number has been promised.
+     */
+    boolean grantLease(long sequenceNumber, long leaseMillis) throws IOException {
+        long position = 0;
+        synchronized (this) {
+            if (sequenceNumber < this.promisedSequenceNumber) {
+                return false;
+            }
+            if (this.wal != null && sequenceNumber > this.promisedSequenceNumber) {
+                position = this.wal.appendPromise(sequenceNumber);
+            }
+            this.promisedSequenceNumber = sequenceNumber;
+            this.grantedLeaseSequenceNumber = sequenceNumber;
+            this.grantedLeaseExpiresAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(leaseMillis);
+        }
+        this.sync(position);
+        return true;
+    }
+
+    /**
+     * Returns the server holding the read lease this acceptor granted last.
+     */
+    synchronized long leaseHolder() {
+        return this.grantedLeaseSequenceNumber & 0xFFFF;
+    }
+
+    /**
+     * Drops the proposal accepted in a slot once its decision is known to the log.
+     */
+    synchronized void forget(long slot) {
+        this.acceptedProposals.remove(slot);
+    }
+
+    /**
+     * Restores a promise read back from the write-ahead log.
+     */
+    synchronized void restorePromise(long sequenceNumber) {
+        this.observe(sequenceNumber);
+    }
+
+    /**
+     * Restores an accepted value read back from the write-ahead log, keeping the value accepted under
+     * the highest sequence number if a slot was accepted more than once.
+     */
+    synchronized void restoreAccepted(long sequenceNumber, long slot, Object value) {
+        Server.Proposal known = this.acceptedProposals.get(slot);
+        if (known == null || known.sequenceNumber < sequenceNumber) {
+            this.acceptedProposals.put(slot, new Server.Proposal(sequenceNumber, value));
+        }
+        this.observe(sequenceNumber);
+    }
+
+    /**
+     * Waits until the records appended up to the given position are durable.
+     */
+    private void sync(long position) throws IOException {
+        if (this.wal != null && position > 0) {
+            this.wal.sync(position);
+        }
+    }
+
+    /**
+     * Whether a lease granted to a server other than the owner of the sequence number is still running.
+     * Must be called while holding the lock.
+     */
+    private boolean leaseHeldByAnotherServer(long sequenceNumber) {
+        return (sequenceNumber & 0xFFFF) != (this.grantedLeaseSequenceNumber & 0xFFFF)
+                && System.nanoTime() < this.grantedLeaseExpiresAtNanos;
+    }
+}
@@ -0,0 +1,195 @@
+package server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import utils.ILogger;
+import utils.ILogger.Level;
+
+/**
+ * Brings a replica that missed decisions back up to date. A background thread notices when the apply
+ * cursor is stuck behind decisions learned for later slots, and otherwise asks a peer now and then in
+ * case the latest decisions never arrived at all. The missing decisions are then fetched from the peers
+ * in batches. A replica so far behind that the peer already dropped those decisions after a snapshot
+ * fetches that snapshot instead, in chunks, and continues from the slot after it.
+ *
+ * At most one batch or one chunk is fetched per interval, so catching up never crowds out the
+ * foreground traffic of the replica or of the peer serving it.
+ */
+class CatchUp {
+    // Number of checks finding no gap between two requests to a peer for decisions this replica may not know of
+    private static final int PROBE_EVERY_CHECKS = 10;
+
+    /**
+     * The replica being caught up.
+     */
+    interface Replica {
+        /**
+         * Returns the other servers to fetch decisions from, or null if they are not known yet.
+         */
+        List<ILearner> peers();
+
+        /**
+         * Persists and learns a decision fetched from a peer.
+         */
+        void learn(long slot, Object value) throws IOException;
+
+        /**
+         * Returns the file a snapshot fetched from a peer is downloaded to.
+         */
+        Path snapshotDownloadPath(long slot) throws IOException;
+
+        /**
+         * Replaces the store with a downloaded snapshot, taking the file over.
+         *
+         * @return false if the replica had applied the slot already or cannot install the snapshot right now.
+         */
+        boolean installSnapshot(long slot, Path file) throws IOException;
+    }
+
+    private final Replica replica;
+    private final ReplicatedLog log;
+    private final long intervalMillis;
+    private final int batchSlots;
+    private final int chunkBytes;
+    private final ILogger logger;
+    private final ScheduledExecutorService executor;
+
+    // Only accessed by the catch-up thread
+    private long lastCursor = -1;
+    private int checksUntilProbe = PROBE_EVERY_CHECKS;
+    private boolean moreAvailable;
+    private int nextPeer;
+
+    /**
+     * Constructs the catch-up of a replica, which starts checking right away.
+     *
+     * @param name The name of the server, used to name the catch-up thread.
+     * @param intervalMillis The time between two checks, and between two fetches while catching up.
+     * @param batchSlots The most decisions fetched at once.
+     * @param chunkBytes The size of the chunks a snapshot is fetched in.
+     */
+    CatchUp(String name, Replica replica, ReplicatedLog log, long intervalMillis, int batchSlots, int chunkBytes, ILogger logger) {
+        this.replica = replica;
+        this.log = log;
+        this.intervalMillis = intervalMillis;
+        this.batchSlots = batchSlots;
+        this.chunkBytes = chunkBytes;
+        this.logger = logger;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "paxos-catch-up-" + name);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::check, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Fetches decisions from the next peer if this replica is stuck behind a gap, if the previous fetch
+     * left more to fetch, or if a peer was not asked for a while.
+     */
+    private void check() {
+        try {
+            long cursor = this.log.nextSlotToApply();
+            // A gap that the regular learn messages did not fill since the last check
+            boolean stuck = this.log.lag() > 0 && cursor == this.lastCursor;
+            this.lastCursor = cursor;
+            if (!stuck && !this.moreAvailable && --this.checksUntilProbe > 0) {
+                return;
+            }
+            this.checksUntilProbe = PROBE_EVERY_CHECKS;
+            List<ILearner> peers = this.replica.peers();
+            if (peers == null || peers.isEmpty()) {
+                return;
+            }
+            ILearner peer = peers.get(Math.floorMod(this.nextPeer++, peers.size()));
+            this.moreAvailable = this.fetchDecisions(peer, cursor);
+        } catch (RemoteException e) {
+            this.moreAvailable = false;
+            this.logger.log(Level.WARN, "> Could not catch up from a peer: {}", e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            this.moreAvailable = false;
+            this.logger.log(Level.ERROR, "> Error: catching up failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Fetches and learns one batch of the decisions from the given slot on, or the snapshot covering it.
+     *
+     * @return true if the peer has more decisions to fetch.
+     */
+    private boolean fetchDecisions(ILearner peer, long fromSlot) throws IOException {
+        Server.Decisions answer = (Server.Decisions) peer.fetchDecisions(fromSlot, this.batchSlots);
+        if (answer.snapshotSlot >= fromSlot) {
+            return this.fetchSnapshot(peer, answer.snapshotSlot);
+        }
+        int learned = 0;
+        for (Map.Entry<Long, Object> decision : answer.decisions.entrySet()) {
+            if (!this.log.isChosen(decision.getKey()) && decision.getKey() >= this.log.nextSlotToApply()) {
+                this.replica.learn(decision.getKey(), decision.getValue());
+                learned += 1;
+            }
+        }
+        if (learned > 0) {
+            this.logger.log("> Caught up on " + learned + " decisions from slot " + fromSlot + ", applied up to slot "
+                    + (this.log.nextSlotToApply() - 1));
+        }
+        return learned > 0 && answer.highestSlot >= fromSlot + this.batchSlots;
+    }
+
+    /**
+     * Downloads a snapshot from a peer one chunk per interval, then installs it.
+     *
+     * @return true if decisions after the snapshot may remain to be fetched.
+     */
+    private boolean fetchSnapshot(ILearner peer, long snapshotSlot) throws IOException {
+        long start = System.nanoTime();
+        Path file = this.replica.snapshotDownloadPath(snapshotSlot);
+        long offset = 0;
+        try {
+            try (OutputStream output = Files.newOutputStream(file)) {
+                while (true) {
+                    byte[] chunk = peer.fetchSnapshotChunk(snapshotSlot, offset, this.chunkBytes);
+                    if (chunk == null) {
+                        // The peer took a newer snapshot meanwhile; the next check starts over from it
+                        this.logger.log(Level.WARN, "> The snapshot at slot {} was replaced while being fetched", snapshotSlot);
+                        return true;
+                    }
+                    if (chunk.length == 0) {
+                        break;
+                    }
+                    output.write(chunk);
+                    offset += chunk.length;
+                    Thread.sleep(this.intervalMillis);
+                }
+            }
+            if (!this.replica.installSnapshot(snapshotSlot, file)) {
+                return true;
+            }
+            this.logger.log("> Installed the snapshot at slot " + snapshotSlot + " (" + offset + " bytes) fetched from a peer in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            // Installing takes the file over; anything left is a partial or unused download
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Stops catching up, abandoning a fetch in progress.
+     */
+    void shutdown() {
+        this.executor.shutdownNow();
+    }
+}
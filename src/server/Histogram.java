@@ -0,0 +1,94 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative values that many threads can record into without locking. Values below
+ * 16 get a bucket each, and the values between two consecutive powers of two above that are split into
+ * 16 buckets, so a percentile is reported within 1/16 of the value recorded. Recording is a few atomic
+ * updates and allocates nothing; a snapshot taken while values are recorded may miss the latest ones.
+ * Clients use it too, to report the latencies they observe.
+ */
+public final class Histogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value; negative values are recorded as 0.
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        this.counts.incrementAndGet(bucketOf(value));
+        this.sum.add(value);
+        long current = this.max.get();
+        while (value > current && !this.max.compareAndSet(current, value)) {
+            current = this.max.get();
+        }
+    }
+
+    /**
+     * Returns the count, mean, percentiles and maximum of the values recorded so far.
+     */
+    public PaxosStats.Distribution snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            counts[bucket] = this.counts.get(bucket);
+            total += counts[bucket];
+        }
+        long max = this.max.get();
+        if (total == 0) {
+            return new PaxosStats.Distribution(0, 0, 0, 0, 0, 0, 0);
+        }
+        return new PaxosStats.Distribution(total, (double) this.sum.sum() / total,
+                percentile(counts, total, 50, max), percentile(counts, total, 90, max),
+                percentile(counts, total, 99, max), percentile(counts, total, 99.9, max), max);
+    }
+
+    /**
+     * Returns the highest value of the bucket holding the given percentile, capped by the maximum.
+     */
+    private static long percentile(long[] counts, long total, double percentile, long max) {
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(bucket), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns the bucket of a value: its highest bit selects a power of two, and the SUB_BUCKET_BITS bits
+     * below it select one of the buckets that split it.
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the highest value that falls in a bucket.
+     */
+    private static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
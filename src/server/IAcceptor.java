@@ -11,18 +11,40 @@ public interface IAcceptor extends Remote {
    * Prepares the acceptor for a proposed change and decides whether to accept or reject
    *
    * @param sequenceNumber The sequence number of the proposal, used to ensure proposals are processed in order.
-   * @return The currently promised sequence number or the proposal value, depending on the algorithm implementation.
+   * @param fromSlot The first slot of the log the promise covers; it also covers every later slot.
+   * @return The promise, carrying the values already accepted or decided in the covered slots.
    * @throws RemoteException If an RMI error occurs during the remote method call.
    */
-  Object prepare(long sequenceNumber) throws RemoteException;
+  Object prepare(long sequenceNumber, long fromSlot) throws RemoteException;
 
   /**
    * Accepts the proposal if the given sequence number matches the acceptor's current state or promise.
    *
    * @param sequenceNumber The sequence number of the proposal which must match the promised number.
+   * @param slot The slot of the log the value is proposed for.
    * @param proposalValue The value proposed by the proposer, to be accepted if conditions are met.
    * @return The sequence number associated with the accepted value, confirming the acceptance.
    * @throws RemoteException If an RMI error occurs during the remote method call.
    */
-  long accept(long sequenceNumber, Object proposalValue) throws RemoteException;
+  long accept(long sequenceNumber, long slot, Object proposalValue) throws RemoteException;
+
+  /**
+   * Grants a time-bounded read lease to the leader owning the sequence number. While the lease lasts
+   * the acceptor makes no promise to any other proposer, so the leader can serve reads locally.
+   *
+   * @param sequenceNumber The ballot the leader leads with; it must not be lower than any promised number.
+   * @param leaseMillis How long the lease lasts, counted from when the acceptor receives the request.
+   * @return true if the lease was granted.
+   * @throws RemoteException If an RMI error occurs during the remote method call.
+   */
+  boolean grantLease(long sequenceNumber, long leaseMillis) throws RemoteException;
+
+  /**
+   * Lightweight check used by a leader to confirm it still leads before serving a read.
+   *
+   * @param sequenceNumber The ballot the leader leads with.
+   * @return true if no higher sequence number has been promised by this acceptor.
+   * @throws RemoteException If an RMI error occurs during the remote method call.
+   */
+  boolean heartbeat(long sequenceNumber) throws RemoteException;
 }
@@ -10,7 +10,30 @@ import java.rmi.RemoteException;
 public interface ILearner extends Remote {
 
   /**
-   * Receives notification of an accepted value from acceptors, completing the consensus process.
+   * Receives notification of the value decided for a slot of the log, completing the consensus process.
+   * Slots may be learned in any order; they are executed in slot order.
    */
-  void learn(long sequenceNumber, Object acceptedValue) throws RemoteException;
+  void learn(long slot, Object acceptedValue) throws RemoteException;
+
+  /**
+   * Returns the decisions this learner knows from a slot on, so that a replica that missed them can catch up.
+   *
+   * @param fromSlot The first slot the caller is missing.
+   * @param maxSlots The most slots covered by one answer.
+   * @return The decisions, or the snapshot to fetch instead if this learner already dropped fromSlot.
+   * @throws RemoteException If an RMI error occurs during the remote method call.
+   */
+  Object fetchDecisions(long fromSlot, int maxSlots) throws RemoteException;
+
+  /**
+   * Returns part of a snapshot of this learner's store, fetched in chunks by a replica too far behind
+   * to catch up from the decisions.
+   *
+   * @param snapshotSlot The last slot of the snapshot, as returned by fetchDecisions.
+   * @param offset The offset of the chunk in the snapshot.
+   * @param maxBytes The largest chunk returned.
+   * @return The chunk, empty past the end of the snapshot, or null if the snapshot was replaced meanwhile.
+   * @throws RemoteException If an RMI error occurs during the remote method call.
+   */
+  byte[] fetchSnapshotChunk(long snapshotSlot, long offset, int maxBytes) throws RemoteException;
 }
@@ -2,6 +2,7 @@ package server;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
 
 /**
  * The IProposer interface defines the remote method for initiating and executing the Paxos consensus algorithm.
@@ -12,4 +13,35 @@ public interface IProposer extends Remote {
    * Initiates the Paxos protocol to propose a value and attempt to reach consensus among acceptors.
    */
   boolean runExecutePaxosAlgorithm(long sequenceNumber, Object proposalValue) throws RemoteException;
+
+  /**
+   * Receives a write forwarded by another replica so that it is driven through Paxos by this
+   * server, which acts as the distinguished proposer (leader) in Multi-Paxos mode.
+   *
+   * @param operation The operation to execute.
+   * @return The result of the operation, as returned to the client: a string, or a VersionedResult for a
+   *     versioned read or a conditional write.
+   * @throws RemoteException If an RMI error occurs during the remote method call.
+   */
+  Object forward(Object operation) throws RemoteException;
+
+  /**
+   * Receives a batch of operations of one type forwarded by another replica, to be decided by this
+   * server as one Paxos value.
+   *
+   * @param batch The batch of PUT, DELETE or GET operations to execute.
+   * @return The result of each operation, in order, as returned to the client.
+   * @throws RemoteException If an RMI error occurs during the remote method call.
+   */
+  List<String> forwardBatch(Object batch) throws RemoteException;
+
+  /**
+   * Returns the commit point of the leader after confirming with a majority of acceptors that it still
+   * leads (ReadIndex). A replica that has applied every slot below the commit point can serve a
+   * linearizable read from its own store.
+   *
+   * @return The number of slots that must be applied before reading, or -1 if this server does not lead.
+   * @throws RemoteException If an RMI error occurs during the remote method call.
+   */
+  long readIndex() throws RemoteException;
 }
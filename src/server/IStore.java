@@ -2,6 +2,8 @@ package server;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
 
 /**
  * The IStore interface has the remote methods for a key-value store over RMI for this assignment
@@ -18,6 +20,18 @@ public interface IStore extends Remote {
    */
   String put(String key, String value) throws RemoteException;
 
+  /**
+   * Stores a value like put, identified by a request id. A retry with the same id, e.g. after the call
+   * timed out, returns the result of the attempt that was applied instead of applying it again
+   *
+   * @param key The key under which the value should be stored
+   * @param value The value to be associated with the key.
+   * @param requestId The id of the request, reused by its retries.
+   * @return A string indicating the result of the operation, like the output
+   * @throws RemoteException If an RMI error occurs
+   */
+  String put(String key, String value, RequestId requestId) throws RemoteException;
+
   /**
    * Removes a value from the key-value store.
    *
@@ -27,6 +41,17 @@ public interface IStore extends Remote {
    */
   String delete(String key) throws RemoteException;
 
+  /**
+   * Removes a value like delete, identified by a request id. A retry with the same id returns the result
+   * of the attempt that was applied instead of applying it again
+   *
+   * @param key The key whose associated value is to be removed
+   * @param requestId The id of the request, reused by its retries.
+   * @return A string indicating the result of the operation
+   * @throws RemoteException If an RMI error occurs
+   */
+  String delete(String key, RequestId requestId) throws RemoteException;
+
   /**
    * Retrieves a value from the key-value store
    *
@@ -36,6 +61,208 @@ public interface IStore extends Remote {
    */
   String get(String key) throws RemoteException;
 
+  /**
+   * Stores many key-value pairs in one call. The writes are decided together as one Paxos value and
+   * applied in order, so they cost one round-trip and one consensus round instead of one each
+   *
+   * @param entries The key-value pairs to store.
+   * @return The result of each write by key, as put returns it
+   * @throws RemoteException If an RMI error occurs
+   */
+  Map<String, String> multiPut(Map<String, String> entries) throws RemoteException;
+
+  /**
+   * Stores many key-value pairs like multiPut, identified by a request id. A retry with the same id
+   * returns the results of the attempt that was applied instead of applying it again
+   *
+   * @param entries The key-value pairs to store.
+   * @param requestId The id of the request, reused by its retries.
+   * @return The result of each write by key, as put returns it
+   * @throws RemoteException If an RMI error occurs, or the client already sent a later request
+   */
+  Map<String, String> multiPut(Map<String, String> entries, RequestId requestId) throws RemoteException;
+
+  /**
+   * Removes many keys in one call, decided together as one Paxos value and applied in order
+   *
+   * @param keys The keys whose values are to be removed.
+   * @return The result of each removal by key, as delete returns it
+   * @throws RemoteException If an RMI error occurs
+   */
+  Map<String, String> multiDelete(List<String> keys) throws RemoteException;
+
+  /**
+   * Removes many keys like multiDelete, identified by a request id. A retry with the same id returns
+   * the results of the attempt that was applied instead of applying it again
+   *
+   * @param keys The keys whose values are to be removed.
+   * @param requestId The id of the request, reused by its retries.
+   * @return The result of each removal by key, as delete returns it
+   * @throws RemoteException If an RMI error occurs, or the client already sent a later request
+   */
+  Map<String, String> multiDelete(List<String> keys, RequestId requestId) throws RemoteException;
+
+  /**
+   * Retrieves many values in one call, each read with the consistency of get
+   *
+   * @param keys The keys whose values are to be retrieved.
+   * @return The value of each key, or null for a key without one
+   * @throws RemoteException If an RMI error occurs
+   */
+  Map<String, String> multiGet(List<String> keys) throws RemoteException;
+
+  /**
+   * Runs a transaction over several keys, decided as one Paxos value and applied all-or-nothing: the
+   * writes are applied only if every checked key still has the expected value when the transaction is
+   * applied. Reads through the log see either all of its writes or none of them
+   *
+   * @param checks The value each key must have, or null for a key that must not exist.
+   * @param writes The value to set each key to, or null for a key to remove.
+   * @return "> SUCCESS" if the transaction was applied, or an error naming the first check that failed
+   * @throws RemoteException If an RMI error occurs
+   */
+  String transaction(Map<String, String> checks, Map<String, String> writes) throws RemoteException;
+
+  /**
+   * Runs a transaction like transaction, identified by a request id. A retry with the same id returns
+   * the result of the attempt that was applied instead of applying it again
+   *
+   * @param checks The value each key must have, or null for a key that must not exist.
+   * @param writes The value to set each key to, or null for a key to remove.
+   * @param requestId The id of the request, reused by its retries.
+   * @return "> SUCCESS" if the transaction was applied, or an error naming the first check that failed
+   * @throws RemoteException If an RMI error occurs
+   */
+  String transaction(Map<String, String> checks, Map<String, String> writes, RequestId requestId) throws RemoteException;
+
+  /**
+   * Retrieves a value together with its version, with the consistency of get
+   *
+   * @param key The key whose value and version are to be retrieved.
+   * @return The value and the version of the key, which is 0 if it does not exist
+   * @throws RemoteException If an RMI error occurs
+   */
+  VersionedResult getVersioned(String key) throws RemoteException;
+
+  /**
+   * Stores a value only if the key does not exist
+   *
+   * @param key The key under which the value should be stored
+   * @param value The value to be associated with the key.
+   * @return Whether it was stored, and the value and version of the key
+   * @throws RemoteException If an RMI error occurs, or the write was not decided
+   */
+  VersionedResult putIfAbsent(String key, String value) throws RemoteException;
+
+  /**
+   * Stores a value like putIfAbsent, identified by a request id. A retry with the same id returns the
+   * result of the attempt that was applied instead of applying it again
+   *
+   * @param key The key under which the value should be stored
+   * @param value The value to be associated with the key.
+   * @param requestId The id of the request, reused by its retries.
+   * @return Whether it was stored, and the value and version of the key
+   * @throws RemoteException If an RMI error occurs, the write was not decided, or the client already
+   *         sent a later request
+   */
+  VersionedResult putIfAbsent(String key, String value, RequestId requestId) throws RemoteException;
+
+  /**
+   * Replaces the value of a key only if the key still has the expected version
+   *
+   * @param key The key whose value is to be replaced
+   * @param value The new value.
+   * @param expectedVersion The version the key must have, as returned by an earlier call
+   * @return Whether it was replaced, and the value and version of the key
+   * @throws RemoteException If an RMI error occurs, or the write was not decided
+   */
+  VersionedResult replace(String key, String value, long expectedVersion) throws RemoteException;
+
+  /**
+   * Replaces the value of a key like replace, identified by a request id. A retry with the same id
+   * returns the result of the attempt that was applied instead of applying it again
+   *
+   * @param key The key whose value is to be replaced
+   * @param value The new value.
+   * @param expectedVersion The version the key must have, as returned by an earlier call
+   * @param requestId The id of the request, reused by its retries.
+   * @return Whether it was replaced, and the value and version of the key
+   * @throws RemoteException If an RMI error occurs, the write was not decided, or the client already
+   *         sent a later request
+   */
+  VersionedResult replace(String key, String value, long expectedVersion, RequestId requestId) throws RemoteException;
+
+  /**
+   * Removes a key only if it still has the expected version. A key that does not exist is never
+   * removed, even with an expected version of 0
+   *
+   * @param key The key whose value is to be removed
+   * @param expectedVersion The version the key must have, as returned by an earlier call
+   * @return Whether it was removed, and the value and version of the key
+   * @throws RemoteException If an RMI error occurs, or the write was not decided
+   */
+  VersionedResult delete(String key, long expectedVersion) throws RemoteException;
+
+  /**
+   * Removes a key like delete with an expected version, identified by a request id. A retry with the
+   * same id returns the result of the attempt that was applied instead of applying it again
+   *
+   * @param key The key whose value is to be removed
+   * @param expectedVersion The version the key must have, as returned by an earlier call
+   * @param requestId The id of the request, reused by its retries.
+   * @return Whether it was removed, and the value and version of the key
+   * @throws RemoteException If an RMI error occurs, the write was not decided, or the client already
+   *         sent a later request
+   */
+  VersionedResult delete(String key, long expectedVersion, RequestId requestId) throws RemoteException;
+
+  /**
+   * Sets the value of a key only if it still has the expected value
+   *
+   * @param key The key whose value is to be set
+   * @param expectedValue The value the key must have, or null if it must not exist
+   * @param newValue The new value, or null to remove the key, which is not applied if it does not exist
+   * @return Whether it was set, and the value and version of the key
+   * @throws RemoteException If an RMI error occurs, or the write was not decided
+   */
+  VersionedResult compareAndSet(String key, String expectedValue, String newValue) throws RemoteException;
+
+  /**
+   * Sets the value of a key like compareAndSet, identified by a request id. A retry with the same id
+   * returns the result of the attempt that was applied instead of applying it again
+   *
+   * @param key The key whose value is to be set
+   * @param expectedValue The value the key must have, or null if it must not exist
+   * @param newValue The new value, or null to remove the key, which is not applied if it does not exist
+   * @param requestId The id of the request, reused by its retries.
+   * @return Whether it was set, and the value and version of the key
+   * @throws RemoteException If an RMI error occurs, the write was not decided, or the client already
+   *         sent a later request
+   */
+  VersionedResult compareAndSet(String key, String expectedValue, String newValue, RequestId requestId) throws RemoteException;
+
+  /**
+   * Retrieves a value from the key-value store, accepting a bounded amount of staleness.
+   * Any replica within both bounds answers from its own store without coordinating with the others;
+   * a replica further behind falls back to a linearizable read.
+   *
+   * @param key The key whose associated value is to be retrieved.
+   * @param maxSlotLag How many decided log slots the replica may have left to apply.
+   * @param maxStalenessMillis How long ago the replica may last have been known to be up to date.
+   * @return The value together with the log position it reflects
+   * @throws RemoteException If an RMI error occurs
+   */
+  ReadResult get(String key, long maxSlotLag, long maxStalenessMillis) throws RemoteException;
+
+  /**
+   * Returns the metrics of this server: the latency of each Paxos phase and of the requests sent to
+   * each peer, the votes collected per round and the outcomes of proposals
+   *
+   * @return A snapshot of the metrics recorded since the server started
+   * @throws RemoteException If an RMI error occurs
+   */
+  PaxosStats stats() throws RemoteException;
+
   /**
    * Shuts down the key-value store service
    * This method is intended for clean-up operations and to stop the server gracefully
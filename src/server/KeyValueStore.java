@@ -0,0 +1,395 @@
+package server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The key-value state machine the replicated log is applied to. Reads never lock. Writes come from a
+ * single applying thread, which allows point-in-time snapshots to be taken without pausing it:
+ * once a snapshot begins, the first write to each key saves the value the key had before, and the
+ * snapshot is written from the live map with those saved values substituted back in.
+ *
+ * Every write, a removal included, advances the revision of the store, and a key's version is the
+ * revision of the write that last set it. Writes are applied in log order, so every replica gives a key
+ * the same version, and a key that is removed and written again never gets back an older version. A key
+ * that does not exist has version 0.
+ *
+ * The store also keeps the latest request applied for each client that sent one with a request id,
+ * together with its result, so a retry can be answered with that result instead of being applied again.
+ * It is updated as decisions are applied and is part of the snapshots, so every replica keeps the same
+ * table. It holds a bounded number of clients and forgets the one whose latest request is the oldest
+ * first; every replica must use the same bound.
+ */
+public class KeyValueStore {
+    // Identifies a snapshot file and the version of its layout: version 1 prefixed strings with an int
+    // length, version 2 writes them as ValueCodec does, version 3 adds the revision and the versions,
+    // version 4 adds the latest request of each client
+    private static final int SNAPSHOT_MAGIC = 0x50584B56;
+    private static final byte SNAPSHOT_VERSION_INT_LENGTHS = 1;
+    private static final byte SNAPSHOT_VERSION_UNVERSIONED = 2;
+    private static final byte SNAPSHOT_VERSION_WITHOUT_SESSIONS = 3;
+    private static final byte SNAPSHOT_VERSION = 4;
+
+    // How many clients the request table keeps unless told otherwise
+    private static final int DEFAULT_MAX_SESSIONS = 10000;
+
+    // Replaced as a whole when a snapshot is loaded, so readers see either the old state or the new one
+    private volatile ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // The revision of the last write; only written by the applying thread
+    private volatile long revision;
+
+    // Values keys had when the running snapshot began, saved on their first write since; null if none runs
+    private volatile ConcurrentHashMap<String, Optional<Entry>> preImages;
+    // The revision when the running snapshot began
+    private long snapshotRevision;
+
+    // The latest request applied for each client, the least recently updated first; guarded by itself
+    private final LinkedHashMap<Long, Session> sessions = new LinkedHashMap<>();
+    private final int maxSessions;
+    // The request table when the running snapshot began
+    private Map<Long, Session> snapshotSessions;
+
+    /**
+     * Constructs an empty store keeping the latest request of up to 10000 clients
+     */
+    public KeyValueStore() {
+        this(DEFAULT_MAX_SESSIONS);
+    }
+
+    /**
+     * Constructs an empty store.
+     *
+     * @param maxSessions How many clients the request table keeps at most.
+     */
+    public KeyValueStore(int maxSessions) {
+        this.maxSessions = maxSessions;
+    }
+
+    /**
+     * Returns the value of a key, or null if it does not exist.
+     */
+    public String get(String key) {
+        Entry entry = this.entries.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Returns the value and the version of a key together, or null if it does not exist.
+     */
+    Entry getEntry(String key) {
+        return this.entries.get(key);
+    }
+
+    /**
+     * Whether a key exists.
+     */
+    public boolean containsKey(String key) {
+        return this.entries.containsKey(key);
+    }
+
+    /**
+     * Returns the number of keys.
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Returns the revision of the last write.
+     */
+    public long revision() {
+        return this.revision;
+    }
+
+    /**
+     * Sets the value of a key. Only called by the applying thread.
+     *
+     * @return The new version of the key.
+     */
+    public long put(String key, String value) {
+        this.savePreImage(key);
+        long version = this.revision + 1;
+        this.entries.put(key, new Entry(value, version));
+        this.revision = version;
+        return version;
+    }
+
+    /**
+     * Removes a key. Only called by the applying thread.
+     */
+    public void remove(String key) {
+        this.savePreImage(key);
+        this.entries.remove(key);
+        this.revision += 1;
+    }
+
+    /**
+     * Returns the latest request applied for a client and its result, or null if none is kept.
+     */
+    Session session(long clientId) {
+        synchronized (this.sessions) {
+            return this.sessions.get(clientId);
+        }
+    }
+
+    /**
+     * Records the result of the latest request of a client, forgetting the least recently updated client
+     * once the table is full. Only called by the applying thread.
+     */
+    void recordSession(RequestId requestId, Object result) {
+        synchronized (this.sessions) {
+            // Removed first so the client moves to the end of the order
+            this.sessions.remove(requestId.getClientId());
+            this.sessions.put(requestId.getClientId(), new Session(requestId.getSequence(), result));
+            if (this.sessions.size() > this.maxSessions) {
+                Iterator<Long> oldest = this.sessions.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Saves the current value of a key before its first write since the running snapshot began.
+     */
+    private void savePreImage(String key) {
+        ConcurrentHashMap<String, Optional<Entry>> saved = this.preImages;
+        if (saved != null && !saved.containsKey(key)) {
+            saved.put(key, Optional.ofNullable(this.entries.get(key)));
+        }
+    }
+
+    /**
+     * Fixes the point in time the next snapshot captures. Must be called by the applying thread, or
+     * while it is held off, and followed by writeSnapshot.
+     */
+    public void beginSnapshot() {
+        this.snapshotRevision = this.revision;
+        synchronized (this.sessions) {
+            this.snapshotSessions = new LinkedHashMap<>(this.sessions);
+        }
+        this.preImages = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Writes the state as of the last beginSnapshot to a file while writes go on. The file is written
+     * under a temporary name, forced and then renamed, so a crash never leaves a partial snapshot behind.
+     *
+     * @param file The snapshot file.
+     * @param slot The last slot applied when the snapshot began, stored in the file.
+     * @return The number of entries written. A key written after it was copied is copied again from its
+     *         saved value, which is the same, so it is counted twice; loading the snapshot is not affected.
+     */
+    public long writeSnapshot(Path file, long slot) throws IOException {
+        if (this.preImages == null) {
+            throw new IllegalStateException("No snapshot has begun");
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        long written;
+        try (OutputStream stream = Files.newOutputStream(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            written = this.writeSnapshot(stream, slot);
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return written;
+    }
+
+    /**
+     * Writes the state as of the last beginSnapshot to a stream while writes go on, in the layout of a
+     * snapshot file. The stream is flushed but not closed.
+     *
+     * @param stream The stream the snapshot is written to.
+     * @param slot The last slot applied when the snapshot began, stored in the snapshot.
+     * @return The number of entries written, counted as writeSnapshot to a file counts them.
+     */
+    public long writeSnapshot(OutputStream stream, long slot) throws IOException {
+        ConcurrentHashMap<String, Optional<Entry>> saved = this.preImages;
+        if (saved == null) {
+            throw new IllegalStateException("No snapshot has begun");
+        }
+        long written = 0;
+        try {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(stream, 1 << 20), new CRC32());
+            DataOutputStream output = new DataOutputStream(checked);
+            output.writeInt(SNAPSHOT_MAGIC);
+            output.writeByte(SNAPSHOT_VERSION);
+            output.writeLong(slot);
+            output.writeLong(this.snapshotRevision);
+
+            // Keys written since the snapshot began are taken from their saved values instead
+            for (Map.Entry<String, Entry> entry : this.entries.entrySet()) {
+                if (!saved.containsKey(entry.getKey())) {
+                    writeEntry(output, entry.getKey(), entry.getValue());
+                    written += 1;
+                }
+            }
+            this.preImages = null;
+            for (Map.Entry<String, Optional<Entry>> entry : saved.entrySet()) {
+                if (entry.getValue().isPresent()) {
+                    writeEntry(output, entry.getKey(), entry.getValue().get());
+                    written += 1;
+                }
+            }
+            ValueCodec.writeString(output, null);
+
+            // The request table, in its order so a replica loading it forgets clients in the same order
+            ValueCodec.writeVarLong(output, this.snapshotSessions.size());
+            for (Map.Entry<Long, Session> session : this.snapshotSessions.entrySet()) {
+                output.writeLong(session.getKey());
+                ValueCodec.writeVarLong(output, session.getValue().sequence);
+                byte[] result = ValueCodec.encode(session.getValue().result);
+                ValueCodec.writeVarLong(output, result.length);
+                output.write(result);
+            }
+            output.flush();
+            output.writeInt((int) checked.getChecksum().getValue());
+            output.flush();
+        } finally {
+            this.preImages = null;
+            this.snapshotSessions = null;
+        }
+        return written;
+    }
+
+    /**
+     * Replaces the state with the content of a snapshot file. The snapshot is read into a new map and
+     * request table, which replace the current ones only once its checksum matched, so readers never see
+     * a partly loaded store and a corrupted snapshot leaves the state as it was.
+     *
+     * @return The last slot applied when the snapshot began.
+     */
+    public long loadSnapshot(Path file) throws IOException {
+        ConcurrentHashMap<String, Entry> loaded = new ConcurrentHashMap<>();
+        LinkedHashMap<Long, Session> loadedSessions = new LinkedHashMap<>();
+        long loadedRevision;
+        long slot;
+        try (CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 20), new CRC32())) {
+            DataInputStream input = new DataInputStream(checked);
+            if (input.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException(file + " is not a snapshot");
+            }
+            byte version = input.readByte();
+            if (version < SNAPSHOT_VERSION_INT_LENGTHS || version > SNAPSHOT_VERSION) {
+                throw new IOException(file + " has the unsupported snapshot version " + version);
+            }
+            slot = input.readLong();
+            if (version >= SNAPSHOT_VERSION_WITHOUT_SESSIONS) {
+                loadedRevision = input.readLong();
+                String key;
+                while ((key = ValueCodec.readString(input)) != null) {
+                    String value = ValueCodec.readString(input);
+                    loaded.put(key, new Entry(value, ValueCodec.readVarLong(input)));
+                }
+                if (version == SNAPSHOT_VERSION) {
+                    readSessions(input, loadedSessions);
+                }
+            } else {
+                // Snapshots written before versions existed give every key the first version
+                loadedRevision = 1;
+                if (version == SNAPSHOT_VERSION_UNVERSIONED) {
+                    String key;
+                    while ((key = ValueCodec.readString(input)) != null) {
+                        loaded.put(key, new Entry(ValueCodec.readString(input), 1));
+                    }
+                } else {
+                    int keyLength;
+                    while ((keyLength = input.readInt()) >= 0) {
+                        String key = readString(input, keyLength);
+                        loaded.put(key, new Entry(readString(input, input.readInt()), 1));
+                    }
+                }
+            }
+            int expected = (int) checked.getChecksum().getValue();
+            if (input.readInt() != expected) {
+                throw new IOException(file + " is corrupted");
+            }
+        }
+        synchronized (this.sessions) {
+            this.sessions.clear();
+            this.sessions.putAll(loadedSessions);
+        }
+        this.revision = loadedRevision;
+        this.entries = loaded;
+        return slot;
+    }
+
+    /**
+     * Reads the request table of a snapshot into the given table.
+     */
+    private static void readSessions(DataInputStream input, Map<Long, Session> sessions) throws IOException {
+        long count = ValueCodec.readVarLong(input);
+        for (long i = 0; i < count; i++) {
+            long clientId = input.readLong();
+            long sequence = ValueCodec.readVarLong(input);
+            byte[] result = new byte[(int) ValueCodec.readVarLong(input)];
+            input.readFully(result);
+            // Snapshots are sent by peers too, and every result the table holds has an encoding of its own
+            sessions.put(clientId, new Session(sequence, ValueCodec.decodeFromPeer(result)));
+        }
+    }
+
+    /**
+     * Writes a key and its value as length-prefixed UTF-8, followed by its version.
+     */
+    private static void writeEntry(DataOutputStream output, String key, Entry entry) throws IOException {
+        ValueCodec.writeString(output, key);
+        ValueCodec.writeString(output, entry.value);
+        ValueCodec.writeVarLong(output, entry.version);
+    }
+
+    /**
+     * Reads a string of the given length from a snapshot of version 1.
+     */
+    private static String readString(DataInputStream input, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The latest request applied for a client, and the result it had
+     */
+    static final class Session {
+        final long sequence;
+        final Object result;
+
+        Session(long sequence, Object result) {
+            this.sequence = sequence;
+            this.result = result;
+        }
+    }
+
+    /**
+     * The value of a key together with its version
+     */
+    static final class Entry {
+        final String value;
+        final long version;
+
+        Entry(String value, long version) {
+            this.value = value;
+            this.version = version;
+        }
+    }
+}
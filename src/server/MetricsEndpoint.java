@@ -0,0 +1,210 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the metrics of a server as plain text in the Prometheus exposition format, on a local port
+ * with the JDK HTTP server, so monitoring can scrape every node without RMI. A scrape only reads the
+ * lock-free metrics of the server, the size of its store and the memory and GC beans of the JVM; it
+ * never takes a lock of the server, so scraping does not slow consensus down. A scrape keeps no state
+ * either: counts are exported as monotonic totals, which the monitoring turns into rates, so any number
+ * of scrapers see the same values.
+ *
+ * Scrapes are answered one at a time on a thread of the endpoint's own.
+ */
+public class MetricsEndpoint implements Closeable {
+    private static final String[] OPERATIONS = {"puts", "gets", "deletes", "transactions"};
+    private static final String[] OUTCOMES = {"committed", "rejected", "aborted"};
+
+    private final Server server;
+    private final HttpServer httpServer;
+    private final ExecutorService executor;
+
+    /**
+     * Starts serving the metrics of a server at /metrics.
+     *
+     * @param port The local port to listen on, or 0 for any free port.
+     * @param server The server whose metrics are served.
+     */
+    public MetricsEndpoint(int port, Server server) throws IOException {
+        this.server = server;
+        this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        int boundPort = this.httpServer.getAddress().getPort();
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "paxos-metrics-" + boundPort);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpServer.setExecutor(this.executor);
+        this.httpServer.createContext("/metrics", this::handle);
+        this.httpServer.start();
+    }
+
+    /**
+     * Returns the port the endpoint listens on.
+     */
+    public int getPort() {
+        return this.httpServer.getAddress().getPort();
+    }
+
+    /**
+     * Answers a scrape with the current metrics.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            String text;
+            try {
+                text = this.render();
+            } catch (RemoteException e) {
+                // Cannot happen on a local call
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            byte[] body = text.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Formats every metric.
+     */
+    private String render() throws RemoteException {
+        PaxosStats stats = this.server.stats();
+        Map<String, Long> counters = stats.getCounters();
+        StringBuilder text = new StringBuilder(4096);
+
+        header(text, "paxos_operations_total", "counter", "Client requests received by this server");
+        for (String operation : OPERATIONS) {
+            sample(text, "paxos_operations_total", "type", operation, counters.getOrDefault(operation, 0L));
+        }
+
+        header(text, "paxos_proposals_total", "counter", "Proposals led by this server, by outcome");
+        for (String outcome : OUTCOMES) {
+            sample(text, "paxos_proposals_total", "outcome", outcome, counters.getOrDefault(outcome, 0L));
+        }
+
+        header(text, "paxos_latency_seconds", "summary", "Latency of the Paxos phases, of committing a write and of waiting to propose");
+        for (Map.Entry<String, PaxosStats.Distribution> latency : stats.getLatencies().entrySet()) {
+            if (!latency.getKey().startsWith(PaxosStats.PEER_LATENCY_PREFIX)) {
+                summary(text, "paxos_latency_seconds", "phase", latency.getKey(), latency.getValue());
+            }
+        }
+
+        header(text, "paxos_retries_deduplicated_total", "counter", "Retried client requests answered with the result of an earlier attempt");
+        sample(text, "paxos_retries_deduplicated_total", null, null, counters.getOrDefault("retries deduplicated", 0L));
+
+        header(text, "paxos_store_keys", "gauge", "Keys in the store of this server");
+        sample(text, "paxos_store_keys", null, null, counters.getOrDefault("store keys", 0L));
+
+        header(text, "paxos_peer_latency_seconds", "summary", "Latency of the requests a peer answered");
+        header(text, "paxos_peer_requests_total", "counter", "Requests sent to a peer");
+        header(text, "paxos_peer_failures_total", "counter", "Requests a peer failed to answer");
+        header(text, "paxos_peer_failure_ratio", "gauge", "Fraction of the requests sent to a peer that failed");
+        for (Map.Entry<String, PaxosStats.Distribution> latency : stats.getLatencies().entrySet()) {
+            if (!latency.getKey().startsWith(PaxosStats.PEER_LATENCY_PREFIX)) {
+                continue;
+            }
+            String peer = latency.getKey().substring(PaxosStats.PEER_LATENCY_PREFIX.length());
+            long failures = counters.getOrDefault(PaxosStats.PEER_FAILURES_PREFIX + peer, 0L);
+            long requests = latency.getValue().getCount() + failures;
+            summary(text, "paxos_peer_latency_seconds", "peer", peer, latency.getValue());
+            sample(text, "paxos_peer_requests_total", "peer", peer, requests);
+            sample(text, "paxos_peer_failures_total", "peer", peer, failures);
+            sample(text, "paxos_peer_failure_ratio", "peer", peer, requests == 0 ? 0 : (double) failures / requests);
+        }
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        header(text, "jvm_heap_used_bytes", "gauge", "Heap in use");
+        sample(text, "jvm_heap_used_bytes", null, null, heap.getUsed());
+        header(text, "jvm_heap_committed_bytes", "gauge", "Heap committed by the JVM");
+        sample(text, "jvm_heap_committed_bytes", null, null, heap.getCommitted());
+        header(text, "jvm_heap_max_bytes", "gauge", "Largest heap the JVM may use, or -1 if unbounded");
+        sample(text, "jvm_heap_max_bytes", null, null, heap.getMax());
+        header(text, "jvm_gc_collections_total", "counter", "Garbage collections, by collector");
+        header(text, "jvm_gc_collection_seconds_total", "counter", "Time spent in garbage collections, by collector");
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sample(text, "jvm_gc_collections_total", "gc", collector.getName(), collector.getCollectionCount());
+            sample(text, "jvm_gc_collection_seconds_total", "gc", collector.getName(), collector.getCollectionTime() / 1e3);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Appends the help and type lines of a metric.
+     */
+    private static void header(StringBuilder text, String name, String type, String help) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Appends a summary of a latency distribution in seconds: its quantiles, sum and count.
+     */
+    private static void summary(StringBuilder text, String name, String label, String value, PaxosStats.Distribution latency) {
+        long[] quantiles = {latency.getP50(), latency.getP90(), latency.getP99(), latency.getP999()};
+        String[] levels = {"0.5", "0.9", "0.99", "0.999"};
+        for (int i = 0; i < quantiles.length; i++) {
+            text.append(name).append('{').append(label).append("=\"").append(escape(value))
+                    .append("\",quantile=\"").append(levels[i]).append("\"} ").append(quantiles[i] / 1e9).append('\n');
+        }
+        sample(text, name + "_sum", label, value, latency.getMean() * latency.getCount() / 1e9);
+        sample(text, name + "_count", label, value, latency.getCount());
+    }
+
+    /**
+     * Appends one sample, with one label or none.
+     */
+    private static void sample(StringBuilder text, String name, String label, String value, double sample) {
+        text.append(name);
+        if (label != null) {
+            text.append('{').append(label).append("=\"").append(escape(value)).append("\"}");
+        }
+        text.append(' ');
+        if (sample == Math.rint(sample) && Math.abs(sample) < 1e15) {
+            text.append((long) sample);
+        } else {
+            text.append(sample);
+        }
+        text.append('\n');
+    }
+
+    /**
+     * Escapes a label value.
+     */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Stops serving the metrics.
+     */
+    @Override
+    public void close() {
+        this.httpServer.stop(0);
+        this.executor.shutdownNow();
+    }
+}
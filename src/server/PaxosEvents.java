@@ -0,0 +1,177 @@
+package server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The Java Flight Recorder events of a server, so consensus can be lined up with GC pauses, lock
+ * contention and I/O in the same recording. They are disabled unless a recording enables them, for
+ * instance with the paxos.jfc settings next to the sources. A disabled event is never committed, and
+ * the end helpers only fill an event in once shouldCommit says it is recorded, so a disabled event costs
+ * little more than the check.
+ */
+final class PaxosEvents {
+
+    /**
+     * Not instantiable.
+     */
+    private PaxosEvents() {
+    }
+
+    /**
+     * A value proposed by this server, from the first phase it ran to its outcome
+     */
+    @Name("paxos.Proposal")
+    @Label("Proposal")
+    @Category({"Paxos", "Proposer"})
+    @Description("A value proposed by this server and the outcome of its rounds")
+    @StackTrace(false)
+    static final class Proposal extends Event {
+        @Label("Sequence Number")
+        long sequenceNumber;
+
+        @Label("Slot")
+        @Description("The slot the value was proposed in, or -1 if none was allocated")
+        long slot = -1;
+
+        @Label("Operations")
+        int operations;
+
+        @Label("Outcome")
+        @Description("committed, rejected in the accept phase, aborted without a majority of promises, or elected")
+        String outcome;
+
+        @Label("Promises")
+        @Description("Promises collected by the prepare phase, 0 when a leader skipped it")
+        int promises;
+
+        @Label("Accepts")
+        @Description("Acceptances collected by the last accept phase")
+        int accepts;
+    }
+
+    /**
+     * A prepare or accept request handled by this server as an acceptor, including persisting its state
+     */
+    @Name("paxos.AcceptorDecision")
+    @Label("Acceptor Decision")
+    @Category({"Paxos", "Acceptor"})
+    @Description("A prepare or accept request answered by this server")
+    @StackTrace(false)
+    static final class AcceptorDecision extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Sequence Number")
+        long sequenceNumber;
+
+        @Label("Slot")
+        @Description("The slot of an accept, or the first slot promised by a prepare")
+        long slot;
+
+        @Label("Granted")
+        boolean granted;
+
+        @Label("Promised")
+        @Description("The highest sequence number promised after the request")
+        long promised;
+    }
+
+    /**
+     * A decided slot applied to the store
+     */
+    @Name("paxos.Apply")
+    @Label("Apply")
+    @Category({"Paxos", "Learner"})
+    @Description("A decided slot applied to the key-value store")
+    @StackTrace(false)
+    static final class Apply extends Event {
+        @Label("Slot")
+        long slot;
+
+        @Label("Operations")
+        int operations;
+    }
+
+    /**
+     * A change made to the key-value store by an applied operation, or one refused when it was applied:
+     * a PUT or DELETE, each key written or the key whose check failed in a TXN, and a CAS
+     */
+    @Name("paxos.StoreMutation")
+    @Label("Store Mutation")
+    @Category({"Paxos", "Store"})
+    @Description("A PUT, DELETE, transaction (TXN) or conditional write (CAS) applied to the key-value store, once per key a transaction writes")
+    @StackTrace(false)
+    static final class StoreMutation extends Event {
+        @Label("Type")
+        @Description("The operation applied: PUT, DELETE, TXN or CAS")
+        String type;
+
+        @Label("Key")
+        String key;
+
+        @Label("Succeeded")
+        @Description("False if the key already existed for a PUT, did not exist for a DELETE, failed its check in a TXN, or did not meet the precondition of a CAS")
+        boolean succeeded;
+    }
+
+    /**
+     * Ends a proposal and records its outcome if the event is enabled.
+     *
+     * @param value The value proposed, or null for an election.
+     */
+    static void endProposal(Proposal event, long sequenceNumber, long slot, Object value, String outcome) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.sequenceNumber = sequenceNumber;
+            event.slot = slot;
+            event.operations = value == null ? 0 : value instanceof Server.Batch ? ((Server.Batch) value).operations.size() : 1;
+            event.outcome = outcome;
+            event.commit();
+        }
+    }
+
+    /**
+     * Ends an acceptor decision and records it if the event is enabled.
+     */
+    static void endAcceptorDecision(AcceptorDecision event, String phase, long sequenceNumber, long slot, boolean granted, long promised) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = phase;
+            event.sequenceNumber = sequenceNumber;
+            event.slot = slot;
+            event.granted = granted;
+            event.promised = promised;
+            event.commit();
+        }
+    }
+
+    /**
+     * Ends the apply of a slot and records it if the event is enabled.
+     */
+    static void endApply(Apply event, long slot, int operations) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.slot = slot;
+            event.operations = operations;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records a store mutation if the event is enabled.
+     */
+    static void storeMutation(String type, String key, boolean succeeded) {
+        StoreMutation event = new StoreMutation();
+        if (event.shouldCommit()) {
+            event.type = type;
+            event.key = key;
+            event.succeeded = succeeded;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Records the metrics of one server as it runs Paxos. Every metric is a lock-free Histogram or a
+ * LongAdder, so recording never blocks the threads running the protocol, and snapshot turns them into
+ * the PaxosStats returned to clients.
+ */
+final class PaxosMetrics {
+    // The address in the description of an RMI stub
+    private static final Pattern RMI_ENDPOINT = Pattern.compile("endpoint:\\[([^\\]]+)\\]");
+
+    // Latency of each phase, from sending it to collecting a majority, in nanoseconds
+    final Histogram prepareLatency = new Histogram();
+    final Histogram acceptLatency = new Histogram();
+    final Histogram learnLatency = new Histogram();
+    // Latency of a client write, from proposing it to applying it
+    final Histogram commitLatency = new Histogram();
+
+    // Time spent waiting to run an election and for a free slot of the pipeline window
+    final Histogram leadershipWait = new Histogram();
+    final Histogram windowWait = new Histogram();
+
+    // Votes collected by each round
+    final Histogram promisesPerRound = new Histogram();
+    final Histogram acceptsPerRound = new Histogram();
+
+    // Client requests received, by operation type
+    final LongAdder puts = new LongAdder();
+    final LongAdder gets = new LongAdder();
+    final LongAdder deletes = new LongAdder();
+    final LongAdder transactions = new LongAdder();
+
+    // Retried client requests answered with the result of an earlier attempt instead of being applied again
+    final LongAdder retriesDeduplicated = new LongAdder();
+
+    // Outcomes of proposals: decided, rejected in the accept phase or aborted without a promised ballot
+    final LongAdder committed = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+    final LongAdder aborted = new LongAdder();
+
+    private final ConcurrentHashMap<Object, Peer> peers = new ConcurrentHashMap<>();
+
+    /**
+     * Records a request sent to a peer.
+     *
+     * @param peer The peer, as given to the server.
+     * @param nanos How long the request took.
+     * @param failed Whether the peer failed to answer.
+     */
+    void recordPeerRequest(Object peer, long nanos, boolean failed) {
+        Peer metrics = this.peers.get(peer);
+        if (metrics == null) {
+            metrics = this.peers.computeIfAbsent(peer, key -> new Peer(nameOf(key)));
+        }
+        if (failed) {
+            metrics.failures.increment();
+        } else {
+            metrics.latency.record(nanos);
+        }
+    }
+
+    /**
+     * Returns the current values of every metric.
+     *
+     * @param serverId The server the metrics are recorded on.
+     * @param storeKeys The number of keys in its store.
+     */
+    PaxosStats snapshot(long serverId, int storeKeys) {
+        Map<String, PaxosStats.Distribution> latencies = new LinkedHashMap<>();
+        latencies.put("prepare", this.prepareLatency.snapshot());
+        latencies.put("accept", this.acceptLatency.snapshot());
+        latencies.put("learn", this.learnLatency.snapshot());
+        latencies.put("commit", this.commitLatency.snapshot());
+        latencies.put("leadership wait", this.leadershipWait.snapshot());
+        latencies.put("window wait", this.windowWait.snapshot());
+
+        Map<String, PaxosStats.Distribution> distributions = new LinkedHashMap<>();
+        distributions.put("promises per round", this.promisesPerRound.snapshot());
+        distributions.put("accepts per round", this.acceptsPerRound.snapshot());
+
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put("puts", this.puts.sum());
+        counters.put("gets", this.gets.sum());
+        counters.put("deletes", this.deletes.sum());
+        counters.put("transactions", this.transactions.sum());
+        counters.put("retries deduplicated", this.retriesDeduplicated.sum());
+        counters.put("committed", this.committed.sum());
+        counters.put("rejected", this.rejected.sum());
+        counters.put("aborted", this.aborted.sum());
+        counters.put("store keys", (long) storeKeys);
+
+        // Peers in a stable order, with their latency and failures side by side
+        Map<String, Peer> byName = new TreeMap<>();
+        for (Peer peer : this.peers.values()) {
+            byName.put(peer.name, peer);
+        }
+        for (Peer peer : byName.values()) {
+            latencies.put(PaxosStats.PEER_LATENCY_PREFIX + peer.name, peer.latency.snapshot());
+            counters.put(PaxosStats.PEER_FAILURES_PREFIX + peer.name, peer.failures.sum());
+        }
+        return new PaxosStats(serverId, latencies, distributions, counters);
+    }
+
+    /**
+     * Names a peer: the address of an RMI stub, or the peer's own description.
+     */
+    private static String nameOf(Object peer) {
+        String description = String.valueOf(peer);
+        Matcher endpoint = RMI_ENDPOINT.matcher(description);
+        return endpoint.find() ? endpoint.group(1) : description;
+    }
+
+    /**
+     * The metrics of the requests sent to one peer
+     */
+    private static final class Peer {
+        final String name;
+        final Histogram latency = new Histogram();
+        final LongAdder failures = new LongAdder();
+
+        Peer(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package server;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * A snapshot of the metrics of one server: the latency of each Paxos phase and of the requests sent to
+ * each peer, the number of promises and acceptances each round collected, and counters of the outcomes
+ * of proposals and of failed requests. Metrics are named, so a server can report new ones without
+ * changing this class.
+ */
+public class PaxosStats implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // The latency of the requests sent to a peer is named by this prefix and the peer, and so is the
+    // counter of the requests it failed to answer
+    public static final String PEER_LATENCY_PREFIX = "rpc ";
+    public static final String PEER_FAILURES_PREFIX = "rpc failures ";
+
+    private final long serverId;
+    private final Map<String, Distribution> latencies;
+    private final Map<String, Distribution> distributions;
+    private final Map<String, Long> counters;
+
+    /**
+     * Constructs a snapshot.
+     *
+     * @param serverId The server the metrics were taken on.
+     * @param latencies Latency distributions in nanoseconds, by name.
+     * @param distributions Distributions of other values, by name.
+     * @param counters Counters and current values, by name.
+     */
+    public PaxosStats(long serverId, Map<String, Distribution> latencies, Map<String, Distribution> distributions,
+                      Map<String, Long> counters) {
+        this.serverId = serverId;
+        this.latencies = latencies;
+        this.distributions = distributions;
+        this.counters = counters;
+    }
+
+    /**
+     * Returns the id of the server the metrics were taken on.
+     */
+    public long getServerId() {
+        return this.serverId;
+    }
+
+    /**
+     * Returns the latency distributions in nanoseconds, by name.
+     */
+    public Map<String, Distribution> getLatencies() {
+        return this.latencies;
+    }
+
+    /**
+     * Returns the distributions of values that are not latencies, such as the votes per round, by name.
+     */
+    public Map<String, Distribution> getDistributions() {
+        return this.distributions;
+    }
+
+    /**
+     * Returns the counters, and current values such as the number of keys in the store, by name.
+     */
+    public Map<String, Long> getCounters() {
+        return this.counters;
+    }
+
+    @Override
+    public String toString() {
+        return "PaxosStats{" +
+                "serverId=" + serverId +
+                ", latencies=" + latencies +
+                ", distributions=" + distributions +
+                ", counters=" + counters +
+                '}';
+    }
+
+    /**
+     * The count, mean, percentiles and maximum of the values recorded for one metric. Percentiles are
+     * accurate to within 1/16 of their value.
+     */
+    public static class Distribution implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long count;
+        private final double mean;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        /**
+         * Constructs a distribution summary.
+         */
+        public Distribution(long count, double mean, long p50, long p90, long p99, long p999, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        /**
+         * Returns how many values were recorded.
+         */
+        public long getCount() {
+            return this.count;
+        }
+
+        /**
+         * Returns the mean of the values recorded.
+         */
+        public double getMean() {
+            return this.mean;
+        }
+
+        /**
+         * Returns the median.
+         */
+        public long getP50() {
+            return this.p50;
+        }
+
+        /**
+         * Returns the 90th percentile.
+         */
+        public long getP90() {
+            return this.p90;
+        }
+
+        /**
+         * Returns the 99th percentile.
+         */
+        public long getP99() {
+            return this.p99;
+        }
+
+        /**
+         * Returns the 99.9th percentile.
+         */
+        public long getP999() {
+            return this.p999;
+        }
+
+        /**
+         * Returns the highest value recorded.
+         */
+        public long getMax() {
+            return this.max;
+        }
+
+        @Override
+        public String toString() {
+            return "Distribution{" +
+                    "count=" + count +
+                    ", mean=" + mean +
+                    ", p50=" + p50 +
+                    ", p90=" + p90 +
+                    ", p99=" + p99 +
+                    ", p999=" + p999 +
+                    ", max=" + max +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package server;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The acceptor and learner of a peer reached through its PeerListener, as the NIO alternative to an RMI
+ * stub. All the threads of a server share one long-lived connection to each peer: a call writes its
+ * request frame and waits for the response carrying the same request id, which a reader thread hands
+ * over, so any number of calls can be in flight on the connection at once. A broken connection fails
+ * the calls waiting on it and is opened again by the next call. Failures surface as RemoteException,
+ * as they would through RMI.
+ *
+ * A call gives up after its timeout whatever it waits for: the write lock, the connection, the write of
+ * its request or the response. A write that blocks because the peer stopped reading closes the channel,
+ * so one unresponsive peer cannot hold up the other calls sharing the connection for longer.
+ */
+public class PeerConnection implements IAcceptor, ILearner, Closeable {
+    // Closes the channels whose writes have been blocked for longer than the timeout of their call
+    private static final ScheduledExecutorService WRITE_TIMEOUTS = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "paxos-peer-write-timeouts");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final InetSocketAddress address;
+    private final long timeoutMillis;
+    private final AtomicLong requestIds = new AtomicLong();
+
+    // Guards the channel and keeps the frames written by concurrent calls whole
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private SocketChannel channel;
+    // The calls waiting for a response on the current channel, so a broken channel only fails its own calls
+    private ConcurrentHashMap<Long, CompletableFuture<ByteBuffer>> pendingCalls;
+
+    /**
+     * Constructs the connection to a peer, which is opened on the first call.
+     *
+     * @param address The address the PeerListener of the peer listens on.
+     * @param timeoutMillis How long a call waits for its response before failing.
+     */
+    public PeerConnection(InetSocketAddress address, long timeoutMillis) {
+        this.address = address;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Sends a request and waits for its response.
+     *
+     * @return The result carried by the response, positioned after its status.
+     * @throws RemoteException If the peer could not be reached, did not answer in time or failed the request.
+     */
+    private ByteBuffer call(byte opcode, PeerProtocol.Body arguments) throws RemoteException {
+        long requestId = this.requestIds.incrementAndGet();
+        CompletableFuture<ByteBuffer> response = new CompletableFuture<>();
+        ConcurrentHashMap<Long, CompletableFuture<ByteBuffer>> calls = null;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.timeoutMillis);
+        try {
+            ByteBuffer request = PeerProtocol.frame(requestId, opcode, arguments);
+            if (!this.writeLock.tryLock(remainingMillis(deadline), TimeUnit.MILLISECONDS)) {
+                throw new TimeoutException();
+            }
+            try {
+                SocketChannel connected = this.connect(deadline);
+                calls = this.pendingCalls;
+                calls.put(requestId, response);
+                ScheduledFuture<?> writeTimeout = WRITE_TIMEOUTS.schedule(() -> closeQuietly(connected), remainingMillis(deadline), TimeUnit.MILLISECONDS);
+                try {
+                    while (request.hasRemaining()) {
+                        connected.write(request);
+                    }
+                } catch (IOException e) {
+                    this.disconnect(connected, calls, e);
+                    throw e;
+                } finally {
+                    writeTimeout.cancel(false);
+                }
+            } finally {
+                this.writeLock.unlock();
+            }
+            ByteBuffer result = response.get(remainingMillis(deadline), TimeUnit.MILLISECONDS);
+            if (result.get() == PeerProtocol.ERROR) {
+                throw new RemoteException(PeerProtocol.readString(result));
+            }
+            return result;
+        } catch (RemoteException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new RemoteException("Could not reach the peer at " + this.address, e);
+        } catch (ExecutionException e) {
+            throw new RemoteException("Lost the connection to the peer at " + this.address, e.getCause());
+        } catch (TimeoutException e) {
+            throw new RemoteException("The peer at " + this.address + " did not answer within " + this.timeoutMillis + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for the peer at " + this.address);
+        } finally {
+            if (calls != null) {
+                calls.remove(requestId);
+            }
+        }
+    }
+
+    /**
+     * Returns the milliseconds left until a deadline in System.nanoTime, at least one.
+     */
+    private static long remainingMillis(long deadline) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+
+    /**
+     * Closes a channel, which fails a write blocked on it.
+     */
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    /**
+     * Returns the open channel to the peer, opening it and starting its reader thread if needed.
+     * Must be called with the write lock held.
+     *
+     * @param deadline The System.nanoTime by which the connection must be established.
+     */
+    private SocketChannel connect(long deadline) throws IOException {
+        if (this.channel == null || !this.channel.isOpen()) {
+            SocketChannel opened = SocketChannel.open();
+            try {
+                opened.socket().connect(this.address, (int) Math.min(Integer.MAX_VALUE, remainingMillis(deadline)));
+            } catch (IOException e) {
+                closeQuietly(opened);
+                throw e;
+            }
+            opened.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            ConcurrentHashMap<Long, CompletableFuture<ByteBuffer>> calls = new ConcurrentHashMap<>();
+            Thread reader = new Thread(() -> this.readResponses(opened, calls), "paxos-peer-" + this.address.getPort());
+            reader.setDaemon(true);
+            reader.start();
+            this.channel = opened;
+            this.pendingCalls = calls;
+        }
+        return this.channel;
+    }
+
+    /**
+     * Reads the responses arriving on a channel and completes the calls waiting for them, until the
+     * channel breaks.
+     *
+     * @param calls The calls waiting for a response on this channel.
+     */
+    private void readResponses(SocketChannel opened, ConcurrentHashMap<Long, CompletableFuture<ByteBuffer>> calls) {
+        ByteBuffer lengthPrefix = ByteBuffer.allocate(Integer.BYTES);
+        try {
+            while (true) {
+                readFully(opened, lengthPrefix.clear());
+                ByteBuffer response = ByteBuffer.allocate(PeerProtocol.frameLength(lengthPrefix.getInt(0)));
+                readFully(opened, response);
+                response.flip();
+                CompletableFuture<ByteBuffer> call = calls.get(response.getLong());
+                if (call != null) {
+                    call.complete(response);
+                }
+                // Otherwise the call timed out and nobody waits for the response anymore
+            }
+        } catch (IOException e) {
+            this.disconnect(opened, calls, e);
+        }
+    }
+
+    /**
+     * Fills a buffer from a channel.
+     */
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Connection closed by the peer");
+            }
+        }
+    }
+
+    /**
+     * Closes a broken channel and fails the calls waiting for a response on it, so they do not wait for
+     * their timeout. Calls sent on a channel opened since are left alone. The next call opens a new
+     * channel if the broken one is still the current one.
+     *
+     * @param calls The calls waiting for a response on the broken channel.
+     */
+    private void disconnect(SocketChannel broken, ConcurrentHashMap<Long, CompletableFuture<ByteBuffer>> calls, IOException cause) {
+        closeQuietly(broken);
+        this.writeLock.lock();
+        try {
+            if (this.channel == broken) {
+                this.channel = null;
+            }
+        } finally {
+            this.writeLock.unlock();
+        }
+        for (CompletableFuture<ByteBuffer> call : calls.values()) {
+            call.completeExceptionally(cause);
+        }
+    }
+
+    @Override
+    public Object prepare(long sequenceNumber, long fromSlot) throws RemoteException {
+        ByteBuffer result = this.call(PeerProtocol.PREPARE, output -> {
+            output.writeLong(sequenceNumber);
+            output.writeLong(fromSlot);
+        });
+        return this.readValue(result);
+    }
+
+    @Override
+    public long accept(long sequenceNumber, long slot, Object proposalValue) throws RemoteException {
+        return this.call(PeerProtocol.ACCEPT, output -> {
+            output.writeLong(sequenceNumber);
+            output.writeLong(slot);
+            PeerProtocol.writeValue(output, proposalValue);
+        }).getLong();
+    }
+
+    @Override
+    public boolean grantLease(long sequenceNumber, long leaseMillis) throws RemoteException {
+        return this.call(PeerProtocol.GRANT_LEASE, output -> {
+            output.writeLong(sequenceNumber);
+            output.writeLong(leaseMillis);
+        }).get() != 0;
+    }
+
+    @Override
+    public boolean heartbeat(long sequenceNumber) throws RemoteException {
+        return this.call(PeerProtocol.HEARTBEAT, output -> output.writeLong(sequenceNumber)).get() != 0;
+    }
+
+    @Override
+    public void learn(long slot, Object acceptedValue) throws RemoteException {
+        this.call(PeerProtocol.LEARN, output -> {
+            output.writeLong(slot);
+            PeerProtocol.writeValue(output, acceptedValue);
+        });
+    }
+
+    @Override
+    public Object fetchDecisions(long fromSlot, int maxSlots) throws RemoteException {
+        ByteBuffer result = this.call(PeerProtocol.FETCH_DECISIONS, output -> {
+            output.writeLong(fromSlot);
+            output.writeInt(maxSlots);
+        });
+        return this.readValue(result);
+    }
+
+    @Override
+    public byte[] fetchSnapshotChunk(long snapshotSlot, long offset, int maxBytes) throws RemoteException {
+        return PeerProtocol.readBytes(this.call(PeerProtocol.FETCH_SNAPSHOT_CHUNK, output -> {
+            output.writeLong(snapshotSlot);
+            output.writeLong(offset);
+            output.writeInt(maxBytes);
+        }));
+    }
+
+    /**
+     * Reads a value carried by a response.
+     */
+    private Object readValue(ByteBuffer result) throws RemoteException {
+        try {
+            return PeerProtocol.readValue(result);
+        } catch (IOException e) {
+            throw new RemoteException("Invalid response from the peer at " + this.address, e);
+        }
+    }
+
+    /**
+     * Closes the connection, failing the calls waiting on it.
+     */
+    @Override
+    public void close() {
+        this.writeLock.lock();
+        try {
+            if (this.channel != null) {
+                this.disconnect(this.channel, this.pendingCalls, new IOException("Connection closed"));
+            }
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a string representation of this connection.
+     */
+    @Override
+    public String toString() {
+        return "PeerConnection{" + "address=" + address + '}';
+    }
+}
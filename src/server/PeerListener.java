@@ -0,0 +1,290 @@
+package server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the acceptor and learner of a server to its peers over the binary protocol of PeerProtocol,
+ * as the NIO alternative to exporting them through RMI. One selector thread accepts the connections of
+ * the peers, reads their frames and writes the responses back. The requests themselves run on a pool of
+ * handler threads, since an acceptor may wait for its write-ahead log, so the requests pipelined on one
+ * connection are served concurrently and answered as they complete.
+ *
+ * Peers are not authenticated, so the listener only accepts connections on the loopback address, where
+ * ServerMain runs every server.
+ */
+public class PeerListener implements Closeable {
+    private static final int INITIAL_BUFFER_BYTES = 64 << 10;
+
+    private final IAcceptor acceptor;
+    private final ILearner learner;
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final ExecutorService handlers;
+    private volatile boolean closed;
+
+    /**
+     * Starts listening for peers on the loopback address.
+     *
+     * @param port The port to listen on, or 0 for any free port.
+     * @param acceptor The acceptor the requests are served by.
+     * @param learner The learner the requests are served by.
+     */
+    public PeerListener(int port, IAcceptor acceptor, ILearner learner) throws IOException {
+        this.acceptor = acceptor;
+        this.learner = learner;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+        int boundPort = this.getPort();
+        this.handlers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "paxos-peer-handler-" + boundPort);
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread selectorThread = new Thread(this::run, "paxos-peer-listener-" + boundPort);
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    /**
+     * Returns the port the listener is bound to.
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) this.serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Runs the selector loop until the listener is closed.
+     */
+    private void run() {
+        while (!this.closed) {
+            try {
+                this.selector.select();
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        this.acceptConnection();
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.flush();
+                            }
+                        } catch (IOException e) {
+                            // The peer went away; it reconnects on its next request
+                            connection.close();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                if (!this.closed) {
+                    System.err.println("> Error: the peer listener failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Accepts a connection from a peer.
+     */
+    private void acceptConnection() throws IOException {
+        SocketChannel channel = this.serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(this.selector, SelectionKey.OP_READ, connection);
+    }
+
+    /**
+     * Runs a request on the local acceptor or learner and builds the response frame.
+     */
+    private ByteBuffer handle(ByteBuffer request) throws IOException {
+        long requestId = request.getLong();
+        byte opcode = request.get();
+        try {
+            switch (opcode) {
+                case PeerProtocol.PREPARE: {
+                    long sequenceNumber = request.getLong();
+                    Object promise = this.acceptor.prepare(sequenceNumber, request.getLong());
+                    return PeerProtocol.frame(requestId, PeerProtocol.OK, output -> PeerProtocol.writeValue(output, promise));
+                }
+                case PeerProtocol.ACCEPT: {
+                    long sequenceNumber = request.getLong();
+                    long slot = request.getLong();
+                    long accepted = this.acceptor.accept(sequenceNumber, slot, PeerProtocol.readValue(request));
+                    return PeerProtocol.frame(requestId, PeerProtocol.OK, output -> output.writeLong(accepted));
+                }
+                case PeerProtocol.GRANT_LEASE: {
+                    long sequenceNumber = request.getLong();
+                    boolean granted = this.acceptor.grantLease(sequenceNumber, request.getLong());
+                    return PeerProtocol.frame(requestId, PeerProtocol.OK, output -> output.writeBoolean(granted));
+                }
+                case PeerProtocol.HEARTBEAT: {
+                    boolean leading = this.acceptor.heartbeat(request.getLong());
+                    return PeerProtocol.frame(requestId, PeerProtocol.OK, output -> output.writeBoolean(leading));
+                }
+                case PeerProtocol.LEARN: {
+                    long slot = request.getLong();
+                    this.learner.learn(slot, PeerProtocol.readValue(request));
+                    return PeerProtocol.frame(requestId, PeerProtocol.OK, output -> { });
+                }
+                case PeerProtocol.FETCH_DECISIONS: {
+                    long fromSlot = request.getLong();
+                    Object decisions = this.learner.fetchDecisions(fromSlot, request.getInt());
+                    return PeerProtocol.frame(requestId, PeerProtocol.OK, output -> PeerProtocol.writeValue(output, decisions));
+                }
+                case PeerProtocol.FETCH_SNAPSHOT_CHUNK: {
+                    long snapshotSlot = request.getLong();
+                    long offset = request.getLong();
+                    byte[] chunk = this.learner.fetchSnapshotChunk(snapshotSlot, offset, request.getInt());
+                    return PeerProtocol.frame(requestId, PeerProtocol.OK, output -> PeerProtocol.writeBytes(output, chunk));
+                }
+                default:
+                    throw new IOException("Unknown opcode " + opcode);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Includes the RemoteException of a simulated failure, which the caller gets back as one
+            String message = String.valueOf(e.getMessage());
+            return PeerProtocol.frame(requestId, PeerProtocol.ERROR, output -> PeerProtocol.writeString(output, message));
+        }
+    }
+
+    /**
+     * Stops listening and closes the connections of the peers.
+     */
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        this.selector.wakeup();
+        for (SelectionKey key : this.selector.keys()) {
+            key.channel().close();
+        }
+        this.selector.close();
+        this.serverChannel.close();
+        this.handlers.shutdownNow();
+    }
+
+    /**
+     * A connection from one peer, with the frames read but not complete yet and the responses not written yet.
+     */
+    private class Connection {
+        private final SocketChannel channel;
+        private ByteBuffer input = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+        // Guarded by this connection: responses are queued by the handler threads and written by whichever
+        // thread finds the channel writable
+        private final Queue<ByteBuffer> output = new ArrayDeque<>();
+        private SelectionKey key;
+
+        /**
+         * Constructs the connection of a peer.
+         */
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Reads what the peer sent and hands every complete request to a handler thread.
+         */
+        void read() throws IOException {
+            if (this.channel.read(this.input) < 0) {
+                throw new IOException("Connection closed by the peer");
+            }
+            this.input.flip();
+            while (this.input.remaining() >= Integer.BYTES) {
+                int length = PeerProtocol.frameLength(this.input.getInt(this.input.position()));
+                if (this.input.remaining() < Integer.BYTES + length) {
+                    if (Integer.BYTES + length > this.input.capacity()) {
+                        // Make room for a frame larger than the buffer
+                        ByteBuffer larger = ByteBuffer.allocate(Integer.BYTES + length);
+                        larger.put(this.input);
+                        larger.flip();
+                        this.input = larger;
+                    }
+                    break;
+                }
+                this.input.position(this.input.position() + Integer.BYTES);
+                ByteBuffer request = ByteBuffer.allocate(length);
+                request.put(this.input.slice(this.input.position(), length)).flip();
+                this.input.position(this.input.position() + length);
+                PeerListener.this.handlers.execute(() -> this.respond(request));
+            }
+            this.input.compact();
+        }
+
+        /**
+         * Serves a request and queues its response.
+         */
+        private void respond(ByteBuffer request) {
+            try {
+                ByteBuffer response = PeerListener.this.handle(request);
+                synchronized (this) {
+                    this.output.add(response);
+                    this.flush();
+                }
+            } catch (IOException e) {
+                this.close();
+            }
+        }
+
+        /**
+         * Writes the queued responses as far as the channel takes them, and asks the selector to finish
+         * the job when it becomes writable again.
+         */
+        synchronized void flush() throws IOException {
+            if (!this.key.isValid()) {
+                this.output.clear();
+                return;
+            }
+            while (!this.output.isEmpty()) {
+                ByteBuffer response = this.output.peek();
+                this.channel.write(response);
+                if (response.hasRemaining()) {
+                    this.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    PeerListener.this.selector.wakeup();
+                    return;
+                }
+                this.output.poll();
+            }
+            this.key.interestOps(SelectionKey.OP_READ);
+        }
+
+        /**
+         * Closes the connection, dropping the responses not written yet.
+         */
+        void close() {
+            this.key.cancel();
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+}
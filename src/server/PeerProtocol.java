@@ -0,0 +1,130 @@
+package server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The binary frames exchanged by PeerConnection and PeerListener in place of RMI calls. Every frame is
+ * prefixed with its length and starts with the id of the request, which the response repeats so that
+ * many requests can be in flight on one connection and be answered in any order:
+ *
+ *   request:  [int length][long requestId][byte opcode][arguments]
+ *   response: [int length][long requestId][byte status][result, or the error message]
+ *
+ * Numbers are written big-endian; proposed and decided values are encoded by ValueCodec.
+ */
+final class PeerProtocol {
+    // Opcodes, one per remote method of IAcceptor and ILearner
+    static final byte PREPARE = 1;
+    static final byte ACCEPT = 2;
+    static final byte GRANT_LEASE = 3;
+    static final byte HEARTBEAT = 4;
+    static final byte LEARN = 5;
+    static final byte FETCH_DECISIONS = 6;
+    static final byte FETCH_SNAPSHOT_CHUNK = 7;
+
+    // Response statuses
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    // Frames larger than this are refused, so a corrupted length never allocates the heap away
+    static final int MAX_FRAME_BYTES = 256 << 20;
+
+    /**
+     * Writes the arguments or the result carried by a frame.
+     */
+    interface Body {
+        void writeTo(DataOutputStream output) throws IOException;
+    }
+
+    /**
+     * Not instantiable.
+     */
+    private PeerProtocol() {
+    }
+
+    /**
+     * Builds a complete frame, length prefix included, ready to be written to a channel.
+     *
+     * @param requestId The id of the request the frame is or answers.
+     * @param code The opcode of a request, or the status of a response.
+     */
+    static ByteBuffer frame(long requestId, byte code, Body body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(0);
+        output.writeLong(requestId);
+        output.writeByte(code);
+        body.writeTo(output);
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        frame.putInt(0, frame.remaining() - Integer.BYTES);
+        return frame;
+    }
+
+    /**
+     * Reads the length prefix of a frame and checks it.
+     */
+    static int frameLength(int length) throws IOException {
+        if (length < Long.BYTES + 1 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Writes a value as its length followed by its serialized form.
+     */
+    static void writeValue(DataOutputStream output, Object value) throws IOException {
+        writeBytes(output, ValueCodec.encode(value));
+    }
+
+    /**
+     * Reads a value written by writeValue, refusing Java-serialized values.
+     */
+    static Object readValue(ByteBuffer input) throws IOException {
+        return ValueCodec.decodeFromPeer(readBytes(input));
+    }
+
+    /**
+     * Writes a byte array, which may be null, as its length (-1 for null) followed by its content.
+     */
+    static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            output.writeInt(-1);
+            return;
+        }
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Reads a byte array written by writeBytes.
+     */
+    static byte[] readBytes(ByteBuffer input) {
+        int length = input.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        input.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Writes a string as length-prefixed UTF-8.
+     */
+    static void writeString(DataOutputStream output, String value) throws IOException {
+        writeBytes(output, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a string written by writeString.
+     */
+    static String readString(ByteBuffer input) {
+        byte[] bytes = readBytes(input);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+}
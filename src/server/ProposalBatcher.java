@@ -0,0 +1,115 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Collects the operations waiting to be proposed and hands them over in batches, so that many client
+ * operations share the fixed cost of one Paxos decision. A batch is closed once it holds the maximum
+ * number of operations or once the linger time has passed since its first operation arrived.
+ *
+ * At most a given number of batches are being proposed at once, on as many threads. Once that many are
+ * in flight, the next batch waits for one of them to finish and operations pile up in a bounded queue
+ * behind it. A client submitting to a full queue waits for room, and is refused if none frees up in time,
+ * so an overloaded server pushes back on its clients instead of queueing without limit.
+ */
+class ProposalBatcher<T> {
+    // How many full batches may wait for a proposing thread, beyond those in flight
+    private static final int QUEUED_BATCHES_PER_THREAD = 2;
+
+    private final BlockingQueue<T> pending;
+    private final Semaphore inFlight;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final Consumer<List<T>> proposer;
+    private final ExecutorService executor;
+    private final Thread batcherThread;
+    private volatile boolean running = true;
+
+    /**
+     * Constructs and starts a batcher.
+     *
+     * @param name The name of the batching thread.
+     * @param maxBatchSize The maximum number of operations in a batch.
+     * @param lingerMicros How long a batch stays open waiting for more operations.
+     * @param maxInFlight The most batches proposed at once.
+     * @param proposer Proposes a closed batch; runs on a pool thread so several batches can be in flight.
+     */
+    ProposalBatcher(String name, int maxBatchSize, long lingerMicros, int maxInFlight, Consumer<List<T>> proposer) {
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(lingerMicros);
+        this.proposer = proposer;
+        this.pending = new LinkedBlockingQueue<>(maxBatchSize * maxInFlight * QUEUED_BATCHES_PER_THREAD);
+        this.inFlight = new Semaphore(maxInFlight);
+        this.executor = Executors.newFixedThreadPool(maxInFlight, runnable -> {
+            Thread thread = new Thread(runnable, name + "-proposer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.batcherThread = new Thread(this::run, name);
+        this.batcherThread.setDaemon(true);
+        this.batcherThread.start();
+    }
+
+    /**
+     * Queues an operation for the next batch, waiting for room while too many operations are queued.
+     *
+     * @param timeoutMillis How long to wait for room in the queue.
+     * @return false if the operation was refused because the queue stayed full.
+     */
+    boolean submit(T operation, long timeoutMillis) throws InterruptedException {
+        return this.pending.offer(operation, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Closes batches and hands them to the proposer until the batcher is stopped.
+     */
+    private void run() {
+        try {
+            while (this.running) {
+                List<T> batch = new ArrayList<>(this.maxBatchSize);
+                batch.add(this.pending.take());
+                long deadline = System.nanoTime() + this.lingerNanos;
+                while (batch.size() < this.maxBatchSize) {
+                    // Take whatever is already queued before waiting for the rest of the linger time
+                    this.pending.drainTo(batch, this.maxBatchSize - batch.size());
+                    if (batch.size() >= this.maxBatchSize) {
+                        break;
+                    }
+                    T next = this.pending.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                // Wait for a proposing thread, so the executor never queues batches of its own
+                this.inFlight.acquire();
+                this.executor.execute(() -> {
+                    try {
+                        this.proposer.accept(batch);
+                    } finally {
+                        this.inFlight.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops batching, dropping operations that were not proposed yet.
+     */
+    void shutdown() {
+        this.running = false;
+        this.batcherThread.interrupt();
+        this.executor.shutdownNow();
+    }
+}
@@ -0,0 +1,147 @@
+package server;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import utils.ILogger;
+import utils.ILogger.Level;
+
+/**
+ * Sends one phase of Paxos (prepare, accept or learn) to a group of peers.
+ * In parallel mode every peer is contacted at once and the phase returns as soon as a majority voted,
+ * so a slow or failed peer no longer adds its latency to every write. Replies arriving after that are
+ * drained in the background. Messages may reach a peer out of order, which the slot-indexed log tolerates,
+ * so several phases can be in flight to the same peer at once. In sequential mode the peers are
+ * contacted one after the other.
+ */
+class QuorumCall {
+
+    /**
+     * A single remote request sent to one peer during a phase.
+     */
+    interface PeerRequest<P, T> {
+        T send(P peer) throws RemoteException;
+    }
+
+    // Marks a peer that failed to answer
+    private static final Object FAILED = new Object();
+
+    private final boolean parallel;
+    private final long timeoutMillis;
+    private final ILogger logger;
+    private final PaxosMetrics metrics;
+
+    // Threads sending the requests of parallel phases
+    private final ExecutorService executor;
+
+    /**
+     * Constructs a quorum call helper.
+     *
+     * @param parallel Whether the peers are contacted concurrently.
+     * @param timeoutMillis How long a parallel phase waits for a majority before giving up.
+     * @param logger The logger of the owning server.
+     * @param metrics The metrics of the owning server, which record the latency and failures of each peer.
+     */
+    QuorumCall(boolean parallel, long timeoutMillis, ILogger logger, PaxosMetrics metrics) {
+        this.parallel = parallel;
+        this.timeoutMillis = timeoutMillis;
+        this.logger = logger;
+        this.metrics = metrics;
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "paxos-quorum-call");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sends a request to every peer and collects the replies.
+     *
+     * @param peers The peers taking part in the phase.
+     * @param request The request to send to each peer.
+     * @param isVote Tells whether a reply counts towards the majority.
+     * @param majorityThreshold The number of votes that has to be exceeded for the phase to finish early.
+     * @param phase The name of the phase, used in log messages.
+     * @return The successful replies received before the phase finished.
+     */
+    <P, T> List<T> call(List<P> peers, PeerRequest<P, T> request, Predicate<T> isVote, int majorityThreshold, String phase) {
+        if (!this.parallel) {
+            return this.callSequentially(peers, request, phase);
+        }
+
+        BlockingQueue<Object> replies = new LinkedBlockingQueue<>();
+        for (P peer : peers) {
+            this.executor.execute(() -> replies.add(this.send(peer, request, phase)));
+        }
+
+        List<T> received = new ArrayList<>(peers.size());
+        int votes = 0;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.timeoutMillis);
+        try {
+            // Stop waiting as soon as a majority voted or every peer answered
+            for (int answered = 0; answered < peers.size() && votes <= majorityThreshold; answered++) {
+                Object reply = replies.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (reply == null) {
+                    this.logger.log(Level.WARN, "> Timed out waiting for a majority during the {} phase", phase);
+                    break;
+                }
+                if (reply != FAILED) {
+                    @SuppressWarnings("unchecked")
+                    T value = (T) reply;
+                    received.add(value);
+                    if (isVote.test(value)) {
+                        votes += 1;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return received;
+    }
+
+    /**
+     * Contacts the peers one after the other, waiting for each reply before moving on.
+     */
+    private <P, T> List<T> callSequentially(List<P> peers, PeerRequest<P, T> request, String phase) {
+        List<T> received = new ArrayList<>(peers.size());
+        for (P peer : peers) {
+            Object reply = this.send(peer, request, phase);
+            if (reply != FAILED) {
+                @SuppressWarnings("unchecked")
+                T value = (T) reply;
+                received.add(value);
+            }
+        }
+        return received;
+    }
+
+    /**
+     * Sends the request to a single peer, returning FAILED if it did not answer.
+     */
+    private <P, T> Object send(P peer, PeerRequest<P, T> request, String phase) {
+        long start = System.nanoTime();
+        try {
+            T reply = request.send(peer);
+            this.metrics.recordPeerRequest(peer, System.nanoTime() - start, false);
+            return reply;
+        } catch (RemoteException | RuntimeException e) {
+            this.metrics.recordPeerRequest(peer, System.nanoTime() - start, true);
+            this.logger.log(Level.DEBUG, "> {} failed during the {} phase", peer, phase);
+            return FAILED;
+        }
+    }
+
+    /**
+     * Stops the sending threads, dropping replies that are still outstanding.
+     */
+    void shutdown() {
+        this.executor.shutdownNow();
+    }
+}
@@ -0,0 +1,80 @@
+package server;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongSupplier;
+
+/**
+ * Shares leadership confirmation rounds between concurrent linearizable reads (ReadIndex).
+ * A read has to be covered by a round that starts after the read arrived, so reads arriving while a
+ * round is in flight are grouped and all served by the single round that starts once it finishes.
+ */
+class ReadIndexBatcher {
+    private final LongSupplier confirmationRound;
+    private final ExecutorService executor;
+    private CompletableFuture<Long> nextRound;
+    private boolean roundInFlight;
+
+    /**
+     * Constructs a batcher.
+     *
+     * @param name The name of the thread running the rounds.
+     * @param confirmationRound Captures the commit point, confirms the leadership with a quorum and
+     *                          returns the commit point, or -1 if the leadership was not confirmed.
+     */
+    ReadIndexBatcher(String name, LongSupplier confirmationRound) {
+        this.confirmationRound = confirmationRound;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Requests a read index for a read that just arrived.
+     *
+     * @return A future completed with the confirmed commit point, or -1 if it could not be confirmed.
+     */
+    synchronized CompletableFuture<Long> request() {
+        if (this.nextRound == null) {
+            this.nextRound = new CompletableFuture<>();
+        }
+        CompletableFuture<Long> round = this.nextRound;
+        if (!this.roundInFlight) {
+            this.startRound();
+        }
+        return round;
+    }
+
+    /**
+     * Starts the round for the reads gathered so far. Must be called while holding the lock.
+     */
+    private void startRound() {
+        CompletableFuture<Long> round = this.nextRound;
+        this.nextRound = null;
+        this.roundInFlight = true;
+        this.executor.execute(() -> {
+            long readIndex = -1;
+            try {
+                readIndex = this.confirmationRound.getAsLong();
+            } finally {
+                round.complete(readIndex);
+                synchronized (this) {
+                    this.roundInFlight = false;
+                    if (this.nextRound != null) {
+                        this.startRound();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops running rounds.
+     */
+    void shutdown() {
+        this.executor.shutdownNow();
+    }
+}
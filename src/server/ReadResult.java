@@ -0,0 +1,48 @@
+package server;
+
+import java.io.Serializable;
+
+/**
+ * The answer to a bounded-staleness read: the value together with the position in the replicated log
+ * it reflects. A client that remembers the highest position it has seen can reject older answers from
+ * other replicas and so keep its reads monotonic.
+ */
+public class ReadResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String value;
+    private final long slot;
+
+    /**
+     * Constructs a read result.
+     *
+     * @param value The value read, or null if the key does not exist.
+     * @param slot Every slot of the log below this one is reflected in the value.
+     */
+    public ReadResult(String value, long slot) {
+        this.value = value;
+        this.slot = slot;
+    }
+
+    /**
+     * Returns the value read, or null if the key does not exist.
+     */
+    public String getValue() {
+        return this.value;
+    }
+
+    /**
+     * Returns the log position the value reflects: every slot below it has been applied.
+     */
+    public long getSlot() {
+        return this.slot;
+    }
+
+    @Override
+    public String toString() {
+        return "ReadResult{" +
+                "value='" + value + '\'' +
+                ", slot=" + slot +
+                '}';
+    }
+}
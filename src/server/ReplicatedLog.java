@@ -0,0 +1,223 @@
+package server;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * The replicated log of Paxos decisions, indexed by slot. Decisions may be learned in any order,
+ * but they are applied to the key-value store strictly in slot order through an apply cursor:
+ * a slot is only applied once every slot before it has been decided. Decisions covered by a snapshot
+ * of the store are dropped, so the log only holds the slots after the latest snapshot. A server that
+ * takes no snapshots keeps a window of the latest applied decisions instead, so the log stays bounded
+ * while peers a little behind can still catch up from it; peers further behind are sent a snapshot of
+ * the store taken when they ask for one.
+ */
+class ReplicatedLog {
+    private final Map<Long, Object> chosenValues = new HashMap<>();
+    private final ObjLongConsumer<Object> applier;
+    private final long retainedSlots;
+
+    // Written under the lock, but readable without it so that stale reads never wait for the log
+    private volatile long nextSlotToApply = 0;
+    private volatile long highestLearnedSlot = -1;
+    private volatile long caughtUpAtNanos = System.nanoTime();
+    private volatile long firstRetainedSlot = 0;
+
+    /**
+     * Constructs an empty log.
+     *
+     * @param applier Applies a decided value and its slot to the state machine, called in slot order.
+     * @param retainedSlots How many applied decisions to keep when no snapshot truncates the log, or 0 to
+     *                      keep them until a snapshot does.
+     */
+    ReplicatedLog(ObjLongConsumer<Object> applier, long retainedSlots) {
+        this.applier = applier;
+        this.retainedSlots = retainedSlots;
+    }
+
+    /**
+     * Records the decision for a slot and applies every decision that is now contiguous with the cursor.
+     *
+     * @return false if the slot had already been decided.
+     */
+    synchronized boolean learn(long slot, Object value) {
+        if (slot < this.nextSlotToApply || this.chosenValues.containsKey(slot)) {
+            return false;
+        }
+        this.chosenValues.put(slot, value);
+        this.highestLearnedSlot = Math.max(this.highestLearnedSlot, slot);
+        this.applyContiguous();
+        return true;
+    }
+
+    /**
+     * Applies every decision contiguous with the cursor and wakes up the threads waiting for them.
+     */
+    private void applyContiguous() {
+        while (this.chosenValues.containsKey(this.nextSlotToApply)) {
+            this.applier.accept(this.chosenValues.get(this.nextSlotToApply), this.nextSlotToApply);
+            this.nextSlotToApply += 1;
+        }
+        // Truncated once twice the window is held, so the cost of dropping decisions is spread over the window
+        if (this.retainedSlots > 0 && this.nextSlotToApply - this.firstRetainedSlot > 2 * this.retainedSlots) {
+            this.truncateThrough(this.nextSlotToApply - 1 - this.retainedSlots);
+        }
+        if (this.nextSlotToApply > this.highestLearnedSlot) {
+            this.caughtUpAtNanos = System.nanoTime();
+        }
+        this.notifyAll();
+    }
+
+    /**
+     * Waits until the given slot has been applied.
+     *
+     * @return true if the slot was applied before the timeout expired.
+     */
+    synchronized boolean awaitApplied(long slot, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (this.nextSlotToApply <= slot) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            this.wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the lowest slot that has not been decided yet as far as this replica knows.
+     */
+    synchronized long firstUnchosenSlot() {
+        long slot = this.nextSlotToApply;
+        while (this.chosenValues.containsKey(slot)) {
+            slot += 1;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the slot the apply cursor points at: every slot below it has been applied.
+     */
+    long nextSlotToApply() {
+        return this.nextSlotToApply;
+    }
+
+    /**
+     * Returns the highest slot this replica knows to be decided, or -1 if none.
+     */
+    long highestLearnedSlot() {
+        return this.highestLearnedSlot;
+    }
+
+    /**
+     * Returns how many slots this replica knows to be decided but has not applied yet.
+     */
+    long lag() {
+        return Math.max(0, this.highestLearnedSlot + 1 - this.nextSlotToApply);
+    }
+
+    /**
+     * Returns the last time, in System.nanoTime, this replica had applied every slot it knew of.
+     */
+    long caughtUpAtNanos() {
+        return this.caughtUpAtNanos;
+    }
+
+    /**
+     * Whether this replica knows the decision for a slot.
+     */
+    synchronized boolean isChosen(long slot) {
+        return this.chosenValues.containsKey(slot);
+    }
+
+    /**
+     * Returns the first slot whose decision is still held; the ones before were dropped after a snapshot.
+     */
+    long firstRetainedSlot() {
+        return this.firstRetainedSlot;
+    }
+
+    /**
+     * Drops the decisions of the slots up to the given one, which a snapshot of the store now covers or
+     * which fell out of the retained window.
+     */
+    synchronized void truncateThrough(long slot) {
+        this.chosenValues.keySet().removeIf(chosen -> chosen <= slot);
+        this.firstRetainedSlot = Math.max(this.firstRetainedSlot, slot + 1);
+    }
+
+    /**
+     * Runs an action while applying is held off, so it sees the store exactly as of the last applied slot.
+     *
+     * @return The last slot applied, or -1 if none.
+     */
+    synchronized long atLastApplied(Runnable action) {
+        action.run();
+        return this.nextSlotToApply - 1;
+    }
+
+    /**
+     * Moves the apply cursor past the slots a snapshot loaded into the store has already applied.
+     */
+    synchronized void restoreSnapshot(long slot) {
+        this.truncateThrough(slot);
+        this.nextSlotToApply = Math.max(this.nextSlotToApply, slot + 1);
+        this.highestLearnedSlot = Math.max(this.highestLearnedSlot, slot);
+    }
+
+    /**
+     * Replaces the applied state with a snapshot received from another replica, then applies the decisions
+     * already known after it. Applying is held off meanwhile, so the store never mixes the two.
+     *
+     * @param slot The last slot the snapshot includes.
+     * @param loader Loads the snapshot into the store.
+     * @return false if this replica had already applied the slot, in which case nothing is loaded.
+     */
+    synchronized boolean installSnapshot(long slot, SnapshotLoader loader) throws IOException {
+        if (slot < this.nextSlotToApply) {
+            return false;
+        }
+        loader.load();
+        this.restoreSnapshot(slot);
+        this.applyContiguous();
+        return true;
+    }
+
+    /**
+     * Returns the decisions known for the slots in [fromSlot, fromSlot + maxSlots), in slot order.
+     */
+    synchronized Map<Long, Object> chosenRange(long fromSlot, int maxSlots) {
+        Map<Long, Object> decisions = new TreeMap<>();
+        for (long slot = fromSlot; slot < fromSlot + maxSlots && slot <= this.highestLearnedSlot; slot++) {
+            Object value = this.chosenValues.get(slot);
+            if (value != null) {
+                decisions.put(slot, value);
+            }
+        }
+        return decisions;
+    }
+
+    /**
+     * Returns the decisions known for the slots at or after the given slot.
+     */
+    synchronized Map<Long, Object> chosenFrom(long fromSlot) {
+        Map<Long, Object> decisions = new TreeMap<>();
+        for (Map.Entry<Long, Object> entry : this.chosenValues.entrySet()) {
+            if (entry.getKey() >= fromSlot) {
+                decisions.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return decisions;
+    }
+
+    /**
+     * Loads a snapshot into the store on behalf of installSnapshot.
+     */
+    interface SnapshotLoader {
+        void load() throws IOException;
+    }
+}
@@ -0,0 +1,78 @@
+package server;
+
+import java.io.Serializable;
+import java.security.SecureRandom;
+
+/**
+ * Identifies a client request so that a retry of it is recognised: the id of the client, chosen at random
+ * when it starts, and the sequence number of the request, which grows by one with each new request. A
+ * retry reuses the id of the request it retries, and the servers answer it with the result the request
+ * had instead of applying it again.
+ *
+ * A client waits for each request before sending the next one with the same client id; clients issuing
+ * requests concurrently use a client id each.
+ */
+public final class RequestId implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final long clientId;
+    private final long sequence;
+
+    /**
+     * Constructs a request id.
+     *
+     * @param clientId The id of the client sending the request.
+     * @param sequence The sequence number of the request among the requests of the client, from 1.
+     */
+    public RequestId(long clientId, long sequence) {
+        this.clientId = clientId;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Returns the id of the first request of a new client, with a random client id.
+     */
+    public static RequestId firstOfNewClient() {
+        return new RequestId(RANDOM.nextLong(), 1);
+    }
+
+    /**
+     * Returns the id of the request that follows this one from the same client.
+     */
+    public RequestId next() {
+        return new RequestId(this.clientId, this.sequence + 1);
+    }
+
+    /**
+     * Returns the id of the client sending the request.
+     */
+    public long getClientId() {
+        return this.clientId;
+    }
+
+    /**
+     * Returns the sequence number of the request among the requests of the client.
+     */
+    public long getSequence() {
+        return this.sequence;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof RequestId && ((RequestId) other).clientId == this.clientId && ((RequestId) other).sequence == this.sequence;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(this.clientId) * 31 + Long.hashCode(this.sequence);
+    }
+
+    @Override
+    public String toString() {
+        return "RequestId{" +
+                "clientId=" + clientId +
+                ", sequence=" + sequence +
+                '}';
+    }
+}
@@ -1,17 +1,36 @@
 package server;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 import utils.ILogger;
+import utils.ILogger.Level;
 import utils.Logger;
 
 
@@ -22,22 +41,82 @@ public class Server extends UnicastRemoteObject implements IProposer, IAcceptor,
 
     // Set up random failure mode variables:
     private static final double RANDOM_FAILURE_PROBABILITY = 0.10;
-    private final Random randomGenerator = new Random();
+
+    // Sequence number reported for a slot that the acceptor already knows to be decided
+    private static final long CHOSEN = Long.MAX_VALUE;
+    // Times the leader retries the accept phase of a slot before stepping down
+    private static final int MAX_ACCEPT_ATTEMPTS = 3;
+    // Fraction of a read lease given up by the leader to tolerate clock drift between servers
+    private static final double LEASE_DRIFT_MARGIN = 0.1;
 
     // Vars:
     private static final AtomicLong sequenceNumberGenerator = new AtomicLong(0);
     private Registry registry;
-    private final ConcurrentHashMap<String, String> kvStore;
+    private PeerListener peerListener;
+    private MetricsEndpoint metricsEndpoint;
+    private final KeyValueStore kvStore;
     private final long serverId;
     private final int numServers;
-    private long maxObservedSequenceNumber;
-    private long lastAcceptedSequenceNumber;
-    private Object lastAcceptedValue;
+    private final ServerConfig config;
+
+    // Acceptor state: the highest promised sequence number, the proposal accepted in each undecided slot
+    // and the granted read lease, behind its own lock
+    private final AcceptorState acceptorState;
+
+    // Write-ahead log the acceptor state and the learned decisions are persisted to, and the snapshots
+    // of kvStore that bound it, or null if not durable
+    private final WriteAheadLog wal;
+    private final Snapshotter snapshotter;
+
+    // Fetches the decisions this server missed from its peers, or null if catching up is disabled
+    private final CatchUp catchUp;
+
+    // A snapshot of kvStore taken for a peer behind the retained decisions when no snapshot file covers
+    // them, kept for the next chunks and the next such peer, and the last slot it includes
+    private final Object servedSnapshotLock = new Object();
+    private byte[] servedSnapshot;
+    private long servedSnapshotSlot = -1;
+
+    // Last time a message from the leader arrived, used to bound the staleness of local reads
+    private volatile long lastLeaderContactNanos;
+
+    // Start of the last round in which a majority of acceptors answered this server's ballot, used to
+    // bound the staleness of local reads while it considers itself the leader
+    private volatile long lastQuorumContactNanos;
+
+    // Learner state: the decided slots, applied to kvStore in order
+    private final ReplicatedLog log;
 
-    // Set logger, accepter and learner
+    // Multi-Paxos leader state: the distinguished proposer, the ballot this server leads with (-1 if none)
+    // and the next slot it will propose in. It is lock-free; leadershipLock only keeps elections on this
+    // server one at a time and is never needed by incoming messages
+    private volatile long leaderId;
+    private final AtomicLong leaderBallot;
+    private final AtomicLong nextSlot;
+    private final Object leadershipLock = new Object();
+    private final Semaphore proposalWindow;
+
+    // Read lease held by this server as leader, renewed in the background while it leads
+    private volatile long leaseExpiresAtNanos;
+    private final ScheduledExecutorService leaseRenewer;
+
+    // Leadership confirmation rounds shared by concurrent ReadIndex reads
+    private final ReadIndexBatcher readIndexBatcher;
+
+    // Proposer-side batching and the client calls waiting for their operation to be applied on this server
+    private final ProposalBatcher<Operation> batcher;
+    private final Map<Operation, CompletableFuture<Object>> pendingResults;
+
+    // Set logger, accepter and learner; the Paxos roles log through their own components
     private final ILogger logger;
+    private final ILogger proposerLogger;
+    private final ILogger acceptorLogger;
+    private final ILogger learnerLogger;
+    private final QuorumCall quorumCall;
+    private final PaxosMetrics metrics;
     private List<IAcceptor> acceptors;
     private List<ILearner> learners;
+    private Map<Long, IProposer> proposers;
 
 
     /**
@@ -47,77 +126,353 @@ public class Server extends UnicastRemoteObject implements IProposer, IAcceptor,
      * @param proposalValue The value being proposed, which might be accepted by the majority of acceptors.
      * @return true if the proposal was accepted by a majority; false otherwise.
      * The algorithm will proceed in three parts:
-     * 1. Propose/Prepare: Collect promises from a majority of acceptors
-     * 2. Accept: If a majority promised, send accept requests with the proposed or a previously accepted value
+     * 1. Propose/Prepare: Collect promises from a majority of acceptors for every undecided slot,
+     *    completing the slots in which a value was already accepted
+     * 2. Accept: If a majority promised, send accept requests with the proposed value for the next free slot
      * 3. Learning: If a majority accepts, notify all learners of the accepted value
      */
     @Override
-    public synchronized boolean runExecutePaxosAlgorithm(long sequenceNumber, Object proposalValue) throws RemoteException {
-        int majorityThreshold = this.numServers / 2;  // Calculate the majority threshold
+    public boolean runExecutePaxosAlgorithm(long sequenceNumber, Object proposalValue) throws RemoteException {
+        return this.runPaxosRound(sequenceNumber, proposalValue) >= 0;
+    }
+
+    /**
+     * Runs a full prepare/accept/learn round for a value in the next free slot.
+     *
+     * @return The slot the value was decided in, or -1 if it was not decided.
+     */
+    private long runPaxosRound(long sequenceNumber, Object proposalValue) {
+        PaxosEvents.Proposal event = new PaxosEvents.Proposal();
+        event.begin();
+
+        // Gather promises from the acceptors
+        long slot = this.runPreparePhase(sequenceNumber, event);
+
+        // Check if a majority of acceptors promised
+        if (slot >= 0) {
+            // Check if a majority accepted the value
+            if (this.runAcceptPhase(sequenceNumber, slot, proposalValue, event)) {
+                this.runLearnPhase(slot, proposalValue);
+                this.metrics.committed.increment();
+                PaxosEvents.endProposal(event, sequenceNumber, slot, proposalValue, "committed");
+                return slot;
+            } else {
+                this.metrics.rejected.increment();
+                PaxosEvents.endProposal(event, sequenceNumber, slot, proposalValue, "rejected");
+                this.proposerLogger.log(Level.WARN, "> The accepted value {} has been rejected", proposalValue);
+                return -1;
+            }
+        } else {
+            this.metrics.aborted.increment();
+            PaxosEvents.endProposal(event, sequenceNumber, -1, proposalValue, "aborted");
+            this.proposerLogger.log(Level.WARN, "> Proposal aborted: couldn't extract a majority of promises");
+            return -1;
+        }
+    }
+
+    /**
+     * Phase 1 of Paxos: asks the acceptors to promise the sequence number for every slot from the first
+     * one this server has not seen decided. Slots in which an acceptor already accepted a value are
+     * completed with the value of the highest sequence number, and holes left between them are filled
+     * with a no-op so the apply cursor can move past them.
+     *
+     * @param event The flight recorder event of the proposal, which gets the number of promises.
+     * @return The first slot that is free for a new value, or -1 if no majority promised.
+     */
+    private long runPreparePhase(long sequenceNumber, PaxosEvents.Proposal event) {
+        int majorityThreshold = this.numServers / 2;
         int promisesCount = 0;  // Count of promises received
+        long fromSlot = this.log.firstUnchosenSlot();
 
-        // To store previously accepted values
-        Map<Long, Object> alreadyAcceptedValues = new HashMap<>(this.numServers);
+        // To store previously accepted values, keeping the highest sequence number of each slot
+        Map<Long, Proposal> alreadyAcceptedValues = new TreeMap<>();
 
-        // Gather promises from all acceptors
-        for (IAcceptor acceptor : this.acceptors) {
-            try {
-                Promise promise = (Promise) acceptor.prepare(sequenceNumber);
-                if (promise.value != null) {
+        // Gather promises from the acceptors
+        long start = System.nanoTime();
+        List<Promise> promises = this.quorumCall.call(this.acceptors,
+                acceptor -> (Promise) acceptor.prepare(sequenceNumber, fromSlot),
+                promise -> promise.vote > 0, majorityThreshold, "propose");
+        this.metrics.prepareLatency.record(System.nanoTime() - start);
+        for (Promise promise : promises) {
+            for (Map.Entry<Long, Proposal> accepted : promise.acceptedSlots.entrySet()) {
+                Proposal known = alreadyAcceptedValues.get(accepted.getKey());
+                if (known == null || known.sequenceNumber < accepted.getValue().sequenceNumber) {
                     // Store accepted value
-                    alreadyAcceptedValues.put(promise.sequenceNumber, promise.value);
+                    alreadyAcceptedValues.put(accepted.getKey(), accepted.getValue());
                 }
-                promisesCount += promise.vote;  // Sum up the promises
-            } catch (RemoteException e) {
-                this.logger.log("> " +acceptor + " failed during the propose phase");
             }
+            promisesCount += promise.vote;  // Sum up the promises
         }
-
-        // Choose the proposal value based on acceptor responses
-        if (!alreadyAcceptedValues.isEmpty()) {
-            this.lastAcceptedValue = alreadyAcceptedValues.get(Collections.max(alreadyAcceptedValues.keySet()));
-        } else {
-            this.lastAcceptedValue = proposalValue;
+        this.metrics.promisesPerRound.record(promisesCount);
+        event.promises = promisesCount;
+        if (promisesCount <= majorityThreshold) {
+            return -1;
         }
+        this.lastQuorumContactNanos = start;
 
-        // Check if a majority of acceptors promised
-        if (promisesCount > majorityThreshold) {
-            // count of acceptances set to zero
-            int acceptsCount = 0;
-            // send accept requests
-            for (IAcceptor acceptor : this.acceptors) {
-                try {
-                    // Count each acceptance
-                    if (acceptor.accept(sequenceNumber, this.lastAcceptedValue) <= sequenceNumber) {
-                        acceptsCount += 1;
-                    }
-                } catch (RemoteException e) {
-                    this.logger.log("> " + acceptor + " failed during the accept phase");
+        // Complete the slots that already hold a value before proposing anything new
+        long lastSlot = alreadyAcceptedValues.isEmpty() ? fromSlot - 1 : Collections.max(alreadyAcceptedValues.keySet());
+        for (long slot = fromSlot; slot <= lastSlot; slot++) {
+            if (this.log.isChosen(slot)) {
+                continue;
+            }
+            Proposal accepted = alreadyAcceptedValues.get(slot);
+            Object value = accepted != null ? accepted.value : new Operation("NOOP", null);
+            this.proposerLogger.log(Level.INFO, "> Completing slot {} with {}", slot, value);
+            if (accepted == null || accepted.sequenceNumber != CHOSEN) {
+                if (!this.runAcceptPhase(sequenceNumber, slot, value, event)) {
+                    return -1;
                 }
             }
+            this.runLearnPhase(slot, value);
+        }
+        return lastSlot + 1;
+    }
 
-            // Check if a majority accepted the value
-            if (acceptsCount > majorityThreshold) {
-                // Notify all learners
-                for (ILearner learner : this.learners) {
-                    try {
-                        // broadcast and share the accepted value
-                        learner.learn(sequenceNumber, this.lastAcceptedValue);
-                    } catch (RemoteException e) {
-                        this.logger.log("> " +learner + " failed during the learn phase");
-                    }
-                }
-                this.logger.log("> The accepted value " + this.lastAcceptedValue.toString() + " has been saved");
-                this.runModificationOperation((Operation) this.lastAcceptedValue);
-                return true;
+    /**
+     * Phase 2 of Paxos: asks the acceptors to accept the value in a slot under the given sequence number.
+     * Any higher sequence number reported back by an acceptor is recorded as observed by this server.
+     *
+     * @param event The flight recorder event of the proposal, which gets the number of acceptances.
+     * @return true if a majority of acceptors accepted the value
+     */
+    private boolean runAcceptPhase(long sequenceNumber, long slot, Object value, PaxosEvents.Proposal event) {
+        int majorityThreshold = this.numServers / 2;
+        // count of acceptances set to zero
+        int acceptsCount = 0;
+        // send accept requests
+        long start = System.nanoTime();
+        List<Long> observedSequenceNumbers = this.quorumCall.call(this.acceptors,
+                acceptor -> acceptor.accept(sequenceNumber, slot, value),
+                observed -> observed <= sequenceNumber, majorityThreshold, "accept");
+        this.metrics.acceptLatency.record(System.nanoTime() - start);
+        for (long observedSequenceNumber : observedSequenceNumbers) {
+            // Count each acceptance
+            if (observedSequenceNumber <= sequenceNumber) {
+                acceptsCount += 1;
             } else {
-                this.logger.log("> The accepted value " + this.lastAcceptedValue.toString() + " has been rejected");
-                return false;
+                this.observeSequenceNumber(observedSequenceNumber);
             }
-        } else {
-            this.logger.log("> Proposal aborted: couldn't extract a majority of promises");
+        }
+        this.metrics.acceptsPerRound.record(acceptsCount);
+        event.accepts = acceptsCount;
+        if (acceptsCount <= majorityThreshold) {
             return false;
         }
+        this.lastQuorumContactNanos = start;
+        return true;
+    }
+
+    /**
+     * Phase 3 of Paxos: notifies the learners of the value chosen for a slot and learns it locally.
+     * In parallel mode the remaining learners are notified in the background once a majority learned.
+     */
+    private void runLearnPhase(long slot, Object value) {
+        // broadcast and share the accepted value
+        long start = System.nanoTime();
+        this.quorumCall.call(this.learners, learner -> {
+            learner.learn(slot, value);
+            return Boolean.TRUE;
+        }, learned -> true, this.numServers / 2, "learn");
+        this.metrics.learnLatency.record(System.nanoTime() - start);
+        this.proposerLogger.log(Level.DEBUG, "> The accepted value {} has been saved in slot {}", value, slot);
+        try {
+            this.learnLocally(slot, value);
+        } catch (IOException e) {
+            this.learnerLogger.log(Level.ERROR, "> Error: could not persist the decision for slot {}: {}", slot, e.getMessage());
+        }
+    }
+
+    /**
+     * Persists the decision for a slot, then records it in the log, which applies it once every earlier
+     * slot has been applied.
+     *
+     * @return false if the slot had already been decided.
+     */
+    private boolean learnLocally(long slot, Object value) throws IOException {
+        if (this.wal != null && !this.log.isChosen(slot)) {
+            this.wal.learn(slot, value);
+        }
+        return this.log.learn(slot, value);
+    }
+
+    /**
+     * Proposes an operation as the distinguished proposer of Multi-Paxos. The prepare phase is only
+     * run when this server does not hold a promised ballot yet; every later operation takes the next
+     * slot and goes straight to the accept phase under that ballot until an acceptor reports a higher one.
+     * Up to the configured window of slots can be in flight at once.
+     *
+     * @return The slot the operation was decided in, or -1 if it was not decided.
+     */
+    private long proposeAsLeader(Object operation) throws InterruptedException {
+        long start = System.nanoTime();
+        this.proposalWindow.acquire();
+        this.metrics.windowWait.record(System.nanoTime() - start);
+        PaxosEvents.Proposal event = new PaxosEvents.Proposal();
+        event.begin();
+        try {
+            // Run phase 1 once for all upcoming slots
+            long ballot = this.ensureLeadership();
+            long slot = ballot < 0 ? -1 : this.allocateSlot(ballot);
+            if (slot < 0) {
+                this.metrics.aborted.increment();
+                PaxosEvents.endProposal(event, ballot, -1, operation, "aborted");
+                return -1;
+            }
+
+            this.proposerLogger.log(Level.DEBUG, "> Skipping the prepare phase for {} in slot {} under the leader ballot {}", operation, slot, ballot);
+            for (int attempt = 1; attempt <= MAX_ACCEPT_ATTEMPTS; attempt++) {
+                if (this.runAcceptPhase(ballot, slot, operation, event)) {
+                    this.runLearnPhase(slot, operation);
+                    this.metrics.committed.increment();
+                    PaxosEvents.endProposal(event, ballot, slot, operation, "committed");
+                    return slot;
+                }
+                if (this.acceptorState.promised() > ballot) {
+                    break;
+                }
+            }
+
+            // Leave the slot to the next prepare phase, which completes or fills it
+            this.metrics.rejected.increment();
+            PaxosEvents.endProposal(event, ballot, slot, operation, "rejected");
+            this.stepDown(ballot);
+            this.proposerLogger.log(Level.WARN, "> The accepted value {} has been rejected", operation);
+            return -1;
+        } finally {
+            this.proposalWindow.release();
+        }
+    }
+
+    /**
+     * Returns the ballot this server leads with, running the prepare phase with a fresh ballot first
+     * if it does not hold one. Only one thread runs the prepare phase at a time.
+     *
+     * @return The leader ballot, or -1 if no majority promised.
+     */
+    private long ensureLeadership() {
+        long current = this.leaderBallot.get();
+        if (current >= 0) {
+            return current;
+        }
+        long start = System.nanoTime();
+        synchronized (this.leadershipLock) {
+            this.metrics.leadershipWait.record(System.nanoTime() - start);
+            current = this.leaderBallot.get();
+            if (current >= 0) {
+                return current;
+            }
+
+            long ballot = generateSequenceNumber();
+            this.observeSequenceNumber(ballot);
+            this.proposerLogger.log(Level.INFO, "> Running the prepare phase to become leader with ballot {}", ballot);
+            // The election is recorded as a proposal without a value of its own
+            PaxosEvents.Proposal event = new PaxosEvents.Proposal();
+            event.begin();
+            long firstFreeSlot = this.runPreparePhase(ballot, event);
+            PaxosEvents.endProposal(event, ballot, firstFreeSlot, null, firstFreeSlot < 0 ? "aborted" : "elected");
+            if (firstFreeSlot < 0) {
+                this.proposerLogger.log(Level.WARN, "> Leader election aborted: couldn't extract a majority of promises");
+                return -1;
+            }
+
+            // Publish the first slot before the ballot, so no thread allocates a slot below it
+            this.nextSlot.set(firstFreeSlot);
+            this.leaderBallot.set(ballot);
+            this.leaderId = this.serverId;
+            if (this.acceptorState.promised() > ballot) {
+                this.stepDown(ballot);
+                this.proposerLogger.log(Level.WARN, "> Leader election aborted: a higher ballot {} was observed", this.acceptorState.promised());
+                return -1;
+            }
+            this.proposerLogger.log(Level.INFO, "{} is now the leader with ballot {} starting at slot {}", this, ballot, firstFreeSlot);
+            this.renewReadLease();
+            return ballot;
+        }
+    }
+
+    /**
+     * Hands out the next slot to propose in, as long as this server still leads with the given ballot.
+     *
+     * @return The slot, or -1 if the leadership was lost.
+     */
+    private long allocateSlot(long ballot) {
+        if (this.leaderBallot.get() != ballot) {
+            return -1;
+        }
+        // A slot taken just as the leadership is lost is rejected by the acceptors and filled by the next leader
+        return this.nextSlot.getAndIncrement();
+    }
+
+    /**
+     * Gives up the leadership held with the given ballot, following the owner of a higher ballot if one was seen.
+     */
+    private void stepDown(long ballot) {
+        if (!this.leaderBallot.compareAndSet(ballot, -1)) {
+            return;
+        }
+        this.leaseExpiresAtNanos = 0;
+        long observed = this.acceptorState.promised();
+        if (observed > ballot) {
+            this.leaderId = ownerOf(observed);
+            this.proposerLogger.log(Level.INFO, "> Stepping down: a higher ballot {} is held by Server{serverId={}}", observed, this.leaderId);
+        } else {
+            this.proposerLogger.log(Level.INFO, "> Stepping down: slots could not be accepted under the ballot {}", ballot);
+        }
+    }
+
+    /**
+     * Raises the highest observed sequence number, which also acts as this server's own promise.
+     */
+    private void observeSequenceNumber(long sequenceNumber) {
+        this.acceptorState.observe(sequenceNumber);
+    }
+
+    /**
+     * Whether this server currently holds a read lease: a majority of acceptors promised not to
+     * accept another leader until it expires, so no write can be decided without this server.
+     */
+    private boolean holdsReadLease() {
+        return this.config.getReadConsistency() == ServerConfig.ReadConsistency.LEASE
+                && System.nanoTime() < this.leaseExpiresAtNanos;
+    }
+
+    /**
+     * Asks the acceptors to grant or extend the read lease of the ballot this server leads with.
+     * The lease is counted from before the request was sent and shortened by a drift margin, so it
+     * always ends on this server before it ends on any acceptor that granted it.
+     */
+    private void renewReadLease() {
+        long ballot = this.leaderBallot.get();
+        if (ballot < 0) {
+            return;
+        }
+
+        long leaseMillis = this.config.getLeaseMillis();
+        long start = System.nanoTime();
+        List<Boolean> grants = this.quorumCall.call(this.acceptors,
+                acceptor -> acceptor.grantLease(ballot, leaseMillis),
+                granted -> granted, this.numServers / 2, "lease");
+        long grantedCount = grants.stream().filter(granted -> granted).count();
+
+        if (grantedCount > this.numServers / 2 && this.leaderBallot.get() == ballot) {
+            this.lastQuorumContactNanos = start;
+            this.leaseExpiresAtNanos = start + TimeUnit.MILLISECONDS.toNanos((long) (leaseMillis * (1 - LEASE_DRIFT_MARGIN)));
+            // Stepping down may have raced with the renewal and cleared the lease before it was set
+            if (this.leaderBallot.get() != ballot) {
+                this.leaseExpiresAtNanos = 0;
+            }
+        } else {
+            this.leaseExpiresAtNanos = 0;
+            this.proposerLogger.log(Level.WARN, "> Read lease for ballot {} could not be renewed", ballot);
+        }
+    }
+
+    /**
+     * Extracts the id of the server that generated a sequence number.
+     */
+    private static long ownerOf(long sequenceNumber) {
+        return sequenceNumber & 0xFFFF;
     }
 
 
@@ -126,23 +481,151 @@ public class Server extends UnicastRemoteObject implements IProposer, IAcceptor,
      */
     private long generateSequenceNumber() {
         long currTime = System.currentTimeMillis();
-        long sequenceNumber = (currTime << 16) | (this.serverId & 0xFFFF);
-        return sequenceNumber + sequenceNumberGenerator.getAndIncrement();
+        // The low 16 bits always carry the server id so the owner of a ballot can be recovered
+        return ((currTime + sequenceNumberGenerator.getAndIncrement()) << 16) | (this.serverId & 0xFFFF);
     }
 
     /**
-     * Constructs a new server with the specified parameters
+     * Constructs a new server with the specified parameters and the default configuration
      */
     public Server(long serverId, int port, int numServers) throws RemoteException {
-        this.kvStore = new ConcurrentHashMap<>();
+        this(serverId, port, numServers, new ServerConfig());
+    }
+
+    /**
+     * Constructs a new server with the specified parameters
+     */
+    public Server(long serverId, int port, int numServers, ServerConfig config) throws RemoteException {
+        this.config = config;
+        this.kvStore = new KeyValueStore(config.getMaxClientSessions());
         this.serverId = serverId;
         this.numServers = numServers;
-        this.maxObservedSequenceNumber = -Long.MAX_VALUE;
-        this.lastAcceptedSequenceNumber = -Long.MAX_VALUE;
+        // Without snapshots nothing else would ever drop the applied decisions
+        boolean snapshots = config.isDurable() && config.getSnapshotEverySlots() > 0;
+        this.log = new ReplicatedLog(this::applyDecision, snapshots ? 0 : config.getRetainedSlots());
+        this.pendingResults = new ConcurrentHashMap<>();
+        this.leaderId = -1;
+        this.leaderBallot = new AtomicLong(-1);
+        this.nextSlot = new AtomicLong(0);
+        this.proposalWindow = new Semaphore(config.getPipelineWindow());
         String loggerName = "Server" + serverId + "Logger";
         String logFileName = "Server" + serverId + "Log.log";
         this.logger = new Logger(loggerName, logFileName);
+        this.proposerLogger = this.logger.component("proposer");
+        this.acceptorLogger = this.logger.component("acceptor");
+        this.learnerLogger = this.logger.component("learner");
+        this.metrics = new PaxosMetrics();
+        this.quorumCall = new QuorumCall(config.isParallelFanOut(), config.getPhaseTimeoutMillis(), this.logger.component("quorum"), this.metrics);
+        try {
+            Path walDirectory = Paths.get(config.getWalDirectory());
+            this.wal = config.isDurable() ? new WriteAheadLog(walDirectory, "Server" + serverId, config.isWalGroupCommit()) : null;
+            this.snapshotter = config.isDurable()
+                    ? new Snapshotter(walDirectory, "Server" + serverId, this.kvStore, this.wal, this.log, config.getSnapshotEverySlots(), this.logger.component("snapshot"))
+                    : null;
+            this.acceptorState = new AcceptorState(this.wal);
+            this.recover();
+        } catch (IOException e) {
+            throw new RemoteException("> Error: could not recover from the write-ahead log", e);
+        }
+        this.lastLeaderContactNanos = System.nanoTime();
+        this.lastQuorumContactNanos = this.lastLeaderContactNanos;
+        this.leaseRenewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "paxos-lease-" + serverId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (config.isMultiPaxos() && config.getReadConsistency() == ServerConfig.ReadConsistency.LEASE) {
+            long renewEveryMillis = Math.max(1, config.getLeaseMillis() / 3);
+            this.leaseRenewer.scheduleWithFixedDelay(this::renewReadLease, renewEveryMillis, renewEveryMillis, TimeUnit.MILLISECONDS);
+        }
+        this.readIndexBatcher = new ReadIndexBatcher("paxos-read-index-" + serverId, this::confirmReadIndex);
+        this.batcher = config.getBatchSize() > 1
+                ? new ProposalBatcher<>("paxos-batcher-" + serverId, config.getBatchSize(), config.getBatchLingerMicros(),
+                        config.getPipelineWindow(), this::proposeBatch)
+                : null;
+        this.catchUp = config.getCatchUpIntervalMillis() > 0
+                ? new CatchUp("" + serverId, this.catchUpReplica(), this.log, config.getCatchUpIntervalMillis(),
+                        config.getCatchUpBatchSlots(), config.getSnapshotChunkBytes(), this.logger.component("catchup"))
+                : null;
         this.logger.log(this + " is online and ready at port " + port);
+        this.logger.log("> Running with " + config);
+    }
+
+    /**
+     * Rebuilds the acceptor state and the store from the latest snapshot and the write-ahead log left by a
+     * previous run: the snapshot is loaded, promises and accepted values of later slots are restored as they
+     * were, and the decisions learned after the snapshot are applied again in slot order.
+     */
+    private void recover() throws IOException {
+        if (this.wal == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        long snapshotSlot = this.snapshotter.recover();
+        int records = this.wal.replay(new WriteAheadLog.Replayer() {
+            @Override
+            public void promise(long sequenceNumber) {
+                Server.this.acceptorState.restorePromise(sequenceNumber);
+            }
+
+            @Override
+            public void accept(long sequenceNumber, long slot, Object value) {
+                if (slot > snapshotSlot) {
+                    Server.this.acceptorState.restoreAccepted(sequenceNumber, slot, value);
+                } else {
+                    Server.this.acceptorState.restorePromise(sequenceNumber);
+                }
+            }
+
+            @Override
+            public void learn(long slot, Object value) {
+                Server.this.log.learn(slot, value);
+                Server.this.acceptorState.forget(slot);
+            }
+        });
+        if (records > 0) {
+            this.logger.log("> Recovered " + records + " records from the write-ahead log in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms, applied up to slot " + (this.log.nextSlotToApply() - 1));
+        }
+        this.snapshotter.start();
+    }
+
+    /**
+     * Returns the view of this server that catching up works on: the peers are its learners, fetched
+     * decisions are learned like any other, and fetched snapshots replace the store.
+     */
+    private CatchUp.Replica catchUpReplica() {
+        return new CatchUp.Replica() {
+            @Override
+            public List<ILearner> peers() {
+                return Server.this.learners;
+            }
+
+            @Override
+            public void learn(long slot, Object value) throws IOException {
+                if (Server.this.learnLocally(slot, value)) {
+                    Server.this.acceptorState.forget(slot);
+                }
+            }
+
+            @Override
+            public Path snapshotDownloadPath(long slot) throws IOException {
+                return Server.this.snapshotter != null
+                        ? Server.this.snapshotter.downloadPath(slot)
+                        : Files.createTempFile("Server" + Server.this.serverId + "-" + slot, ".snapshot");
+            }
+
+            @Override
+            public boolean installSnapshot(long slot, Path file) throws IOException {
+                // Never while a snapshot is being taken for a peer, which would mix the two stores
+                synchronized (Server.this.servedSnapshotLock) {
+                    if (Server.this.snapshotter != null) {
+                        return Server.this.snapshotter.install(slot, file);
+                    }
+                    return Server.this.log.installSnapshot(slot, () -> Server.this.kvStore.loadSnapshot(file));
+                }
+            }
+        };
     }
 
     /**
@@ -163,178 +646,1203 @@ public class Server extends UnicastRemoteObject implements IProposer, IAcceptor,
         this.learners = learners;
     }
 
+    /**
+     * Sets the proposers of the other servers, keyed by server id
+     *
+     * @param proposers The servers that writes can be forwarded to when they hold the leadership.
+     */
+    public void setServerProposers(Map<Long, IProposer> proposers) {
+        this.proposers = proposers;
+    }
+
     /**
      * Attempts to put a key-value pair in the distributed key-value store.
      * This method proposes a new entry via the Paxos protocol to ensure consistency
      */
     @Override
-    public synchronized String put(String key, String value) throws RemoteException {
-        if (this.kvStore.containsKey(key)) {
-            this.logger.log("> Error: the entry for \"" + key + "\" already exists");
-            return "> Error: the entry for \"" + key + "\" already exists";
+    public String put(String key, String value) throws RemoteException {
+        return this.put(key, value, null);
+    }
+
+    /**
+     * Puts a key-value pair as put does, answering a retry of the request with the result of the first
+     * attempt that was applied.
+     */
+    @Override
+    public String put(String key, String value, RequestId requestId) throws RemoteException {
+        this.metrics.puts.increment();
+        return (String) this.submit(new Operation("PUT", key, value, requestId));
+    }
+
+    /**
+     * Retrieves the value associated with a given key from the distributed key-value store.
+     * If the key does not exist, it logs an error and returns null.
+     * A leader holding a valid read lease answers from its own store without taking any lock or
+     * contacting other servers. In ReadIndex mode any replica answers from its own store once it has
+     * applied the commit point confirmed by the leader. Otherwise the read is sent through the log so
+     * it is linearizable.
+     */
+    @Override
+    public String get(String key) throws RemoteException {
+        this.metrics.gets.increment();
+        if (this.config.getReadConsistency() == ServerConfig.ReadConsistency.LOCAL || this.canReadLocally()) {
+            return this.readLocally(key);
+        }
+        return (String) this.submit(new Operation("GET", key));
+    }
+
+    /**
+     * Retrieves a value accepting bounded staleness. The check only reads volatile fields, so a replica
+     * within the bounds answers without taking any lock or contacting other servers.
+     */
+    @Override
+    public ReadResult get(String key, long maxSlotLag, long maxStalenessMillis) throws RemoteException {
+        // Read the position before the value, so the value reflects at least that position
+        long slot = this.log.nextSlotToApply();
+        if (this.log.lag() <= maxSlotLag && this.stalenessMillis() <= maxStalenessMillis) {
+            this.metrics.gets.increment();
+            return new ReadResult(this.readLocally(key), slot);
+        }
+
+        // A linearizable read reflects at least every slot this replica had applied
+        this.logger.log(Level.DEBUG, "> Too stale to answer \"{}\" locally, reading linearizably", key);
+        return new ReadResult(this.get(key), slot);
+    }
+
+    /**
+     * Returns for how long this replica may have been missing decisions: zero on a leader holding the
+     * read lease, otherwise the time since the leader was last heard from, or on the leader since a
+     * majority last answered its ballot, if every known slot is applied, or else the time since that was
+     * last the case. A leader that was deposed without noticing keeps reporting no lag, so only a quorum
+     * contact, not its own belief that it leads, keeps its staleness low.
+     */
+    private long stalenessMillis() {
+        boolean leads = this.leaderId == this.serverId;
+        if (leads && this.holdsReadLease()) {
+            return 0;
+        }
+        long contact = leads ? this.lastQuorumContactNanos : this.lastLeaderContactNanos;
+        long since = this.log.lag() == 0 ? contact : this.log.caughtUpAtNanos();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - since);
+    }
+
+    /**
+     * Whether a linearizable read can be answered from the local store right now, either because this
+     * server holds the read lease or because it caught up with a commit point confirmed by the leader.
+     */
+    private boolean canReadLocally() throws RemoteException {
+        if (this.holdsReadLease()) {
+            return true;
+        }
+        return this.config.getReadConsistency() == ServerConfig.ReadConsistency.READ_INDEX && this.awaitReadIndex();
+    }
+
+    /**
+     * Obtains a read index, from this server if it leads or from the leader otherwise, and waits until
+     * the local apply cursor reaches it.
+     *
+     * @return false if no read index could be confirmed or this replica did not catch up in time.
+     */
+    private boolean awaitReadIndex() throws RemoteException {
+        long leader = this.leaderId;
+        IProposer proposer = this.proposers == null ? null : this.proposers.get(leader);
+        long readIndex;
+        if (leader == this.serverId || proposer == null) {
+            readIndex = this.readIndex();
         } else {
-            if (this.propose(new Operation("PUT", key, value))) {
-                return "> SUCCESS";
-            } else {
-                return "> Error: execution of Paxos failed - please try again.";
+            try {
+                readIndex = proposer.readIndex();
+            } catch (RemoteException e) {
+                this.logger.log(Level.WARN, "> Error: could not get a read index from Server{serverId={}}: {}", leader, e.getMessage());
+                return false;
             }
         }
+        if (readIndex < 0) {
+            return false;
+        }
+
+        try {
+            // The read index counts the slots that have to be applied before the read
+            return this.log.awaitApplied(readIndex - 1, this.config.getPhaseTimeoutMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for slot " + (readIndex - 1), e);
+        }
     }
 
     /**
-     * Retrieves the value associated with a given key from the distributed key-value store.
-     * If the key does not exist, it logs an error and returns null.
+     * Returns the commit point of this server once its leadership has been confirmed by a majority of
+     * acceptors. Reads arriving together share one confirmation round.
      */
     @Override
-    public synchronized String get(String key) throws RemoteException {
-        if (this.kvStore.containsKey(key)) {
-            this.logger.log("> Returned the value \"" + key + "\" associated with \"" + key + "\"");
+    public long readIndex() throws RemoteException {
+        try {
+            return this.readIndexBatcher.request().get(this.config.getPhaseTimeoutMillis() * 2, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while confirming the leadership", e);
+        }
+    }
+
+    /**
+     * Captures the commit point, the number of slots applied so far, and confirms with one heartbeat
+     * round that no acceptor promised a higher ballot, so no other leader can have decided anything newer.
+     *
+     * @return The commit point, or -1 if this server does not lead or the leadership was not confirmed.
+     */
+    private long confirmReadIndex() {
+        long ballot = this.leaderBallot.get();
+        if (ballot < 0) {
+            return -1;
+        }
+
+        long commitPoint = this.log.nextSlotToApply();
+        long start = System.nanoTime();
+        List<Boolean> confirmations = this.quorumCall.call(this.acceptors,
+                acceptor -> acceptor.heartbeat(ballot),
+                confirmed -> confirmed, this.numServers / 2, "heartbeat");
+        long confirmedCount = confirmations.stream().filter(confirmed -> confirmed).count();
+        if (confirmedCount <= this.numServers / 2) {
+            this.proposerLogger.log(Level.WARN, "> Read index {} could not be confirmed for ballot {}", commitPoint, ballot);
+            return -1;
+        }
+        this.lastQuorumContactNanos = start;
+        return commitPoint;
+    }
+
+    /**
+     * Reads a key from the local store.
+     */
+    private String readLocally(String key) {
+        String value = this.kvStore.get(key);
+        if (value != null) {
+            this.logger.log(Level.DEBUG, "> Returned the value \"{}\" associated with \"{}\"", value, key);
         } else {
-            this.logger.log("> Error: no value is associated with \"" + key + "\"");
+            this.logger.log(Level.DEBUG, "> Error: no value is associated with \"{}\"", key);
+        }
+        return value;
+    }
+
+    /**
+     * Reads a key and its version from the local store.
+     */
+    private VersionedResult readVersionedLocally(String key) {
+        KeyValueStore.Entry entry = this.kvStore.getEntry(key);
+        return entry == null ? new VersionedResult(true, null, 0) : new VersionedResult(true, entry.value, entry.version);
+    }
+
+    /**
+     * Returns a snapshot of the metrics this server recorded since it started.
+     */
+    @Override
+    public PaxosStats stats() throws RemoteException {
+        return this.metrics.snapshot(this.serverId, this.kvStore.size());
+    }
+
+    /**
+     * Deletes a key-value pair from the distributed key-value store.
+     */
+    @Override
+    public String delete(String key) throws RemoteException {
+        return this.delete(key, (RequestId) null);
+    }
+
+    /**
+     * Deletes a key-value pair as delete does, answering a retry of the request with the result of the
+     * first attempt that was applied.
+     */
+    @Override
+    public String delete(String key, RequestId requestId) throws RemoteException {
+        this.metrics.deletes.increment();
+        return (String) this.submit(new Operation("DELETE", key, null, requestId));
+    }
+
+    /**
+     * Puts many key-value pairs, proposed together as one Paxos value. Each PUT is checked when it is
+     * applied, so a key that already exists fails then without failing the others.
+     */
+    @Override
+    public Map<String, String> multiPut(Map<String, String> entries) throws RemoteException {
+        return this.multiPut(entries, null);
+    }
+
+    /**
+     * Puts many key-value pairs as multiPut does, answering a retry of the request with the results of the
+     * first attempt that was applied.
+     */
+    @Override
+    public Map<String, String> multiPut(Map<String, String> entries, RequestId requestId) throws RemoteException {
+        this.metrics.puts.add(entries.size());
+        List<Operation> operations = new ArrayList<>(entries.size());
+        entries.forEach((key, value) -> operations.add(new Operation("PUT", key, value)));
+        return resultsByKey(operations, this.submitBatch(new Batch(operations, requestId)));
+    }
+
+    /**
+     * Deletes many keys, proposed together as one Paxos value. Each DELETE is checked when it is applied.
+     */
+    @Override
+    public Map<String, String> multiDelete(List<String> keys) throws RemoteException {
+        return this.multiDelete(keys, null);
+    }
+
+    /**
+     * Deletes many keys as multiDelete does, answering a retry of the request with the results of the
+     * first attempt that was applied.
+     */
+    @Override
+    public Map<String, String> multiDelete(List<String> keys, RequestId requestId) throws RemoteException {
+        this.metrics.deletes.add(keys.size());
+        List<Operation> operations = operationsOf("DELETE", keys);
+        return resultsByKey(operations, this.submitBatch(new Batch(operations, requestId)));
+    }
+
+    /**
+     * Retrieves many values. They are read from the local store when get would read a single key there,
+     * and otherwise sent through the log together as one Paxos value.
+     */
+    @Override
+    public Map<String, String> multiGet(List<String> keys) throws RemoteException {
+        this.metrics.gets.add(keys.size());
+        List<Operation> operations = operationsOf("GET", keys);
+        if (operations.isEmpty() || this.config.getReadConsistency() == ServerConfig.ReadConsistency.LOCAL || this.canReadLocally()) {
+            return resultsByKey(operations, this.readAllLocally(operations));
+        }
+        return resultsByKey(operations, this.submitBatch(new Batch(operations)));
+    }
+
+    /**
+     * Runs a transaction, proposed as one Paxos value. The checks are evaluated when it is applied, after
+     * every earlier decision, so no other write can come between the checks and the writes.
+     */
+    @Override
+    public String transaction(Map<String, String> checks, Map<String, String> writes) throws RemoteException {
+        return this.transaction(checks, writes, null);
+    }
+
+    /**
+     * Runs a transaction as transaction does, answering a retry of the request with the result of the
+     * first attempt that was applied.
+     */
+    @Override
+    public String transaction(Map<String, String> checks, Map<String, String> writes, RequestId requestId) throws RemoteException {
+        this.metrics.transactions.increment();
+        return (String) this.submit(new Transaction(new LinkedHashMap<>(checks), new LinkedHashMap<>(writes), requestId));
+    }
+
+    /**
+     * Retrieves a value and its version. They are read from the local store when get would read there,
+     * and otherwise read through the log.
+     */
+    @Override
+    public VersionedResult getVersioned(String key) throws RemoteException {
+        this.metrics.gets.increment();
+        if (this.config.getReadConsistency() == ServerConfig.ReadConsistency.LOCAL || this.canReadLocally()) {
+            return this.readVersionedLocally(key);
+        }
+        return (VersionedResult) this.submit(new Operation("VGET", key));
+    }
+
+    /**
+     * Stores a value if the key does not exist when the write is applied.
+     */
+    @Override
+    public VersionedResult putIfAbsent(String key, String value) throws RemoteException {
+        return this.putIfAbsent(key, value, null);
+    }
+
+    /**
+     * Stores a value as putIfAbsent does, answering a retry of the request with the result of the first
+     * attempt that was applied.
+     */
+    @Override
+    public VersionedResult putIfAbsent(String key, String value, RequestId requestId) throws RemoteException {
+        this.metrics.puts.increment();
+        return versioned(this.submit(new ConditionalWrite(key, value, 0, null, requestId)));
+    }
+
+    /**
+     * Replaces a value if the key has the expected version when the write is applied.
+     */
+    @Override
+    public VersionedResult replace(String key, String value, long expectedVersion) throws RemoteException {
+        return this.replace(key, value, expectedVersion, null);
+    }
+
+    /**
+     * Replaces a value as replace does, answering a retry of the request with the result of the first
+     * attempt that was applied.
+     */
+    @Override
+    public VersionedResult replace(String key, String value, long expectedVersion, RequestId requestId) throws RemoteException {
+        this.metrics.puts.increment();
+        return versioned(this.submit(new ConditionalWrite(key, value, expectedVersion, null, requestId)));
+    }
+
+    /**
+     * Removes a key if it has the expected version when the removal is applied.
+     */
+    @Override
+    public VersionedResult delete(String key, long expectedVersion) throws RemoteException {
+        return this.delete(key, expectedVersion, null);
+    }
+
+    /**
+     * Removes a key as delete with an expected version does, answering a retry of the request with the
+     * result of the first attempt that was applied.
+     */
+    @Override
+    public VersionedResult delete(String key, long expectedVersion, RequestId requestId) throws RemoteException {
+        this.metrics.deletes.increment();
+        return versioned(this.submit(new ConditionalWrite(key, null, expectedVersion, null, requestId)));
+    }
+
+    /**
+     * Sets or removes a key if it has the expected value when the write is applied.
+     */
+    @Override
+    public VersionedResult compareAndSet(String key, String expectedValue, String newValue) throws RemoteException {
+        return this.compareAndSet(key, expectedValue, newValue, null);
+    }
+
+    /**
+     * Sets or removes a key as compareAndSet does, answering a retry of the request with the result of
+     * the first attempt that was applied.
+     */
+    @Override
+    public VersionedResult compareAndSet(String key, String expectedValue, String newValue, RequestId requestId) throws RemoteException {
+        (newValue == null ? this.metrics.deletes : this.metrics.puts).increment();
+        return versioned(this.submit(new ConditionalWrite(key, newValue, ConditionalWrite.ANY_VERSION, expectedValue, requestId)));
+    }
+
+    /**
+     * Returns the result of a conditional write, or throws the error a request sent after a later request
+     * of its client got instead.
+     */
+    private static VersionedResult versioned(Object result) throws RemoteException {
+        if (result instanceof VersionedResult) {
+            return (VersionedResult) result;
+        }
+        throw new RemoteException(String.valueOf(result));
+    }
+
+    /**
+     * Returns one operation of a type per distinct key, in the order of the keys.
+     */
+    private static List<Operation> operationsOf(String type, List<String> keys) {
+        List<Operation> operations = new ArrayList<>(keys.size());
+        for (String key : new LinkedHashSet<>(keys)) {
+            operations.add(new Operation(type, key));
+        }
+        return operations;
+    }
+
+    /**
+     * Pairs the key of every operation with its result.
+     */
+    private static Map<String, String> resultsByKey(List<Operation> operations, List<String> results) {
+        Map<String, String> byKey = new LinkedHashMap<>();
+        for (int i = 0; i < operations.size(); i++) {
+            byKey.put(operations.get(i).key, results.get(i));
+        }
+        return byKey;
+    }
+
+    /**
+     * Reads the keys of a batch of GETs from the local store.
+     */
+    private List<String> readAllLocally(List<Operation> operations) {
+        List<String> values = new ArrayList<>(operations.size());
+        for (Operation operation : operations) {
+            values.add(this.readLocally(operation.key));
+        }
+        return values;
+    }
+
+    /**
+     * Routes an operation to the current leader in Multi-Paxos mode, or executes it locally when this
+     * server is the leader, no leader is known yet, or the leader cannot be reached.
+     * No lock is held while forwarding so this server keeps serving Paxos traffic meanwhile.
+     *
+     * @return The result of the operation: a string, or a VersionedResult for a versioned read or a conditional write.
+     */
+    private Object submit(Operation operation) throws RemoteException {
+        Object retried = this.resultOfRetry(operation);
+        if (retried != null) {
+            return retried;
+        }
+        if (this.config.isMultiPaxos()) {
+            long leader = this.leaderId;
+            IProposer proposer = this.proposers == null ? null : this.proposers.get(leader);
+            if (leader != this.serverId && proposer != null) {
+                try {
+                    this.logger.log(Level.DEBUG, "> Forwarding {} to the leader Server{serverId={}}", operation, leader);
+                    return proposer.forward(operation);
+                } catch (RemoteException e) {
+                    // A read that failed at the leader says nothing about the leader being down
+                    if ("GET".equals(operation.type) || "VGET".equals(operation.type)) {
+                        throw e;
+                    }
+                    this.logger.log(Level.WARN, "> Error: the leader Server{serverId={}} is unreachable, taking over: {}", leader, e.getMessage());
+                }
+            }
+        }
+        return this.executeOperation(operation);
+    }
+
+    /**
+     * Routes a batch of operations of one type to the current leader in Multi-Paxos mode, or executes it
+     * here, the same way submit routes a single operation.
+     *
+     * @return The result of each operation, in order.
+     */
+    private List<String> submitBatch(Batch batch) throws RemoteException {
+        List<Operation> operations = batch.operations;
+        if (operations.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Object retried = this.resultOfRetry(batch.requestId);
+        if (retried != null) {
+            return resultsOfBatch(retried, batch);
+        }
+        if (this.config.isMultiPaxos()) {
+            long leader = this.leaderId;
+            IProposer proposer = this.proposers == null ? null : this.proposers.get(leader);
+            if (leader != this.serverId && proposer != null) {
+                try {
+                    this.logger.log(Level.DEBUG, "> Forwarding {} operations to the leader Server{serverId={}}", operations.size(), leader);
+                    return proposer.forwardBatch(batch);
+                } catch (RemoteException e) {
+                    if ("GET".equals(operations.get(0).type)) {
+                        throw e;
+                    }
+                    this.logger.log(Level.WARN, "> Error: the leader Server{serverId={}} is unreachable, taking over: {}", leader, e.getMessage());
+                }
+            }
+        }
+        return this.executeBatch(batch);
+    }
+
+    /**
+     * Executes a batch of operations forwarded by another server, leading it through Paxos from this server.
+     */
+    @Override
+    public List<String> forwardBatch(Object batch) throws RemoteException {
+        return this.executeBatch((Batch) batch);
+    }
+
+    /**
+     * Proposes a batch of operations of one type as a single Paxos value and returns their results once
+     * it is applied. GETs are answered locally instead when a single GET would be.
+     */
+    private List<String> executeBatch(Batch batch) throws RemoteException {
+        List<Operation> operations = batch.operations;
+        Object retried = this.resultOfRetry(batch.requestId);
+        if (retried != null) {
+            return resultsOfBatch(retried, batch);
+        }
+        boolean reads = "GET".equals(operations.get(0).type);
+        if (reads && this.canReadLocally()) {
+            return this.readAllLocally(operations);
+        }
+        try {
+            return this.proposeAndApplyAll(batch);
+        } catch (RemoteException e) {
+            if (reads) {
+                throw e;
+            }
+            return Collections.nCopies(operations.size(), "> Error: execution of Paxos failed - please try again.");
+        }
+    }
+
+    /**
+     * Executes an operation forwarded by another server, leading it through Paxos from this server.
+     */
+    @Override
+    public Object forward(Object operation) throws RemoteException {
+        return this.executeOperation((Operation) operation);
+    }
+
+    /**
+     * Validates a PUT or DELETE against the local store and proposes it, returning the result for the client.
+     * The result is the one produced when the operation is applied, so a following read sees the write.
+     * A GET is answered locally under a read lease or a confirmed read index, or otherwise read through the log.
+     * A transaction is proposed as it is, since only applying it can tell whether its checks hold, and so
+     * is a conditional write, which fails with a RemoteException if it is not decided.
+     */
+    private Object executeOperation(Operation operation) throws RemoteException {
+        Object retried = this.resultOfRetry(operation);
+        if (retried != null) {
+            return retried;
+        }
+        if ("TXN".equals(operation.type)) {
+            try {
+                return this.proposeAndApply(operation);
+            } catch (RemoteException e) {
+                return "> Error: execution of Paxos failed - please try again.";
+            }
+        } else if ("CAS".equals(operation.type)) {
+            return this.proposeAndApply(operation);
+        } else if ("VGET".equals(operation.type)) {
+            if (this.canReadLocally()) {
+                return this.readVersionedLocally(operation.key);
+            }
+            return this.proposeAndApply(operation);
+        } else if ("GET".equals(operation.type)) {
+            if (this.canReadLocally()) {
+                return this.readLocally(operation.key);
+            }
+            return this.proposeAndApply(operation);
+        } else if ("PUT".equals(operation.type)) {
+            if (this.kvStore.containsKey(operation.key)) {
+                this.logger.log(Level.DEBUG, "> Error: the entry for \"{}\" already exists", operation.key);
+                return "> Error: the entry for \"" + operation.key + "\" already exists";
+            } else {
+                try {
+                    return this.proposeAndApply(operation);
+                } catch (RemoteException e) {
+                    return "> Error: execution of Paxos failed - please try again.";
+                }
+            }
+        } else {
+            if (this.kvStore.containsKey(operation.key)) {
+                try {
+                    Object result = this.proposeAndApply(operation);
+                    this.logger.log(Level.DEBUG, "> Value proposed promised to be accepted by the majority of servers");
+                    return result;
+                } catch (RemoteException e) {
+                    return "> Error: Execution of Paxos failed - please try again.";
+                }
+            } else {
+                this.logger.log(Level.DEBUG, "> Error: \"{}\" does not exist", operation.key);
+                return "> Error: " + "\"" + operation.key + "\" does not exist";
+            }
+        }
+    }
+
+    /**
+     * Returns the result of the request an operation retries if this server already applied that request,
+     * so the retry is answered without running Paxos again, or null otherwise.
+     */
+    private Object resultOfRetry(Operation operation) {
+        return this.resultOfRetry(operation.requestId);
+    }
+
+    /**
+     * Returns the result of a request if this server already applied it, or null otherwise or if the
+     * request id is null.
+     */
+    private Object resultOfRetry(RequestId requestId) {
+        if (requestId == null) {
+            return null;
+        }
+        KeyValueStore.Session session = this.kvStore.session(requestId.getClientId());
+        if (session == null || session.sequence != requestId.getSequence()) {
+            return null;
+        }
+        this.metrics.retriesDeduplicated.increment();
+        this.logger.log(Level.DEBUG, "> Answered the retry of {} with the result it already had", requestId);
+        return session.result;
+    }
+
+    /**
+     * Returns the results of the operations of a batch from the recorded result of its request.
+     *
+     * @throws RemoteException If the request id was used by a request that was not this batch.
+     */
+    private static List<String> resultsOfBatch(Object result, Batch batch) throws RemoteException {
+        if (!(result instanceof List) || ((List<?>) result).size() != batch.operations.size()) {
+            throw new RemoteException("> Error: " + batch.requestId + " was used by a different request");
+        }
+        List<String> results = new ArrayList<>(batch.operations.size());
+        for (Object operationResult : (List<?>) result) {
+            results.add((String) operationResult);
+        }
+        return results;
+    }
+
+    /**
+     * Applies a decided value, which is either a single operation or a batch of operations applied in order,
+     * and hands each operation's result to the client call waiting for it on this server.
+     */
+    private void applyDecision(Object value, long slot) {
+        PaxosEvents.Apply event = new PaxosEvents.Apply();
+        event.begin();
+        List<Operation> operations = value instanceof Batch ? ((Batch) value).operations : Collections.singletonList((Operation) value);
+        // A batch sent as one client request is applied, or found to be a retry, as a whole
+        List<?> batchResults = value instanceof Batch && ((Batch) value).requestId != null ? this.runBatchRequest((Batch) value) : null;
+        for (int i = 0; i < operations.size(); i++) {
+            Operation operation = operations.get(i);
+            Object result = batchResults != null ? batchResults.get(i)
+                    : operation != null && operation.requestId != null ? this.runRequest(operation) : this.runModificationOperation(operation);
+            CompletableFuture<Object> pending = this.pendingResults.remove(operation);
+            if (pending != null) {
+                pending.complete(result);
+            }
+        }
+        PaxosEvents.endApply(event, slot, operations.size());
+        if (this.snapshotter != null) {
+            this.snapshotter.afterApply(slot);
+        }
+    }
+
+
+    /**
+     * Applies an operation sent with a request id unless that request was already applied, in which case
+     * it returns the result the request had, so a retry decided after the first attempt changes nothing.
+     * An older request of a client whose later request was applied is not applied either. Every replica
+     * applies the same operations in the same order, so they all agree on which ones were retries.
+     *
+     * @return The result of the operation as returned to the client
+     */
+    private Object runRequest(Operation operation) {
+        RequestId requestId = operation.requestId;
+        KeyValueStore.Session session = this.kvStore.session(requestId.getClientId());
+        if (session != null && requestId.getSequence() == session.sequence) {
+            if (this.pendingResults.containsKey(operation)) {
+                this.metrics.retriesDeduplicated.increment();
+            }
+            this.learnerLogger.log(Level.DEBUG, "> Skipped {}, which was already applied", requestId);
+            return session.result;
+        }
+        if (session != null && requestId.getSequence() < session.sequence) {
+            this.learnerLogger.log(Level.DEBUG, "> Error: skipped {}, which the client already followed with request {}", requestId, session.sequence);
+            return "> Error: the client already sent a later request than request " + requestId.getSequence();
+        }
+        Object result = this.runModificationOperation(operation);
+        this.kvStore.recordSession(requestId, result);
+        return result;
+    }
+
+    /**
+     * Applies the operations of a batch sent as one client request, unless that request was already
+     * applied, in the same way runRequest applies a single operation. The request table records the
+     * results of the whole batch, so a retry returns every one of them.
+     *
+     * @return The result of each operation of the batch, in order
+     */
+    private List<?> runBatchRequest(Batch batch) {
+        RequestId requestId = batch.requestId;
+        int size = batch.operations.size();
+        KeyValueStore.Session session = this.kvStore.session(requestId.getClientId());
+        if (session != null && requestId.getSequence() == session.sequence) {
+            if (!(session.result instanceof List) || ((List<?>) session.result).size() != size) {
+                this.learnerLogger.log(Level.DEBUG, "> Error: skipped {}, whose id was used by a different request", requestId);
+                return Collections.nCopies(size, "> Error: " + requestId + " was used by a different request");
+            }
+            if (batch.operations.stream().anyMatch(this.pendingResults::containsKey)) {
+                this.metrics.retriesDeduplicated.increment();
+            }
+            this.learnerLogger.log(Level.DEBUG, "> Skipped {}, which was already applied", requestId);
+            return (List<?>) session.result;
+        }
+        if (session != null && requestId.getSequence() < session.sequence) {
+            this.learnerLogger.log(Level.DEBUG, "> Error: skipped {}, which the client already followed with request {}", requestId, session.sequence);
+            return Collections.nCopies(size, "> Error: the client already sent a later request than request " + requestId.getSequence());
+        }
+        List<Object> results = new ArrayList<>(size);
+        for (Operation operation : batch.operations) {
+            results.add(this.runModificationOperation(operation));
+        }
+        this.kvStore.recordSession(requestId, results);
+        return results;
+    }
+
+
+    /**
+     * Applies a specified operation to the key-value store. The operation can either
+     * be a PUT or DELETE or GET, a transaction, a versioned read or a conditional write
+     *
+     * @return The result of the operation as returned to the client, or null for a no-op
+     */
+    private Object runModificationOperation(Operation operation) {
+        if (operation == null) return null;
+
+        switch (operation.type) {
+            case "GET":
+                // A read sent through the log returns the value at its position in the log
+                return this.readLocally(operation.key);
+            case "PUT":
+                // Check if the key already exists
+                if (this.kvStore.containsKey(operation.key)) {
+                    // Log failure
+                    PaxosEvents.storeMutation(operation.type, operation.key, false);
+                    this.learnerLogger.log(Level.DEBUG, "> Error: the execution for \"{}\" already exists", operation.key);
+                    return "> Error: the entry for \"" + operation.key + "\" already exists";
+                } else {
+                    // If the key does not exist, add the key-value pair
+                    this.kvStore.put(operation.key, operation.value);
+                    PaxosEvents.storeMutation(operation.type, operation.key, true);
+                    // Log success message.
+                    this.learnerLogger.log(Level.DEBUG, "> Added the key \"{}\" associated with \"{}\"", operation.key, operation.value);
+                    return "> SUCCESS";
+                }
+            case "DELETE":
+                // Check if the key exists in the key-value store.
+                if (this.kvStore.containsKey(operation.key)) {
+                    // Remove the key-value pair from the store if it exists.
+                    this.kvStore.remove(operation.key);
+                    PaxosEvents.storeMutation(operation.type, operation.key, true);
+                    // Log success message.
+                    this.learnerLogger.log(Level.DEBUG, "> Deleted the key-value pair associated with \"{}\"", operation.key);
+                    return "SUCCESS";
+                } else {
+                    // Log failure message if the key does not exist.
+                    PaxosEvents.storeMutation(operation.type, operation.key, false);
+                    this.learnerLogger.log(Level.DEBUG, "> Error: the key \"{}\" does not exist", operation.key);
+                    return "> Error: " + "\"" + operation.key + "\" does not exist";
+                }
+            case "TXN":
+                return this.runTransaction((Transaction) operation);
+            case "VGET":
+                return this.readVersionedLocally(operation.key);
+            case "CAS":
+                return this.runConditionalWrite((ConditionalWrite) operation);
+            case "NOOP":
+                // Fills a slot left empty by a previous leader
+                return null;
+            default:
+                // Log and throw an error if the operation type is unknown.
+                this.learnerLogger.log(Level.ERROR, "> Error: Unknown operation type: {}", operation.type);
+                throw new IllegalArgumentException("> Error: Unknown operation type: " + operation.type);
+        }
+    }
+
+
+    /**
+     * Applies a transaction all-or-nothing: its writes are applied only if every key it checks has the
+     * expected value. Decisions are applied one at a time, so nothing else writes in between.
+     *
+     * @return The result of the transaction as returned to the client
+     */
+    private String runTransaction(Transaction transaction) {
+        for (Map.Entry<String, String> check : transaction.checks.entrySet()) {
+            String current = this.kvStore.get(check.getKey());
+            if (!Objects.equals(current, check.getValue())) {
+                PaxosEvents.storeMutation(transaction.type, check.getKey(), false);
+                this.learnerLogger.log(Level.DEBUG, "> Error: aborted a transaction because \"{}\" is \"{}\" instead of \"{}\"", check.getKey(), current, check.getValue());
+                return "> Error: the transaction was aborted because \"" + check.getKey() + "\" is \"" + current + "\" instead of \"" + check.getValue() + "\"";
+            }
+        }
+        for (Map.Entry<String, String> write : transaction.writes.entrySet()) {
+            if (write.getValue() == null) {
+                this.kvStore.remove(write.getKey());
+            } else {
+                this.kvStore.put(write.getKey(), write.getValue());
+            }
+            PaxosEvents.storeMutation(transaction.type, write.getKey(), true);
+        }
+        this.learnerLogger.log(Level.DEBUG, "> Applied a transaction writing {}", transaction.writes);
+        return "> SUCCESS";
+    }
+
+    /**
+     * Applies a conditional write if its key has the expected version, or the expected value when the
+     * write compares values, and otherwise leaves the key as it is.
+     *
+     * @return Whether the write was applied, with the value and version of the key afterwards
+     */
+    private VersionedResult runConditionalWrite(ConditionalWrite write) {
+        KeyValueStore.Entry current = this.kvStore.getEntry(write.key);
+        String currentValue = current == null ? null : current.value;
+        long currentVersion = current == null ? 0 : current.version;
+        boolean holds = write.expectedVersion == ConditionalWrite.ANY_VERSION
+                ? Objects.equals(currentValue, write.expectedValue)
+                : currentVersion == write.expectedVersion;
+        // Removing a key that does not exist is not applied, as with delete, so it cannot pass for a removal
+        boolean removesNothing = write.value == null && current == null;
+        PaxosEvents.storeMutation(write.type, write.key, holds && !removesNothing);
+        if (!holds) {
+            this.learnerLogger.log(Level.DEBUG, "> Error: the condition of a write to \"{}\" does not hold at version {}", write.key, currentVersion);
+            return new VersionedResult(false, currentValue, currentVersion);
+        }
+        if (removesNothing) {
+            this.learnerLogger.log(Level.DEBUG, "> Error: \"{}\" does not exist", write.key);
+            return new VersionedResult(false, null, 0);
+        }
+        if (write.value == null) {
+            this.kvStore.remove(write.key);
+            this.learnerLogger.log(Level.DEBUG, "> Deleted the key-value pair associated with \"{}\" at version {}", write.key, currentVersion);
+            return new VersionedResult(true, null, 0);
+        }
+        long version = this.kvStore.put(write.key, write.value);
+        this.learnerLogger.log(Level.DEBUG, "> Set the key \"{}\" to \"{}\" at version {}", write.key, write.value, version);
+        return new VersionedResult(true, write.value, version);
+    }
+
+
+    /**
+     * Proposes a value, a single operation or a batch, to be executed using the Paxos consensus algorithm.
+     *
+     * @return The slot the value was decided in, or -1 if it was not decided.
+     */
+    private long propose(Object value) throws InterruptedException {
+        // A stable leader reuses its ballot and skips the prepare phase
+        if (this.config.isMultiPaxos()) {
+            return this.proposeAsLeader(value);
         }
-        return this.kvStore.get(key);
+
+        // Generate a new unique sequence number
+        long sequenceNumber = generateSequenceNumber();
+        this.observeSequenceNumber(sequenceNumber);
+        this.proposerLogger.log(Level.DEBUG, "> A sequence number has been generated: {}", sequenceNumber);
+
+        // Execute the Paxos algorithm
+        return this.runPaxosRound(sequenceNumber, value);
     }
 
     /**
-     * Deletes a key-value pair from the distributed key-value store.
+     * Proposes an operation, through the batcher when batching is enabled, and waits until it has been
+     * applied to the local store.
+     *
+     * @return The result of applying the operation.
+     * @throws RemoteException If the operation was not decided in time.
      */
-    @Override
-    public synchronized String delete(String key) throws RemoteException {
-        if (this.kvStore.containsKey(key)) {
-            if (this.propose(new Operation("DELETE", key))) {
-                this.logger.log("> Value proposed promised to be accepted by the majority of servers");
-                return "SUCCESS";
-            } else {
-                return "> Error: Execution of Paxos failed - please try again.";
+    private Object proposeAndApply(Operation operation) throws RemoteException {
+        long start = System.nanoTime();
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        this.pendingResults.put(operation, result);
+        if (this.batcher != null) {
+            boolean queued;
+            try {
+                queued = this.batcher.submit(operation, this.config.getPhaseTimeoutMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queued = false;
+            }
+            if (!queued) {
+                this.pendingResults.remove(operation);
+                this.logger.log(Level.WARN, "> Error: too many operations are waiting to be proposed, refused {}", operation);
+                throw new RemoteException("> Error: the server is overloaded, too many operations are waiting to be proposed");
             }
         } else {
-            this.logger.log("> Error: " + "\"" + key + "\" does not exist");
-            return "> Error: " + "\"" + key + "\" does not exist";
+            this.proposeBatch(Collections.singletonList(operation));
         }
-    }
 
+        try {
+            // Covers the prepare phase, every accept attempt and waiting for earlier slots to be applied
+            Object applied = result.get(this.config.getPhaseTimeoutMillis() * (MAX_ACCEPT_ATTEMPTS + 2), TimeUnit.MILLISECONDS);
+            this.metrics.commitLatency.record(System.nanoTime() - start);
+            return applied;
+        } catch (TimeoutException e) {
+            this.pendingResults.remove(operation);
+            this.logger.log(Level.WARN, "> Error: {} was not applied in time", operation);
+            throw new RemoteException("> Error: " + operation + " was not applied in time");
+        } catch (ExecutionException e) {
+            throw new RemoteException("> Error: execution of Paxos failed for " + operation, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while proposing " + operation, e);
+        }
+    }
 
     /**
-     * Applies a specified operation to the key-value store. The operation can either
-     * be a PUT or DELETE or GET
+     * Proposes a batch of operations as one Paxos value, bypassing the batcher so they are never split over
+     * several slots, and waits until they are applied.
+     *
+     * @return The result of each operation, in order.
      */
-    private void runModificationOperation(Operation operation) {
-        if (operation == null) return;
+    private List<String> proposeAndApplyAll(Batch batch) throws RemoteException {
+        List<Operation> operations = batch.operations;
+        long start = System.nanoTime();
+        List<CompletableFuture<Object>> results = new ArrayList<>(operations.size());
+        for (Operation operation : operations) {
+            CompletableFuture<Object> result = new CompletableFuture<>();
+            this.pendingResults.put(operation, result);
+            results.add(result);
+        }
+        // A batch with a request id is proposed as it is, even with one operation, so the id is decided with it
+        this.proposeValue(operations.size() == 1 && batch.requestId == null ? operations.get(0) : batch, operations);
 
-        switch (operation.type) {
-            // todo: conditionally add GET to align with the others
-            case "PUT":
-                // Check if the key already exists
-                if (this.kvStore.containsKey(operation.key)) {
-                    // Log failure
-                    this.logger.log("> Error: the execution for \"" + operation.key + "\" already exists");
-                } else {
-                    // If the key does not exist, add the key-value pair
-                    this.kvStore.put(operation.key, operation.value);
-                    // Log success message.
-                    this.logger.log("> Added the key \"" + operation.key + "\" associated with \"" + operation.value + "\"");
-                }
-                break;
-            case "DELETE":
-                // Check if the key exists in the key-value store.
-                if (this.kvStore.containsKey(operation.key)) {
-                    // Remove the key-value pair from the store if it exists.
-                    this.kvStore.remove(operation.key);
-                    // Log success message.
-                    this.logger.log("> Deleted the key-value pair associated with \"" + operation.key + "\"");
-                } else {
-                    // Log failure message if the key does not exist.
-                    this.logger.log("> Error: the key \"" + operation.key + "\" does not exist");
-                }
-                break;
-            default:
-                // Log and throw an error if the operation type is unknown.
-                this.logger.log("> Error: Unknown operation type: " + operation.type);
-                throw new IllegalArgumentException("> Error: Unknown operation type: " + operation.type);
+        try {
+            CompletableFuture.allOf(results.toArray(CompletableFuture<?>[]::new))
+                    .get(this.config.getPhaseTimeoutMillis() * (MAX_ACCEPT_ATTEMPTS + 2), TimeUnit.MILLISECONDS);
+            this.metrics.commitLatency.record(System.nanoTime() - start);
+            List<String> applied = new ArrayList<>(operations.size());
+            for (CompletableFuture<Object> result : results) {
+                applied.add((String) result.join());
+            }
+            return applied;
+        } catch (TimeoutException e) {
+            operations.forEach(this.pendingResults::remove);
+            this.logger.log(Level.WARN, "> Error: a batch of {} operations was not applied in time", operations.size());
+            throw new RemoteException("> Error: a batch of " + operations.size() + " operations was not applied in time");
+        } catch (ExecutionException e) {
+            throw new RemoteException("> Error: execution of Paxos failed for a batch of " + operations.size() + " operations", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while proposing a batch of " + operations.size() + " operations", e);
         }
     }
 
-
     /**
-     * Proposes an operation to be executed using the Paxos consensus algorithm.
+     * Proposes a group of operations as one Paxos value. If it is not decided, the clients waiting for
+     * the operations are failed right away instead of waiting for their timeout.
      */
-    private boolean propose(Operation operation) throws RemoteException {
-        // Generate a new unique sequence number
-        this.maxObservedSequenceNumber = generateSequenceNumber();
-        this.logger.log("> A sequence number has been generated: " + this.maxObservedSequenceNumber);
+    private void proposeBatch(List<Operation> operations) {
+        this.proposeValue(operations.size() == 1 ? operations.get(0) : new Batch(operations), operations);
+    }
 
-        // Execute the Paxos algorithm
-        return runExecutePaxosAlgorithm(this.maxObservedSequenceNumber, operation);
+    /**
+     * Proposes a value holding the given operations, failing the clients waiting for them if it is not decided.
+     */
+    private void proposeValue(Object value, List<Operation> operations) {
+        long slot;
+        try {
+            slot = this.propose(value);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            slot = -1;
+        }
+        if (slot < 0) {
+            for (Operation operation : operations) {
+                CompletableFuture<Object> pending = this.pendingResults.remove(operation);
+                if (pending != null) {
+                    pending.completeExceptionally(new IllegalStateException("Paxos failed for " + operation));
+                }
+            }
+        }
     }
 
 
     /**
      * Handles the "prepare" phase of the Paxos consensus protocol.
-     * This method checks if the proposed sequence number is acceptable and makes a promise
+     * This method checks if the proposed sequence number is acceptable and makes a promise for every
+     * slot from fromSlot on, reporting the values it already accepted or knows to be decided in them
      */
     @Override
-    public synchronized Object prepare(long sequenceNumber) throws RemoteException {
+    public Object prepare(long sequenceNumber, long fromSlot) throws RemoteException {
 
         // Simulate a failure scenario using the RANDOM_FAILURE_PROBABILITY we specified above
-        double random = this.randomGenerator.nextDouble();
+        double random = ThreadLocalRandom.current().nextDouble();
 
         // Condition for probability being true
         if (random < RANDOM_FAILURE_PROBABILITY) {
-            this.logger.log(this + " failed (simulated) (" + random + " < " + RANDOM_FAILURE_PROBABILITY + ")");
+            this.acceptorLogger.log(Level.DEBUG, "{} failed (simulated) ({} < {})", this, random, RANDOM_FAILURE_PROBABILITY);
             throw new RemoteException(this + " failed (simulated)");
         }
 
-        // Check if the proposed sequence number is the highest observed.
-        if (sequenceNumber > this.maxObservedSequenceNumber) {
-            this.maxObservedSequenceNumber = sequenceNumber;
-            if (this.lastAcceptedValue != null) {
-                this.logger.log("> Already accepted " + this.lastAcceptedValue + " associated with the sequence number " + this.lastAcceptedSequenceNumber);
-                return new Promise(1, this.lastAcceptedSequenceNumber, this.lastAcceptedValue);
+        // A proposer that has not seen the slots compacted into the snapshot cannot complete them
+        if (fromSlot < this.log.firstRetainedSlot()) {
+            this.acceptorLogger.log(Level.DEBUG, "> Did not send promise message (slots before {} are only in the snapshot)", this.log.firstRetainedSlot());
+            return new Promise(0);
+        }
+
+        // Check if the proposed sequence number is the highest observed, and that no other leader holds a read lease
+        Map<Long, Proposal> acceptedSlots;
+        PaxosEvents.AcceptorDecision event = new PaxosEvents.AcceptorDecision();
+        event.begin();
+        try {
+            acceptedSlots = this.acceptorState.prepare(sequenceNumber, fromSlot);
+        } catch (IOException e) {
+            throw new RemoteException(this + " could not persist the promise", e);
+        }
+        PaxosEvents.endAcceptorDecision(event, "prepare", sequenceNumber, fromSlot, acceptedSlots != null, this.acceptorState.promised());
+        if (acceptedSlots == null) {
+            long promised = this.acceptorState.promised();
+            if (sequenceNumber > promised) {
+                this.acceptorLogger.log(Level.DEBUG, "> Did not send promise message (read lease held by Server{serverId={}})", this.acceptorState.leaseHolder());
             } else {
-                this.logger.log("> Sent promise message (" + sequenceNumber + " > " + this.maxObservedSequenceNumber + ")");
-                return new Promise(1);
+                this.acceptorLogger.log(Level.DEBUG, "> Did not send promise message ({} <= {})", sequenceNumber, promised);
             }
-        } else {
-            this.logger.log("> Did not send promise message (" + sequenceNumber + " <= " + this.maxObservedSequenceNumber + ")");
             return new Promise(0);
         }
+        this.followLeader(sequenceNumber);
+
+        // Read the log after the accepted proposals: a slot is only forgotten once the log holds its decision
+        for (Map.Entry<Long, Object> decision : this.log.chosenFrom(fromSlot).entrySet()) {
+            acceptedSlots.put(decision.getKey(), new Proposal(CHOSEN, decision.getValue()));
+        }
+        if (!acceptedSlots.isEmpty()) {
+            this.acceptorLogger.log(Level.DEBUG, "> Already accepted values in {} slot(s) from slot {}", acceptedSlots.size(), fromSlot);
+        } else {
+            this.acceptorLogger.log(Level.DEBUG, "> Sent promise message for sequence number {}", sequenceNumber);
+        }
+        return new Promise(1, acceptedSlots);
     }
 
 
     /**
-     * Accepts or rejects a proposed value based on the Paxos consensus protocol.
+     * Accepts or rejects a value proposed for a slot based on the Paxos consensus protocol.
      */
     @Override
-    public synchronized long accept(long sequenceNumber, Object proposalValue) throws RemoteException {
+    public long accept(long sequenceNumber, long slot, Object proposalValue) throws RemoteException {
         // Implement Paxos accept logic here
-        double random = this.randomGenerator.nextDouble();
+        double random = ThreadLocalRandom.current().nextDouble();
         if (random < RANDOM_FAILURE_PROBABILITY) { // simulate server failure
-            this.logger.log(this + " failed (" + random + " < " + RANDOM_FAILURE_PROBABILITY + ")");
+            this.acceptorLogger.log(Level.DEBUG, "{} failed ({} < {})", this, random, RANDOM_FAILURE_PROBABILITY);
             throw new RemoteException(this + " failed");
+        }
+        long promised;
+        PaxosEvents.AcceptorDecision event = new PaxosEvents.AcceptorDecision();
+        event.begin();
+        try {
+            promised = this.acceptorState.accept(sequenceNumber, slot, proposalValue);
+        } catch (IOException e) {
+            throw new RemoteException(this + " could not persist the accepted value", e);
+        }
+        PaxosEvents.endAcceptorDecision(event, "accept", sequenceNumber, slot, promised <= sequenceNumber, promised);
+        if (promised <= sequenceNumber) {
+            this.acceptorLogger.log(Level.DEBUG, "{} associated with sequence number {} accepted in slot {}", proposalValue, sequenceNumber, slot);
+            this.followLeader(sequenceNumber);
+            this.lastLeaderContactNanos = System.nanoTime();
         } else {
-            if (sequenceNumber >= this.maxObservedSequenceNumber) {
-                this.logger.log(proposalValue + " associated with sequence number " + sequenceNumber + " accepted");
-                this.lastAcceptedValue = proposalValue;
-                this.maxObservedSequenceNumber = sequenceNumber;
-                this.lastAcceptedSequenceNumber = sequenceNumber;
-            } else {
-                this.logger.log(proposalValue + " associated with sequence number " + sequenceNumber + " rejected");
-            }
+            this.acceptorLogger.log(Level.DEBUG, "{} associated with sequence number {} rejected in slot {}", proposalValue, sequenceNumber, slot);
+        }
+        return promised;
+    }
+
+    /**
+     * Confirms to a leader that no higher sequence number than its ballot has been promised.
+     */
+    @Override
+    public boolean heartbeat(long sequenceNumber) throws RemoteException {
+        double random = ThreadLocalRandom.current().nextDouble();
+        if (random < RANDOM_FAILURE_PROBABILITY) { // simulate server failure
+            this.acceptorLogger.log(Level.DEBUG, "{} failed ({} < {})", this, random, RANDOM_FAILURE_PROBABILITY);
+            throw new RemoteException(this + " failed");
+        }
+        if (sequenceNumber >= this.acceptorState.promised()) {
+            this.lastLeaderContactNanos = System.nanoTime();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Grants or extends a read lease to the leader with the given sequence number, as long as no higher
+     * sequence number has been promised. Until the lease expires no other server gets a promise.
+     */
+    @Override
+    public boolean grantLease(long sequenceNumber, long leaseMillis) throws RemoteException {
+        double random = ThreadLocalRandom.current().nextDouble();
+        if (random < RANDOM_FAILURE_PROBABILITY) { // simulate server failure
+            this.acceptorLogger.log(Level.DEBUG, "{} failed ({} < {})", this, random, RANDOM_FAILURE_PROBABILITY);
+            throw new RemoteException(this + " failed");
         }
-        return this.maxObservedSequenceNumber;
+        boolean granted;
+        try {
+            granted = this.acceptorState.grantLease(sequenceNumber, leaseMillis);
+        } catch (IOException e) {
+            throw new RemoteException(this + " could not persist the promise", e);
+        }
+        if (granted) {
+            this.followLeader(sequenceNumber);
+            this.lastLeaderContactNanos = System.nanoTime();
+            return true;
+        }
+        this.acceptorLogger.log(Level.DEBUG, "> Did not grant a read lease ({} < {})", sequenceNumber, this.acceptorState.promised());
+        return false;
     }
 
     /**
-     * Implements the learning phase of the Paxos protocol, where the accepted value is learned and executed.
+     * Implements the learning phase of the Paxos protocol, where the value decided for a slot is learned.
+     * It is executed as soon as every earlier slot has been executed.
      */
     @Override
-    public synchronized void learn(long sequenceNumber, Object acceptedValue) throws RemoteException {
+    public void learn(long slot, Object acceptedValue) throws RemoteException {
         // Implement Paxos learn logic here
-        this.runModificationOperation((Operation) acceptedValue);
-        this.logger.log(acceptedValue.toString() + " learned and executed");
-        this.lastAcceptedValue = null;
-        this.maxObservedSequenceNumber = sequenceNumber;
-        this.lastAcceptedSequenceNumber = -Long.MAX_VALUE;
+        this.lastLeaderContactNanos = System.nanoTime();
+        try {
+            if (this.learnLocally(slot, acceptedValue)) {
+                this.learnerLogger.log(Level.DEBUG, "{} learned for slot {}", acceptedValue, slot);
+            }
+        } catch (IOException e) {
+            throw new RemoteException(this + " could not persist the decision for slot " + slot, e);
+        }
+        // The decision now lives in the log, so the accepted proposal is no longer needed
+        this.acceptorState.forget(slot);
+    }
+
+    /**
+     * Serves a batch of decisions to a replica catching up. Once the slot asked for was dropped, the
+     * replica is pointed at the snapshot covering it instead: the latest snapshot file, or a snapshot of
+     * the store taken for it if no file covers the slot because this server takes no snapshots.
+     */
+    @Override
+    public Object fetchDecisions(long fromSlot, int maxSlots) throws RemoteException {
+        if (fromSlot < this.log.firstRetainedSlot()) {
+            try {
+                long snapshotSlot = this.snapshotter != null ? this.snapshotter.latestSlot() : -1;
+                if (snapshotSlot < fromSlot) {
+                    snapshotSlot = this.serveStoreSnapshot(fromSlot);
+                }
+                return new Decisions(Collections.emptyMap(), this.log.highestLearnedSlot(), snapshotSlot);
+            } catch (IOException e) {
+                throw new RemoteException(this + " could not find or take a snapshot covering slot " + fromSlot, e);
+            }
+        }
+        // The batch size of the server serving it also applies, so a peer cannot ask for more at once
+        int slots = Math.min(maxSlots, this.config.getCatchUpBatchSlots());
+        return new Decisions(this.log.chosenRange(fromSlot, slots), this.log.highestLearnedSlot(), -1);
+    }
+
+    /**
+     * Takes a snapshot of the store for a replica that needs the decisions from the given slot on after
+     * they were dropped, unless the one taken for an earlier request already covers them.
+     *
+     * @return The last slot the snapshot includes.
+     */
+    private long serveStoreSnapshot(long fromSlot) throws IOException {
+        synchronized (this.servedSnapshotLock) {
+            if (this.servedSnapshot != null && this.servedSnapshotSlot >= fromSlot) {
+                return this.servedSnapshotSlot;
+            }
+            long start = System.nanoTime();
+            // Fixed between two slots like a periodic snapshot, then written while applying goes on
+            long slot = this.log.atLastApplied(this.kvStore::beginSnapshot);
+            ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+            long entries = this.kvStore.writeSnapshot(snapshot, slot);
+            this.servedSnapshot = snapshot.toByteArray();
+            this.servedSnapshotSlot = slot;
+            this.logger.log("> Took a snapshot at slot " + slot + " of " + entries + " entries (" + this.servedSnapshot.length
+                    + " bytes) for a peer behind slot " + fromSlot + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            return slot;
+        }
+    }
+
+    /**
+     * Serves a chunk of the latest snapshot to a replica too far behind to catch up from decisions.
+     */
+    @Override
+    public byte[] fetchSnapshotChunk(long snapshotSlot, long offset, int maxBytes) throws RemoteException {
+        synchronized (this.servedSnapshotLock) {
+            if (this.servedSnapshot != null && this.servedSnapshotSlot == snapshotSlot) {
+                int from = (int) Math.min(offset, this.servedSnapshot.length);
+                int to = (int) Math.min(from + (long) Math.min(maxBytes, this.config.getSnapshotChunkBytes()), this.servedSnapshot.length);
+                return Arrays.copyOfRange(this.servedSnapshot, from, to);
+            }
+        }
+        if (this.snapshotter == null) {
+            return null;
+        }
+        try {
+            return this.snapshotter.readChunk(snapshotSlot, offset, Math.min(maxBytes, this.config.getSnapshotChunkBytes()));
+        } catch (IOException e) {
+            throw new RemoteException(this + " could not read its snapshot at slot " + snapshotSlot, e);
+        }
+    }
+
+    /**
+     * Records the owner of a ballot this acceptor promised or accepted as the current leader,
+     * giving up this server's own leadership if the ballot belongs to another server.
+     */
+    private void followLeader(long sequenceNumber) {
+        long owner = ownerOf(sequenceNumber);
+        // Skip the writes in the common case so accepts do not keep invalidating the shared fields
+        if (owner != this.serverId) {
+            if (this.leaderBallot.get() >= 0) {
+                this.leaderBallot.set(-1);
+            }
+            if (this.leaseExpiresAtNanos != 0) {
+                this.leaseExpiresAtNanos = 0;
+            }
+        }
+        if (this.leaderId != owner) {
+            this.leaderId = owner;
+        }
     }
 
     /**
@@ -352,6 +1860,20 @@ public class Server extends UnicastRemoteObject implements IProposer, IAcceptor,
         this.registry = registry;
     }
 
+    /**
+     * Sets the listener serving this server's acceptor and learner to its peers over NIO, closed on shutdown
+     */
+    public void setPeerListener(PeerListener peerListener) {
+        this.peerListener = peerListener;
+    }
+
+    /**
+     * Sets the HTTP endpoint serving this server's metrics, closed on shutdown
+     */
+    public void setMetricsEndpoint(MetricsEndpoint metricsEndpoint) {
+        this.metricsEndpoint = metricsEndpoint;
+    }
+
     /**
      * Shuts down this server instance, unbinding it from the RMI registry and unexporting it from RMI runtime.
      */
@@ -363,11 +1885,38 @@ public class Server extends UnicastRemoteObject implements IProposer, IAcceptor,
             this.registry.unbind("KVStore" + this.serverId); // unbind the remote object from the custom name
             this.logger.log(this + " unbound in registry");
         } catch (NotBoundException e) {
-            this.logger.log("Unbind error: " + e.getMessage());
+            this.logger.log(Level.WARN, "Unbind error: {}", e.getMessage());
             e.printStackTrace();
             System.exit(1);
         }
         UnicastRemoteObject.unexportObject(this, true); // unexport the remote object
+        if (this.peerListener != null) {
+            try {
+                this.peerListener.close();
+            } catch (IOException e) {
+                this.logger.log(Level.WARN, "> Error: could not close the peer listener: {}", e.getMessage());
+            }
+        }
+        if (this.metricsEndpoint != null) {
+            this.metricsEndpoint.close();
+        }
+        this.quorumCall.shutdown();
+        this.leaseRenewer.shutdownNow();
+        this.readIndexBatcher.shutdown();
+        if (this.catchUp != null) {
+            this.catchUp.shutdown();
+        }
+        if (this.batcher != null) {
+            this.batcher.shutdown();
+        }
+        if (this.wal != null) {
+            this.snapshotter.shutdown();
+            try {
+                this.wal.close();
+            } catch (IOException e) {
+                this.logger.log(Level.WARN, "> Error: could not close the write-ahead log: {}", e.getMessage());
+            }
+        }
         this.logger.log(this + " unexported");
         this.logger.log(this + " closed");
         this.logger.close();
@@ -377,33 +1926,199 @@ public class Server extends UnicastRemoteObject implements IProposer, IAcceptor,
     /**
      * Represents an operation to be performed on a key-value store
      */
-    private static class Operation {
+    public static class Operation implements Serializable {
+        private static final long serialVersionUID = 1L;
+
         final String type;
         final String key;
         final String value;
+        // Identifies the operation across copies, since values sent to another server arrive deserialized
+        final long id;
+        // Identifies the client request across its retries, or null if the client gave none
+        final RequestId requestId;
 
         /**
          * Constructs a complete operation with a type, key, and value
          */
-        Operation(String type, String key, String value) {
-            this.type = type;
-            this.key = key;
-            this.value = value;
+        public Operation(String type, String key, String value) {
+            this(type, key, value, (RequestId) null);
+        }
+
+        /**
+         * Constructs an operation sent by a client with a request id
+         */
+        public Operation(String type, String key, String value, RequestId requestId) {
+            this(type, key, value, requestId, ThreadLocalRandom.current().nextLong());
         }
 
         /**
          * Constructs an operation with only a type and key
          */
-        Operation(String type, String key) {
+        public Operation(String type, String key) {
             this(type, key, null);
         }
 
+        /**
+         * Constructs a copy of a decoded operation, keeping its id
+         */
+        Operation(String type, String key, String value, RequestId requestId, long id) {
+            this.type = type;
+            this.key = key;
+            this.value = value;
+            this.requestId = requestId;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Operation && ((Operation) other).id == this.id;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(this.id);
+        }
+
         @Override
         public String toString() {
             return "Operation{" +
                     "type='" + type + '\'' +
                     ", key='" + key + '\'' +
                     ", value='" + value + '\'' +
+                    (requestId != null ? ", requestId=" + requestId : "") +
+                    '}';
+        }
+    }
+
+
+    /**
+     * Represents a transaction: the values some keys must have and the writes applied if they do, decided
+     * as a single operation so they are applied all-or-nothing
+     */
+    public static class Transaction extends Operation {
+        private static final long serialVersionUID = 1L;
+
+        // The value each key must have, null for a key that must not exist
+        final Map<String, String> checks;
+        // The value each key is set to, null for a key that is removed
+        final Map<String, String> writes;
+
+        /**
+         * Constructs a transaction with the values to check and the writes to apply
+         */
+        public Transaction(Map<String, String> checks, Map<String, String> writes) {
+            this(checks, writes, null);
+        }
+
+        /**
+         * Constructs a transaction sent by a client with a request id
+         */
+        public Transaction(Map<String, String> checks, Map<String, String> writes, RequestId requestId) {
+            this(checks, writes, requestId, ThreadLocalRandom.current().nextLong());
+        }
+
+        /**
+         * Constructs a copy of a decoded transaction, keeping its id
+         */
+        Transaction(Map<String, String> checks, Map<String, String> writes, RequestId requestId, long id) {
+            super("TXN", null, null, requestId, id);
+            this.checks = checks;
+            this.writes = writes;
+        }
+
+        @Override
+        public String toString() {
+            return "Transaction{" +
+                    "checks=" + checks +
+                    ", writes=" + writes +
+                    (requestId != null ? ", requestId=" + requestId : "") +
+                    '}';
+        }
+    }
+
+
+    /**
+     * Represents a write applied only if its key has the expected version, or the expected value, when it
+     * is applied, so the precondition is decided together with the write; a null value removes the key
+     */
+    public static class ConditionalWrite extends Operation {
+        private static final long serialVersionUID = 1L;
+
+        // The expected version of a write that compares the value instead
+        static final long ANY_VERSION = -1;
+
+        // The version the key must have, 0 for a key that must not exist, or ANY_VERSION
+        final long expectedVersion;
+        // The value the key must have when expectedVersion is ANY_VERSION, null for a key that must not exist
+        final String expectedValue;
+
+        /**
+         * Constructs a conditional write with its key, its new value and its precondition
+         */
+        public ConditionalWrite(String key, String value, long expectedVersion, String expectedValue) {
+            this(key, value, expectedVersion, expectedValue, null);
+        }
+
+        /**
+         * Constructs a conditional write sent by a client with a request id
+         */
+        public ConditionalWrite(String key, String value, long expectedVersion, String expectedValue, RequestId requestId) {
+            this(key, value, expectedVersion, expectedValue, requestId, ThreadLocalRandom.current().nextLong());
+        }
+
+        /**
+         * Constructs a copy of a decoded conditional write, keeping its id
+         */
+        ConditionalWrite(String key, String value, long expectedVersion, String expectedValue, RequestId requestId, long id) {
+            super("CAS", key, value, requestId, id);
+            this.expectedVersion = expectedVersion;
+            this.expectedValue = expectedValue;
+        }
+
+        @Override
+        public String toString() {
+            return "ConditionalWrite{" +
+                    "key='" + key + '\'' +
+                    ", value='" + value + '\'' +
+                    ", expectedVersion=" + expectedVersion +
+                    ", expectedValue='" + expectedValue + '\'' +
+                    (requestId != null ? ", requestId=" + requestId : "") +
+                    '}';
+        }
+    }
+
+
+    /**
+     * Represents a group of operations decided as a single Paxos value and applied in order. A batch sent
+     * by a client as one request carries the request id, which covers all of its operations
+     */
+    public static class Batch implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final List<Operation> operations;
+        // Identifies the client request the batch is, or null for operations batched by the proposer
+        final RequestId requestId;
+
+        /**
+         * Constructs a batch of operations
+         */
+        public Batch(List<Operation> operations) {
+            this(operations, null);
+        }
+
+        /**
+         * Constructs a batch of operations sent by a client as one request with a request id
+         */
+        public Batch(List<Operation> operations, RequestId requestId) {
+            this.operations = operations;
+            this.requestId = requestId;
+        }
+
+        @Override
+        public String toString() {
+            return "Batch{" +
+                    "operations=" + operations +
+                    (requestId != null ? ", requestId=" + requestId : "") +
                     '}';
         }
     }
@@ -412,26 +2127,67 @@ public class Server extends UnicastRemoteObject implements IProposer, IAcceptor,
     /**
      * Represents a Promise as part of the Paxos consensus protocol
      */
-    private static class Promise {
+    public static class Promise implements Serializable {
+        private static final long serialVersionUID = 1L;
+
         final int vote;
-        final Long sequenceNumber;
-        final Object value;
+        final Map<Long, Proposal> acceptedSlots;
 
         /**
-         * Constructs a Promise with a specific vote, sequence number, and value.
+         * Constructs a Promise with a specific vote and the proposals already accepted, by slot.
          */
-        Promise(int vote, Long sequenceNumber, Object value) {
+        public Promise(int vote, Map<Long, Proposal> acceptedSlots) {
             this.vote = vote;
-            this.sequenceNumber = sequenceNumber;
-            this.value = value;
+            this.acceptedSlots = acceptedSlots;
         }
 
         /**
          * Constructs a Promise with only a vote.
          */
         Promise(int vote) {
-            this(vote, null, null);
+            this(vote, Collections.emptyMap());
+        }
+    }
+
+
+    /**
+     * Represents a value accepted by an acceptor together with the sequence number it was accepted under
+     */
+    public static class Proposal implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final long sequenceNumber;
+        final Object value;
+
+        /**
+         * Constructs a Proposal with a sequence number and value.
+         */
+        public Proposal(long sequenceNumber, Object value) {
+            this.sequenceNumber = sequenceNumber;
+            this.value = value;
         }
     }
 
+
+
+    /**
+     * Represents a batch of decisions served to a replica catching up, or the snapshot it has to fetch instead
+     */
+    static class Decisions implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final Map<Long, Object> decisions;
+        final long highestSlot;
+        final long snapshotSlot;
+
+        /**
+         * Constructs a batch of decisions by slot, with the highest slot the serving replica knows to be decided
+         * and the last slot of the snapshot covering the slots asked for, or -1 if the decisions cover them.
+         */
+        Decisions(Map<Long, Object> decisions, long highestSlot, long snapshotSlot) {
+            this.decisions = decisions;
+            this.highestSlot = highestSlot;
+            this.snapshotSlot = snapshotSlot;
+        }
+    }
 }
@@ -0,0 +1,424 @@
+package server;
+
+/**
+ * Holds the tunable settings of a Server. Settings are read from system properties so that
+ * the cluster can be configured from the command line, e.g. java -Dpaxos.multiPaxos=false main.ServerMain
+ */
+public class ServerConfig {
+
+    /**
+     * How GET requests are answered
+     */
+    public enum ReadConsistency {
+        // Linearizable: a leader holding a quorum-granted lease reads locally, otherwise the read goes through the log
+        LEASE,
+        // Linearizable without clocks: a replica reads locally once it applied the commit point the leader
+        // confirmed with one heartbeat round, otherwise the read goes through the log
+        READ_INDEX,
+        // Any replica answers from its own store, which may be behind
+        LOCAL
+    }
+
+    /**
+     * How the acceptor and learner messages travel between servers
+     */
+    public enum Transport {
+        // Through the RMI remote objects of the peers
+        RMI,
+        // As binary frames pipelined on one NIO connection per pair of servers
+        NIO
+    }
+
+    // Property names:
+    public static final String MULTI_PAXOS_PROPERTY = "paxos.multiPaxos";
+    public static final String PARALLEL_FAN_OUT_PROPERTY = "paxos.parallelFanOut";
+    public static final String PHASE_TIMEOUT_PROPERTY = "paxos.phaseTimeoutMillis";
+    public static final String PIPELINE_WINDOW_PROPERTY = "paxos.pipelineWindow";
+    public static final String BATCH_SIZE_PROPERTY = "paxos.batchSize";
+    public static final String BATCH_LINGER_PROPERTY = "paxos.batchLingerMicros";
+    public static final String READ_CONSISTENCY_PROPERTY = "paxos.readConsistency";
+    public static final String LEASE_PROPERTY = "paxos.leaseMillis";
+    public static final String DURABLE_PROPERTY = "paxos.durable";
+    public static final String WAL_DIRECTORY_PROPERTY = "paxos.walDirectory";
+    public static final String WAL_GROUP_COMMIT_PROPERTY = "paxos.walGroupCommit";
+    public static final String SNAPSHOT_EVERY_SLOTS_PROPERTY = "paxos.snapshotEverySlots";
+    public static final String RETAINED_SLOTS_PROPERTY = "paxos.retainedSlots";
+    public static final String CATCH_UP_INTERVAL_PROPERTY = "paxos.catchUpIntervalMillis";
+    public static final String CATCH_UP_BATCH_SLOTS_PROPERTY = "paxos.catchUpBatchSlots";
+    public static final String SNAPSHOT_CHUNK_BYTES_PROPERTY = "paxos.snapshotChunkBytes";
+    public static final String TRANSPORT_PROPERTY = "paxos.transport";
+    public static final String METRICS_PORT_PROPERTY = "paxos.metricsPort";
+    public static final String MAX_CLIENT_SESSIONS_PROPERTY = "paxos.maxClientSessions";
+
+    // Settings:
+    private boolean multiPaxos = true;
+    private boolean parallelFanOut = true;
+    private long phaseTimeoutMillis = 2000;
+    private int pipelineWindow = 16;
+    private int batchSize = 32;
+    private long batchLingerMicros = 200;
+    private ReadConsistency readConsistency = ReadConsistency.LEASE;
+    private long leaseMillis = 1000;
+    private boolean durable = true;
+    private String walDirectory = "wal";
+    private boolean walGroupCommit = true;
+    private long snapshotEverySlots = 10000;
+    private long retainedSlots = 10000;
+    private long catchUpIntervalMillis = 100;
+    private int catchUpBatchSlots = 512;
+    private int snapshotChunkBytes = 1 << 20;
+    private Transport transport = Transport.RMI;
+    private int metricsPort = 0;
+    private int maxClientSessions = 10000;
+
+    /**
+     * Constructs a configuration holding the default settings
+     */
+    public ServerConfig() {
+    }
+
+    /**
+     * Builds a configuration from the system properties, falling back to the defaults for any
+     * property that is not set
+     */
+    public static ServerConfig fromSystemProperties() {
+        ServerConfig config = new ServerConfig();
+        config.multiPaxos = Boolean.parseBoolean(System.getProperty(MULTI_PAXOS_PROPERTY, Boolean.toString(config.multiPaxos)));
+        config.parallelFanOut = Boolean.parseBoolean(System.getProperty(PARALLEL_FAN_OUT_PROPERTY, Boolean.toString(config.parallelFanOut)));
+        config.phaseTimeoutMillis = Long.getLong(PHASE_TIMEOUT_PROPERTY, config.phaseTimeoutMillis);
+        config.pipelineWindow = Integer.getInteger(PIPELINE_WINDOW_PROPERTY, config.pipelineWindow);
+        config.batchSize = Integer.getInteger(BATCH_SIZE_PROPERTY, config.batchSize);
+        config.batchLingerMicros = Long.getLong(BATCH_LINGER_PROPERTY, config.batchLingerMicros);
+        config.readConsistency = ReadConsistency.valueOf(System.getProperty(READ_CONSISTENCY_PROPERTY, config.readConsistency.name()).toUpperCase());
+        config.leaseMillis = Long.getLong(LEASE_PROPERTY, config.leaseMillis);
+        config.durable = Boolean.parseBoolean(System.getProperty(DURABLE_PROPERTY, Boolean.toString(config.durable)));
+        config.walDirectory = System.getProperty(WAL_DIRECTORY_PROPERTY, config.walDirectory);
+        config.walGroupCommit = Boolean.parseBoolean(System.getProperty(WAL_GROUP_COMMIT_PROPERTY, Boolean.toString(config.walGroupCommit)));
+        config.snapshotEverySlots = Long.getLong(SNAPSHOT_EVERY_SLOTS_PROPERTY, config.snapshotEverySlots);
+        config.retainedSlots = Long.getLong(RETAINED_SLOTS_PROPERTY, config.retainedSlots);
+        config.catchUpIntervalMillis = Long.getLong(CATCH_UP_INTERVAL_PROPERTY, config.catchUpIntervalMillis);
+        config.catchUpBatchSlots = Integer.getInteger(CATCH_UP_BATCH_SLOTS_PROPERTY, config.catchUpBatchSlots);
+        config.snapshotChunkBytes = Integer.getInteger(SNAPSHOT_CHUNK_BYTES_PROPERTY, config.snapshotChunkBytes);
+        config.transport = Transport.valueOf(System.getProperty(TRANSPORT_PROPERTY, config.transport.name()).toUpperCase());
+        config.metricsPort = Integer.getInteger(METRICS_PORT_PROPERTY, config.metricsPort);
+        config.maxClientSessions = Integer.getInteger(MAX_CLIENT_SESSIONS_PROPERTY, config.maxClientSessions);
+        return config;
+    }
+
+    /**
+     * Whether writes go through a stable distinguished proposer (Multi-Paxos) instead of running
+     * a full prepare/accept round for every operation
+     */
+    public boolean isMultiPaxos() {
+        return this.multiPaxos;
+    }
+
+    /**
+     * Setter for Multi-Paxos mode
+     */
+    public ServerConfig setMultiPaxos(boolean multiPaxos) {
+        this.multiPaxos = multiPaxos;
+        return this;
+    }
+
+    /**
+     * Whether prepare, accept and learn requests are sent to all peers at once, each phase
+     * finishing as soon as a majority answered
+     */
+    public boolean isParallelFanOut() {
+        return this.parallelFanOut;
+    }
+
+    /**
+     * Setter for parallel fan-out
+     */
+    public ServerConfig setParallelFanOut(boolean parallelFanOut) {
+        this.parallelFanOut = parallelFanOut;
+        return this;
+    }
+
+    /**
+     * How long a parallel phase waits for a majority of replies, matching the RMI response timeout by default
+     */
+    public long getPhaseTimeoutMillis() {
+        return this.phaseTimeoutMillis;
+    }
+
+    /**
+     * Setter for the phase timeout
+     */
+    public ServerConfig setPhaseTimeoutMillis(long phaseTimeoutMillis) {
+        this.phaseTimeoutMillis = phaseTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * How many slots the leader may have in flight at once
+     */
+    public int getPipelineWindow() {
+        return this.pipelineWindow;
+    }
+
+    /**
+     * Setter for the pipeline window
+     */
+    public ServerConfig setPipelineWindow(int pipelineWindow) {
+        this.pipelineWindow = pipelineWindow;
+        return this;
+    }
+
+    /**
+     * The maximum number of client operations proposed together as one Paxos value; 1 disables batching
+     */
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /**
+     * Setter for the batch size
+     */
+    public ServerConfig setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * How long a batch waits for more operations after its first one arrived, in microseconds
+     */
+    public long getBatchLingerMicros() {
+        return this.batchLingerMicros;
+    }
+
+    /**
+     * Setter for the batch linger time
+     */
+    public ServerConfig setBatchLingerMicros(long batchLingerMicros) {
+        this.batchLingerMicros = batchLingerMicros;
+        return this;
+    }
+
+    /**
+     * How GET requests are answered
+     */
+    public ReadConsistency getReadConsistency() {
+        return this.readConsistency;
+    }
+
+    /**
+     * Setter for the read consistency
+     */
+    public ServerConfig setReadConsistency(ReadConsistency readConsistency) {
+        this.readConsistency = readConsistency;
+        return this;
+    }
+
+    /**
+     * How long a read lease granted by the acceptors lasts, in milliseconds
+     */
+    public long getLeaseMillis() {
+        return this.leaseMillis;
+    }
+
+    /**
+     * Setter for the lease duration
+     */
+    public ServerConfig setLeaseMillis(long leaseMillis) {
+        this.leaseMillis = leaseMillis;
+        return this;
+    }
+
+    /**
+     * Whether the acceptor state and the learned decisions are written to a write-ahead log and
+     * recovered from it when the server starts again
+     */
+    public boolean isDurable() {
+        return this.durable;
+    }
+
+    /**
+     * Setter for durability
+     */
+    public ServerConfig setDurable(boolean durable) {
+        this.durable = durable;
+        return this;
+    }
+
+    /**
+     * The directory holding the write-ahead log of each server
+     */
+    public String getWalDirectory() {
+        return this.walDirectory;
+    }
+
+    /**
+     * Setter for the write-ahead log directory
+     */
+    public ServerConfig setWalDirectory(String walDirectory) {
+        this.walDirectory = walDirectory;
+        return this;
+    }
+
+    /**
+     * Whether concurrent write-ahead log records share one fsync instead of each being forced on its own
+     */
+    public boolean isWalGroupCommit() {
+        return this.walGroupCommit;
+    }
+
+    /**
+     * Setter for write-ahead log group commit
+     */
+    public ServerConfig setWalGroupCommit(boolean walGroupCommit) {
+        this.walGroupCommit = walGroupCommit;
+        return this;
+    }
+
+    /**
+     * How many slots a durable server applies between two snapshots of its store; 0 disables snapshots
+     */
+    public long getSnapshotEverySlots() {
+        return this.snapshotEverySlots;
+    }
+
+    /**
+     * Setter for the snapshot interval
+     */
+    public ServerConfig setSnapshotEverySlots(long snapshotEverySlots) {
+        this.snapshotEverySlots = snapshotEverySlots;
+        return this;
+    }
+
+    /**
+     * How many of the latest applied decisions a server that takes no snapshots keeps in memory for peers
+     * catching up; 0 keeps every decision
+     */
+    public long getRetainedSlots() {
+        return this.retainedSlots;
+    }
+
+    /**
+     * Setter for the retained decisions
+     */
+    public ServerConfig setRetainedSlots(long retainedSlots) {
+        this.retainedSlots = retainedSlots;
+        return this;
+    }
+
+    /**
+     * How often a server checks whether it missed decisions, which is also the pause between two batches
+     * or snapshot chunks fetched while catching up; 0 disables catching up
+     */
+    public long getCatchUpIntervalMillis() {
+        return this.catchUpIntervalMillis;
+    }
+
+    /**
+     * Setter for the catch-up interval
+     */
+    public ServerConfig setCatchUpIntervalMillis(long catchUpIntervalMillis) {
+        this.catchUpIntervalMillis = catchUpIntervalMillis;
+        return this;
+    }
+
+    /**
+     * The most decisions a lagging server fetches from a peer at once
+     */
+    public int getCatchUpBatchSlots() {
+        return this.catchUpBatchSlots;
+    }
+
+    /**
+     * Setter for the catch-up batch size
+     */
+    public ServerConfig setCatchUpBatchSlots(int catchUpBatchSlots) {
+        this.catchUpBatchSlots = catchUpBatchSlots;
+        return this;
+    }
+
+    /**
+     * The size of the chunks a snapshot is transferred in to a server too far behind to catch up from decisions
+     */
+    public int getSnapshotChunkBytes() {
+        return this.snapshotChunkBytes;
+    }
+
+    /**
+     * Setter for the snapshot chunk size
+     */
+    public ServerConfig setSnapshotChunkBytes(int snapshotChunkBytes) {
+        this.snapshotChunkBytes = snapshotChunkBytes;
+        return this;
+    }
+
+    /**
+     * How the acceptor and learner messages travel between servers
+     */
+    public Transport getTransport() {
+        return this.transport;
+    }
+
+    /**
+     * Setter for the peer transport
+     */
+    public ServerConfig setTransport(Transport transport) {
+        this.transport = transport;
+        return this;
+    }
+
+    /**
+     * The local port of the HTTP metrics endpoint of the first server, the others using the next ports,
+     * or 0 for no endpoint
+     */
+    public int getMetricsPort() {
+        return this.metricsPort;
+    }
+
+    /**
+     * Setter for the metrics port
+     */
+    public ServerConfig setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+        return this;
+    }
+
+    /**
+     * How many clients the replicated request table remembers the latest request of, so their retries
+     * are answered without applying them again; must be the same on every server
+     */
+    public int getMaxClientSessions() {
+        return this.maxClientSessions;
+    }
+
+    /**
+     * Setter for the number of clients the request table remembers
+     */
+    public ServerConfig setMaxClientSessions(int maxClientSessions) {
+        this.maxClientSessions = maxClientSessions;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerConfig{" +
+                "multiPaxos=" + multiPaxos +
+                ", parallelFanOut=" + parallelFanOut +
+                ", phaseTimeoutMillis=" + phaseTimeoutMillis +
+                ", pipelineWindow=" + pipelineWindow +
+                ", batchSize=" + batchSize +
+                ", batchLingerMicros=" + batchLingerMicros +
+                ", readConsistency=" + readConsistency +
+                ", leaseMillis=" + leaseMillis +
+                ", durable=" + durable +
+                ", walDirectory='" + walDirectory + '\'' +
+                ", walGroupCommit=" + walGroupCommit +
+                ", snapshotEverySlots=" + snapshotEverySlots +
+                ", retainedSlots=" + retainedSlots +
+                ", catchUpIntervalMillis=" + catchUpIntervalMillis +
+                ", catchUpBatchSlots=" + catchUpBatchSlots +
+                ", snapshotChunkBytes=" + snapshotChunkBytes +
+                ", transport=" + transport +
+                ", metricsPort=" + metricsPort +
+                ", maxClientSessions=" + maxClientSessions +
+                '}';
+    }
+}
@@ -0,0 +1,234 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import utils.ILogger;
+import utils.ILogger.Level;
+
+/**
+ * Takes periodic snapshots of the store so a restart does not replay the whole history and the
+ * write-ahead log stays bounded. Every given number of slots the applying thread fixes the point in
+ * time of a snapshot, which a background thread then writes while applying goes on. Once the snapshot
+ * is on disk, the write-ahead log records and the in-memory decisions it covers are dropped.
+ *
+ * Snapshots are named after the last slot they include, and only the latest one is kept.
+ */
+class Snapshotter {
+    private final Path directory;
+    private final String name;
+    private final KeyValueStore store;
+    private final WriteAheadLog wal;
+    private final ReplicatedLog log;
+    private final long everySlots;
+    private final ILogger logger;
+    private final ExecutorService executor;
+
+    // Set while a snapshot is being written, so that a slow snapshot is never overlapped by the next one,
+    // and until recovery finished, so replaying the write-ahead log never starts one
+    private final AtomicBoolean inProgress = new AtomicBoolean(true);
+
+    /**
+     * Constructs a snapshotter.
+     *
+     * @param directory The directory holding the snapshots, shared with the write-ahead log.
+     * @param name The name of the server, which prefixes its snapshot files.
+     * @param everySlots How many slots are applied between two snapshots; 0 disables snapshots.
+     */
+    Snapshotter(Path directory, String name, KeyValueStore store, WriteAheadLog wal, ReplicatedLog log, long everySlots, ILogger logger) {
+        this.directory = directory;
+        this.name = name;
+        this.store = store;
+        this.wal = wal;
+        this.log = log;
+        this.everySlots = everySlots;
+        this.logger = logger;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "paxos-snapshot-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Loads the latest snapshot into the store and moves the log past the slots it covers.
+     *
+     * @return The last slot included in the snapshot, or -1 if there is none.
+     */
+    long recover() throws IOException {
+        List<Long> slots = this.snapshots();
+        if (slots.isEmpty()) {
+            return -1;
+        }
+        long slot = slots.get(slots.size() - 1);
+        long start = System.nanoTime();
+        this.store.loadSnapshot(this.snapshotPath(slot));
+        this.log.restoreSnapshot(slot);
+        this.logger.log("> Loaded the snapshot at slot " + slot + " with " + this.store.size() + " keys in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return slot;
+    }
+
+    /**
+     * Allows snapshots to be taken once the server has recovered.
+     */
+    void start() {
+        this.inProgress.set(false);
+    }
+
+    /**
+     * Called by the applying thread after each slot, starting a snapshot once enough slots were applied.
+     */
+    void afterApply(long slot) {
+        if (this.everySlots <= 0 || (slot + 1) % this.everySlots != 0 || !this.inProgress.compareAndSet(false, true)) {
+            return;
+        }
+        // Fix the content of the snapshot before the next slot is applied
+        this.store.beginSnapshot();
+        this.executor.execute(() -> {
+            try {
+                this.takeSnapshot(slot);
+            } catch (IOException | RuntimeException e) {
+                this.logger.log(Level.ERROR, "> Error: the snapshot at slot {} failed: {}", slot, e.getMessage());
+            } finally {
+                this.inProgress.set(false);
+            }
+        });
+    }
+
+    /**
+     * Writes the snapshot fixed at the given slot, then drops what it made useless.
+     */
+    private void takeSnapshot(long slot) throws IOException {
+        long start = System.nanoTime();
+        Path file = this.snapshotPath(slot);
+        long entries = this.store.writeSnapshot(file, slot);
+        long written = System.nanoTime();
+
+        // Close the current segment, so every record of the covered slots is in a segment that can be compacted
+        this.wal.rotate();
+
+        for (long older : this.snapshots()) {
+            if (older < slot) {
+                Files.deleteIfExists(this.snapshotPath(older));
+            }
+        }
+        long walBefore = this.wal.sizeOnDisk();
+        this.wal.compact(slot);
+        this.log.truncateThrough(slot);
+        this.logger.log("> Snapshot at slot " + slot + " of " + entries + " entries (" + Files.size(file) + " bytes) written in "
+                + (written - start) / 1_000_000 + " ms, write-ahead log compacted from " + walBefore + " to "
+                + this.wal.sizeOnDisk() + " bytes");
+    }
+
+    /**
+     * Returns the last slot of the latest snapshot on disk, or -1 if there is none.
+     */
+    long latestSlot() throws IOException {
+        List<Long> slots = this.snapshots();
+        return slots.isEmpty() ? -1 : slots.get(slots.size() - 1);
+    }
+
+    /**
+     * Reads part of a snapshot file, so that a lagging replica can fetch it in bounded chunks.
+     *
+     * @return Up to maxBytes bytes starting at offset, an empty array past the end, or null if the snapshot
+     *         was replaced by a newer one meanwhile.
+     */
+    byte[] readChunk(long slot, long offset, int maxBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(this.snapshotPath(slot), StandardOpenOption.READ)) {
+            ByteBuffer chunk = ByteBuffer.allocate((int) Math.max(0, Math.min(maxBytes, channel.size() - offset)));
+            while (chunk.hasRemaining() && channel.read(chunk, offset + chunk.position()) >= 0) {
+                // Keep reading until the chunk is full
+            }
+            return chunk.array();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the store with a snapshot fetched from another replica and keeps it as this server's
+     * latest snapshot, so a restart starts from it as well.
+     *
+     * @param slot The last slot the snapshot includes.
+     * @param file The downloaded snapshot, moved into place once loaded.
+     * @return false if the store is already past the slot or a snapshot is being taken; the file is deleted.
+     */
+    boolean install(long slot, Path file) throws IOException {
+        if (!this.inProgress.compareAndSet(false, true)) {
+            Files.deleteIfExists(file);
+            return false;
+        }
+        try {
+            if (!this.log.installSnapshot(slot, () -> this.store.loadSnapshot(file))) {
+                Files.deleteIfExists(file);
+                return false;
+            }
+            Files.move(file, this.snapshotPath(slot), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            for (long older : this.snapshots()) {
+                if (older < slot) {
+                    Files.deleteIfExists(this.snapshotPath(older));
+                }
+            }
+            return true;
+        } finally {
+            this.inProgress.set(false);
+        }
+    }
+
+    /**
+     * Returns the file a snapshot fetched from another replica is downloaded to before being installed.
+     */
+    Path downloadPath(long slot) {
+        return this.directory.resolve(this.name + "-" + slot + ".snapshot.download");
+    }
+
+    /**
+     * Returns the slots of the snapshots on disk in ascending order.
+     */
+    private List<Long> snapshots() throws IOException {
+        List<Long> slots = new ArrayList<>();
+        String prefix = this.name + "-";
+        try (Stream<Path> files = Files.list(this.directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String fileName = file.getFileName().toString();
+                if (fileName.startsWith(prefix) && fileName.endsWith(".snapshot")) {
+                    try {
+                        slots.add(Long.parseLong(fileName.substring(prefix.length(), fileName.length() - ".snapshot".length())));
+                    } catch (NumberFormatException e) {
+                        // Not a snapshot of this server
+                    }
+                }
+            }
+        }
+        Collections.sort(slots);
+        return slots;
+    }
+
+    /**
+     * Returns the file of the snapshot ending at a slot.
+     */
+    private Path snapshotPath(long slot) {
+        return this.directory.resolve(this.name + "-" + slot + ".snapshot");
+    }
+
+    /**
+     * Stops taking snapshots, abandoning one that is being written.
+     */
+    void shutdown() {
+        this.executor.shutdownNow();
+    }
+}
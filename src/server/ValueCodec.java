@@ -0,0 +1,439 @@
+package server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The binary encoding of the values servers exchange and persist: operations, batches of operations,
+ * promises and batches of decisions. The same encoding is used by the NIO peer transport, the
+ * write-ahead log and, for its keys and values, the snapshots of the store.
+ *
+ * An encoded value starts with the version of the encoding and a tag naming its type. Numbers are
+ * varints, so small slots and counts take a single byte; the operation type is one opcode byte; strings
+ * are length-prefixed UTF-8, with 0 standing for null and n + 1 for a length of n. An operation sent
+ * with a request id flags its opcode and carries the id after its own, and a batch sent as one request
+ * has its own tag and carries the id before its operations. A transaction is an operation followed by
+ * its checks and its writes, each a count and then key and value strings, and a conditional write is
+ * one followed by its expected version plus one and its expected value. Lists and the results of
+ * conditional writes, which the store records for the requests it applied, have tags of their own too.
+ * Values of any other type fall back to Java serialization, and values written by Java serialization before this encoding
+ * existed are still read from the local write-ahead log. Values received from peers are never
+ * deserialized that way, since a crafted stream could run code on the server reading it.
+ */
+public final class ValueCodec {
+    private static final byte VERSION = 1;
+
+    // Tags of the encoded types
+    private static final byte NULL = 0;
+    private static final byte OPERATION = 1;
+    private static final byte BATCH = 2;
+    private static final byte PROMISE = 3;
+    private static final byte DECISIONS = 4;
+    private static final byte STRING = 5;
+    private static final byte REQUEST_BATCH = 6;
+    private static final byte LIST = 7;
+    private static final byte VERSIONED_RESULT = 8;
+    private static final byte SERIALIZED = 127;
+
+    // Opcodes of the operation types, in the order of OPERATION_TYPES
+    private static final String[] OPERATION_TYPES = {"NOOP", "GET", "PUT", "DELETE", "TXN", "VGET", "CAS"};
+    // Set on the opcode of an operation followed by the client id and sequence number of its request id
+    private static final int REQUEST_ID_FLAG = 0x40;
+
+    // First bytes of a Java serialization stream
+    private static final byte SERIALIZATION_MAGIC_0 = (byte) 0xAC;
+    private static final byte SERIALIZATION_MAGIC_1 = (byte) 0xED;
+
+    /**
+     * Not instantiable.
+     */
+    private ValueCodec() {
+    }
+
+    /**
+     * Encodes a value.
+     */
+    public static byte[] encode(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(VERSION);
+        writeValue(output, value);
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a value written by encode, or by Java serialization.
+     */
+    public static Object decode(byte[] bytes) throws IOException {
+        return decode(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Decodes a value written by encode, or by Java serialization, from part of an array.
+     */
+    public static Object decode(byte[] bytes, int offset, int length) throws IOException {
+        return decode(bytes, offset, length, true);
+    }
+
+    /**
+     * Decodes a value received from a peer, which must have been written by encode without falling back
+     * to Java serialization.
+     *
+     * @throws IOException If the value is invalid or holds a Java-serialized value.
+     */
+    public static Object decodeFromPeer(byte[] bytes) throws IOException {
+        return decode(bytes, 0, bytes.length, false);
+    }
+
+    /**
+     * Decodes a value from part of an array, reading Java-serialized values only if they are allowed.
+     */
+    private static Object decode(byte[] bytes, int offset, int length, boolean allowSerialized) throws IOException {
+        if (length >= 2 && bytes[offset] == SERIALIZATION_MAGIC_0 && bytes[offset + 1] == SERIALIZATION_MAGIC_1) {
+            return deserialize(bytes, offset, length, allowSerialized);
+        }
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes, offset, length));
+        byte version = input.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported value encoding version " + version);
+        }
+        return readValue(input, allowSerialized);
+    }
+
+    /**
+     * Writes a tagged value.
+     */
+    private static void writeValue(DataOutput output, Object value) throws IOException {
+        if (value == null) {
+            output.writeByte(NULL);
+        } else if (value instanceof Server.Operation) {
+            output.writeByte(OPERATION);
+            writeOperation(output, (Server.Operation) value);
+        } else if (value instanceof Server.Batch) {
+            Server.Batch batch = (Server.Batch) value;
+            List<Server.Operation> operations = batch.operations;
+            if (batch.requestId != null) {
+                output.writeByte(REQUEST_BATCH);
+                writeRequestId(output, batch.requestId);
+            } else {
+                output.writeByte(BATCH);
+            }
+            writeVarLong(output, operations.size());
+            for (Server.Operation operation : operations) {
+                writeOperation(output, operation);
+            }
+        } else if (value instanceof Server.Promise) {
+            Server.Promise promise = (Server.Promise) value;
+            output.writeByte(PROMISE);
+            writeVarLong(output, promise.vote);
+            writeVarLong(output, promise.acceptedSlots.size());
+            for (Map.Entry<Long, Server.Proposal> accepted : promise.acceptedSlots.entrySet()) {
+                writeVarLong(output, accepted.getKey());
+                writeVarLong(output, accepted.getValue().sequenceNumber);
+                writeValue(output, accepted.getValue().value);
+            }
+        } else if (value instanceof Server.Decisions) {
+            Server.Decisions decisions = (Server.Decisions) value;
+            output.writeByte(DECISIONS);
+            // Both are -1 when unknown, so they are shifted to stay unsigned
+            writeVarLong(output, decisions.highestSlot + 1);
+            writeVarLong(output, decisions.snapshotSlot + 1);
+            writeVarLong(output, decisions.decisions.size());
+            for (Map.Entry<Long, Object> decision : decisions.decisions.entrySet()) {
+                writeVarLong(output, decision.getKey());
+                writeValue(output, decision.getValue());
+            }
+        } else if (value instanceof String) {
+            output.writeByte(STRING);
+            writeString(output, (String) value);
+        } else if (value instanceof List) {
+            List<?> elements = (List<?>) value;
+            output.writeByte(LIST);
+            writeVarLong(output, elements.size());
+            for (Object element : elements) {
+                writeValue(output, element);
+            }
+        } else if (value instanceof VersionedResult) {
+            VersionedResult result = (VersionedResult) value;
+            output.writeByte(VERSIONED_RESULT);
+            output.writeBoolean(result.isApplied());
+            writeString(output, result.getValue());
+            writeVarLong(output, result.getVersion());
+        } else {
+            output.writeByte(SERIALIZED);
+            byte[] serialized = serialize(value);
+            writeVarLong(output, serialized.length);
+            output.write(serialized);
+        }
+    }
+
+    /**
+     * Reads a tagged value written by writeValue, reading Java-serialized values only if they are allowed.
+     */
+    private static Object readValue(DataInput input, boolean allowSerialized) throws IOException {
+        byte tag = input.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case OPERATION:
+                return readOperation(input);
+            case BATCH:
+            case REQUEST_BATCH: {
+                RequestId requestId = tag == REQUEST_BATCH ? readRequestId(input) : null;
+                int count = readCount(input);
+                List<Server.Operation> operations = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    operations.add(readOperation(input));
+                }
+                return new Server.Batch(operations, requestId);
+            }
+            case PROMISE: {
+                int vote = (int) readVarLong(input);
+                int count = readCount(input);
+                Map<Long, Server.Proposal> acceptedSlots = new TreeMap<>();
+                for (int i = 0; i < count; i++) {
+                    long slot = readVarLong(input);
+                    long sequenceNumber = readVarLong(input);
+                    acceptedSlots.put(slot, new Server.Proposal(sequenceNumber, readValue(input, allowSerialized)));
+                }
+                return new Server.Promise(vote, acceptedSlots);
+            }
+            case DECISIONS: {
+                long highestSlot = readVarLong(input) - 1;
+                long snapshotSlot = readVarLong(input) - 1;
+                int count = readCount(input);
+                Map<Long, Object> decisions = new TreeMap<>();
+                for (int i = 0; i < count; i++) {
+                    long slot = readVarLong(input);
+                    decisions.put(slot, readValue(input, allowSerialized));
+                }
+                return new Server.Decisions(decisions, highestSlot, snapshotSlot);
+            }
+            case STRING:
+                return readString(input);
+            case LIST: {
+                int count = readCount(input);
+                List<Object> elements = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    elements.add(readValue(input, allowSerialized));
+                }
+                return elements;
+            }
+            case VERSIONED_RESULT: {
+                boolean applied = input.readBoolean();
+                String resultValue = readString(input);
+                return new VersionedResult(applied, resultValue, readVarLong(input));
+            }
+            case SERIALIZED: {
+                byte[] serialized = new byte[readCount(input)];
+                input.readFully(serialized);
+                return deserialize(serialized, 0, serialized.length, allowSerialized);
+            }
+            default:
+                throw new IOException("Unknown value tag " + tag);
+        }
+    }
+
+    /**
+     * Writes an operation as its opcode, its id, its request id if it has one, its key and its value, then
+     * the checks and writes of a transaction or the precondition of a conditional write.
+     */
+    private static void writeOperation(DataOutput output, Server.Operation operation) throws IOException {
+        output.writeByte(opcodeOf(operation.type) | (operation.requestId != null ? REQUEST_ID_FLAG : 0));
+        output.writeLong(operation.id);
+        if (operation.requestId != null) {
+            writeRequestId(output, operation.requestId);
+        }
+        writeString(output, operation.key);
+        writeString(output, operation.value);
+        if (operation instanceof Server.Transaction) {
+            writeEntries(output, ((Server.Transaction) operation).checks);
+            writeEntries(output, ((Server.Transaction) operation).writes);
+        } else if (operation instanceof Server.ConditionalWrite) {
+            // The expected version is -1 when the value is compared, so it is shifted to stay unsigned
+            writeVarLong(output, ((Server.ConditionalWrite) operation).expectedVersion + 1);
+            writeString(output, ((Server.ConditionalWrite) operation).expectedValue);
+        }
+    }
+
+    /**
+     * Reads an operation written by writeOperation.
+     */
+    private static Server.Operation readOperation(DataInput input) throws IOException {
+        byte flaggedOpcode = input.readByte();
+        int opcode = flaggedOpcode & ~REQUEST_ID_FLAG;
+        if (flaggedOpcode < 0 || opcode >= OPERATION_TYPES.length) {
+            throw new IOException("Unknown operation opcode " + flaggedOpcode);
+        }
+        long id = input.readLong();
+        RequestId requestId = null;
+        if ((flaggedOpcode & REQUEST_ID_FLAG) != 0) {
+            requestId = readRequestId(input);
+        }
+        String key = readString(input);
+        String value = readString(input);
+        if ("TXN".equals(OPERATION_TYPES[opcode])) {
+            Map<String, String> checks = readEntries(input);
+            return new Server.Transaction(checks, readEntries(input), requestId, id);
+        } else if ("CAS".equals(OPERATION_TYPES[opcode])) {
+            long expectedVersion = readVarLong(input) - 1;
+            return new Server.ConditionalWrite(key, value, expectedVersion, readString(input), requestId, id);
+        }
+        return new Server.Operation(OPERATION_TYPES[opcode], key, value, requestId, id);
+    }
+
+    /**
+     * Writes a request id as its client id and its sequence number.
+     */
+    private static void writeRequestId(DataOutput output, RequestId requestId) throws IOException {
+        output.writeLong(requestId.getClientId());
+        writeVarLong(output, requestId.getSequence());
+    }
+
+    /**
+     * Reads a request id written by writeRequestId.
+     */
+    private static RequestId readRequestId(DataInput input) throws IOException {
+        long clientId = input.readLong();
+        return new RequestId(clientId, readVarLong(input));
+    }
+
+    /**
+     * Writes the entries of a map as their count followed by each key and value.
+     */
+    private static void writeEntries(DataOutput output, Map<String, String> entries) throws IOException {
+        writeVarLong(output, entries.size());
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            writeString(output, entry.getKey());
+            writeString(output, entry.getValue());
+        }
+    }
+
+    /**
+     * Reads entries written by writeEntries, in their order.
+     */
+    private static Map<String, String> readEntries(DataInput input) throws IOException {
+        int count = readCount(input);
+        Map<String, String> entries = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String key = readString(input);
+            entries.put(key, readString(input));
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the opcode of an operation type.
+     */
+    private static byte opcodeOf(String type) throws IOException {
+        for (byte opcode = 0; opcode < OPERATION_TYPES.length; opcode++) {
+            if (OPERATION_TYPES[opcode].equals(type)) {
+                return opcode;
+            }
+        }
+        throw new IOException("No opcode for the operation type " + type);
+    }
+
+    /**
+     * Writes a non-negative number in 7-bit groups, least significant first, the high bit of each byte
+     * telling whether another follows.
+     */
+    public static void writeVarLong(DataOutput output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    /**
+     * Reads a number written by writeVarLong.
+     */
+    public static long readVarLong(DataInput input) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte next = input.readByte();
+            value |= (long) (next & 0x7F) << shift;
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Reads a varint counting elements, which must fit an array.
+     */
+    private static int readCount(DataInput input) throws IOException {
+        long count = readVarLong(input);
+        if (count < 0 || count > Integer.MAX_VALUE - 8) {
+            throw new IOException("Invalid count " + count);
+        }
+        return (int) count;
+    }
+
+    /**
+     * Writes a string, which may be null, as its UTF-8 length plus one followed by its UTF-8 bytes.
+     */
+    static void writeString(DataOutput output, String value) throws IOException {
+        if (value == null) {
+            writeVarLong(output, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(output, bytes.length + 1L);
+        output.write(bytes);
+    }
+
+    /**
+     * Reads a string written by writeString.
+     */
+    static String readString(DataInput input) throws IOException {
+        int length = readCount(input);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Serializes a value of a type the encoding does not know with Java serialization.
+     */
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserializes a value written with Java serialization, if that is allowed.
+     */
+    private static Object deserialize(byte[] bytes, int offset, int length, boolean allowSerialized) throws IOException {
+        if (!allowSerialized) {
+            throw new IOException("Refusing to deserialize a Java-serialized value");
+        }
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes, offset, length))) {
+            return input.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown serialized value", e);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package server;
+
+import java.io.Serializable;
+
+/**
+ * The answer to a versioned read or a conditional write: whether the write was applied, and the value and
+ * version the key had once it was decided. A conditional write that was not applied returns the current
+ * value and version, so a client can retry a contended update right away without reading the key again.
+ */
+public class VersionedResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final boolean applied;
+    private final String value;
+    private final long version;
+
+    /**
+     * Constructs a versioned result.
+     *
+     * @param applied Whether the write was applied; always true for a read.
+     * @param value The value of the key, or null if it does not exist.
+     * @param version The version of the key, or 0 if it does not exist.
+     */
+    public VersionedResult(boolean applied, String value, long version) {
+        this.applied = applied;
+        this.value = value;
+        this.version = version;
+    }
+
+    /**
+     * Returns whether the write was applied, which it is only if its precondition held.
+     */
+    public boolean isApplied() {
+        return this.applied;
+    }
+
+    /**
+     * Returns the value of the key, after the write if it was applied, or null if it does not exist.
+     */
+    public String getValue() {
+        return this.value;
+    }
+
+    /**
+     * Returns the version of the key, after the write if it was applied, or 0 if it does not exist.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    @Override
+    public String toString() {
+        return "VersionedResult{" +
+                "applied=" + applied +
+                ", value='" + value + '\'' +
+                ", version=" + version +
+                '}';
+    }
+}
@@ -0,0 +1,483 @@
+package server;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log holding the acceptor state that Paxos requires to survive a restart: the promised
+ * sequence numbers, the values accepted in each slot and the learned decisions. An acceptor answers
+ * only once its record is on disk.
+ *
+ * Records are gathered in memory and written by whichever caller is waiting for them first, with a single
+ * fsync covering every record appended meanwhile (group commit), so concurrent prepare and accept calls
+ * share the cost of one fsync. Without group commit every record is written and forced on its own.
+ *
+ * Each record is framed as [length][CRC32][type][a][b][value], with the value encoded by ValueCodec, so
+ * a record torn by a crash is detected on recovery and cut off together with anything after it. The log
+ * is written in segments; once a snapshot covers a prefix of the replicated log, the closed segments
+ * are compacted. Only the last segment can be torn, since a segment is forced before the next one is
+ * started, so a damaged record in an earlier one fails recovery instead of being cut off.
+ *
+ * A failed write or fsync leaves it unknown which of the records it covered reached the disk, and
+ * retrying the fsync may report success for data that was already lost, so after the first failure
+ * the log refuses every later append and sync: an acceptor then stops answering instead of
+ * acknowledging records a restart would lose.
+ */
+class WriteAheadLog {
+
+    /**
+     * Receives the records of the log in the order they were written during recovery.
+     */
+    interface Replayer {
+        void promise(long sequenceNumber);
+
+        void accept(long sequenceNumber, long slot, Object value);
+
+        void learn(long slot, Object value);
+    }
+
+    // Record types
+    private static final byte PROMISE = 1;
+    private static final byte ACCEPT = 2;
+    private static final byte LEARN = 3;
+
+    // Length and checksum preceding the body of every record
+    private static final int HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final String name;
+    private final boolean groupCommit;
+
+    // Records appended but not written yet, the end positions of what was appended and made durable,
+    // and the segment file records are currently written to
+    private final Object lock = new Object();
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long appendedPosition;
+    private long durablePosition;
+    private boolean syncing;
+    private FileChannel channel;
+    private long segment;
+
+    // The first write or fsync that failed, after which the log is unusable, or null
+    private IOException failure;
+
+    /**
+     * Opens the log, creating its directory and first segment if they do not exist. The log is split in
+     * segment files named after the log, so the segments that are no longer written to can be compacted.
+     *
+     * @param directory The directory holding the segments.
+     * @param name The name of the log, which prefixes its segment files.
+     * @param groupCommit Whether concurrent records share one fsync, or each record is forced on its own.
+     */
+    WriteAheadLog(Path directory, String name, boolean groupCommit) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.name = name;
+        this.groupCommit = groupCommit;
+        List<Long> segments = this.segments();
+        this.segment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1);
+        this.channel = FileChannel.open(this.segmentPath(this.segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.channel.position(this.channel.size());
+    }
+
+    /**
+     * Reads every intact record of every segment in order, cuts off a torn tail of the last segment and
+     * positions the log for appending after its last intact record.
+     *
+     * @return The number of records replayed.
+     * @throws IOException If a segment before the last one is damaged.
+     */
+    int replay(Replayer replayer) throws IOException {
+        int[] records = {0};
+        long validLength = 0;
+        List<Long> segments = this.segments();
+        for (int i = 0; i < segments.size(); i++) {
+            RecordVisitor visitor = body -> {
+                this.dispatch(body, replayer);
+                records[0] += 1;
+            };
+            Path file = this.segmentPath(segments.get(i));
+            // Only the last segment can end with a record a crash tore
+            validLength = i == segments.size() - 1 ? readSegment(file, visitor) : readClosedSegment(file, visitor);
+        }
+
+        // Drop a record that was only partly written when the server stopped
+        synchronized (this.lock) {
+            this.channel.truncate(validLength);
+            this.channel.position(validLength);
+        }
+        return records[0];
+    }
+
+    /**
+     * Receives the body of each intact record of a segment.
+     */
+    private interface RecordVisitor {
+        void visit(byte[] body) throws IOException;
+    }
+
+    /**
+     * Reads the records of a segment that was closed by a rotation. Such a segment was forced before the
+     * next one was started, so a damaged record in it is corruption rather than a torn write, and
+     * skipping it would forget promises and accepts the acceptor already answered.
+     *
+     * @return The length of the segment.
+     * @throws IOException If the segment holds a damaged record.
+     */
+    private static long readClosedSegment(Path file, RecordVisitor visitor) throws IOException {
+        long validLength = readSegment(file, visitor);
+        long size = Files.size(file);
+        if (validLength != size) {
+            throw new IOException(file + " is corrupted at byte " + validLength + " of " + size + ", and it is not the last segment");
+        }
+        return validLength;
+    }
+
+    /**
+     * Reads the records of a segment up to its end or its first damaged record.
+     *
+     * @return The length of the segment covered by intact records.
+     */
+    private static long readSegment(Path file, RecordVisitor visitor) throws IOException {
+        long size = Files.size(file);
+        long validLength = 0;
+        CRC32 crc = new CRC32();
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(file), 1 << 20)) {
+            DataInputStream input = new DataInputStream(stream);
+            while (true) {
+                byte[] body;
+                try {
+                    int length = input.readInt();
+                    int checksum = input.readInt();
+                    if (length <= 0 || length > size) {
+                        break;
+                    }
+                    body = new byte[length];
+                    input.readFully(body);
+                    crc.reset();
+                    crc.update(body);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                visitor.visit(body);
+                validLength += HEADER_BYTES + body.length;
+            }
+        }
+        return validLength;
+    }
+
+    /**
+     * Closes the current segment once everything appended so far is on disk and starts writing a new one.
+     */
+    void rotate() throws IOException {
+        synchronized (this.lock) {
+            while (this.syncing) {
+                try {
+                    this.lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while rotating the write-ahead log", e);
+                }
+            }
+            this.checkNotFailed();
+            try {
+                writeFully(this.channel, ByteBuffer.wrap(this.pending.toByteArray()));
+                this.channel.force(false);
+            } catch (IOException e) {
+                this.failure = e;
+                throw e;
+            }
+            this.pending = new ByteArrayOutputStream();
+            this.durablePosition = this.appendedPosition;
+            this.channel.close();
+            this.segment += 1;
+            this.channel = FileChannel.open(this.segmentPath(this.segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            this.lock.notifyAll();
+        }
+    }
+
+    /**
+     * Rewrites the segments that are no longer written to without the records a snapshot made useless:
+     * the accepted values and decisions of slots up to the snapshot, and every promise but the highest.
+     * The compacted segment replaces the newest of them atomically before the older ones are deleted,
+     * so a crash at any point leaves every needed record on disk.
+     */
+    void compact(long throughSlot) throws IOException {
+        long current;
+        synchronized (this.lock) {
+            current = this.segment;
+        }
+        List<Long> closed = new ArrayList<>();
+        for (long number : this.segments()) {
+            if (number < current) {
+                closed.add(number);
+            }
+        }
+        if (closed.isEmpty()) {
+            return;
+        }
+
+        ByteArrayOutputStream kept = new ByteArrayOutputStream();
+        long[] highestPromise = {Long.MIN_VALUE};
+        for (long number : closed) {
+            readClosedSegment(this.segmentPath(number), body -> {
+                ByteBuffer buffer = ByteBuffer.wrap(body);
+                byte type = buffer.get();
+                long a = buffer.getLong();
+                long b = buffer.getLong();
+                if (type == PROMISE) {
+                    highestPromise[0] = Math.max(highestPromise[0], a);
+                } else if ((type == ACCEPT && b > throughSlot) || (type == LEARN && a > throughSlot)) {
+                    kept.write(frame(body).array());
+                }
+            });
+        }
+
+        Path target = this.segmentPath(closed.get(closed.size() - 1));
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel output = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            if (highestPromise[0] != Long.MIN_VALUE) {
+                writeFully(output, frame(body(PROMISE, highestPromise[0], 0, null)));
+            }
+            writeFully(output, ByteBuffer.wrap(kept.toByteArray()));
+            output.force(false);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        for (long number : closed.subList(0, closed.size() - 1)) {
+            Files.deleteIfExists(this.segmentPath(number));
+        }
+    }
+
+    /**
+     * Returns the number of bytes the segments take on disk.
+     */
+    long sizeOnDisk() throws IOException {
+        long size = 0;
+        for (long number : this.segments()) {
+            size += Files.size(this.segmentPath(number));
+        }
+        return size;
+    }
+
+    /**
+     * Returns the numbers of the segments of this log in ascending order.
+     */
+    private List<Long> segments() throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        String prefix = this.name + "-";
+        try (Stream<Path> files = Files.list(this.directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String fileName = file.getFileName().toString();
+                if (fileName.startsWith(prefix) && fileName.endsWith(".wal")) {
+                    try {
+                        numbers.add(Long.parseLong(fileName.substring(prefix.length(), fileName.length() - ".wal".length())));
+                    } catch (NumberFormatException e) {
+                        // Not a segment of this log
+                    }
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    /**
+     * Returns the file of a segment.
+     */
+    private Path segmentPath(long number) {
+        return this.directory.resolve(this.name + "-" + number + ".wal");
+    }
+
+    /**
+     * Hands one record body to the replayer.
+     */
+    private void dispatch(byte[] body, Replayer replayer) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        byte type = buffer.get();
+        long a = buffer.getLong();
+        long b = buffer.getLong();
+        switch (type) {
+            case PROMISE:
+                replayer.promise(a);
+                break;
+            case ACCEPT:
+                replayer.accept(a, b, ValueCodec.decode(body, buffer.position(), body.length - buffer.position()));
+                break;
+            case LEARN:
+                replayer.learn(a, ValueCodec.decode(body, buffer.position(), body.length - buffer.position()));
+                break;
+            default:
+                throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    /**
+     * Appends a promise. The record is durable once sync returns for the returned position.
+     */
+    long appendPromise(long sequenceNumber) throws IOException {
+        return this.append(PROMISE, sequenceNumber, 0, null);
+    }
+
+    /**
+     * Appends an accepted value. The record is durable once sync returns for the returned position.
+     */
+    long appendAccept(long sequenceNumber, long slot, byte[] value) throws IOException {
+        return this.append(ACCEPT, sequenceNumber, slot, value);
+    }
+
+    /**
+     * Appends a learned decision and waits until it is durable.
+     */
+    void learn(long slot, Object value) throws IOException {
+        this.sync(this.append(LEARN, slot, 0, ValueCodec.encode(value)));
+    }
+
+    /**
+     * Frames a record and queues it, or writes and forces it right away without group commit.
+     *
+     * @return The position the log has to be durable up to for the record to be durable.
+     */
+    private long append(byte type, long a, long b, byte[] value) throws IOException {
+        ByteBuffer record = frame(body(type, a, b, value));
+        synchronized (this.lock) {
+            this.checkNotFailed();
+            if (!this.groupCommit) {
+                try {
+                    writeFully(this.channel, record);
+                    this.channel.force(false);
+                } catch (IOException e) {
+                    this.failure = e;
+                    throw e;
+                }
+                this.appendedPosition += record.capacity();
+                this.durablePosition = this.appendedPosition;
+                return this.appendedPosition;
+            }
+            this.pending.write(record.array(), 0, record.capacity());
+            this.appendedPosition += record.capacity();
+            return this.appendedPosition;
+        }
+    }
+
+    /**
+     * Waits until every record up to the given position is on disk. The first caller to find records
+     * waiting writes all of them and forces the file once; callers arriving meanwhile wait for it and
+     * are covered by the same fsync if their records were already queued.
+     */
+    void sync(long position) throws IOException {
+        while (true) {
+            ByteArrayOutputStream batch;
+            long target;
+            synchronized (this.lock) {
+                while (this.syncing && this.durablePosition < position) {
+                    try {
+                        this.lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for the write-ahead log", e);
+                    }
+                }
+                if (this.durablePosition >= position) {
+                    return;
+                }
+                this.checkNotFailed();
+                this.syncing = true;
+                batch = this.pending;
+                this.pending = new ByteArrayOutputStream();
+                target = this.appendedPosition;
+            }
+
+            IOException failed = null;
+            try {
+                writeFully(this.channel, ByteBuffer.wrap(batch.toByteArray()));
+                this.channel.force(false);
+            } catch (IOException e) {
+                failed = e;
+            }
+
+            synchronized (this.lock) {
+                this.syncing = false;
+                if (failed == null) {
+                    this.durablePosition = target;
+                } else {
+                    // The batch is neither durable nor safe to write again after a partial write
+                    this.failure = failed;
+                }
+                this.lock.notifyAll();
+            }
+            if (failed != null) {
+                throw failed;
+            }
+        }
+    }
+
+    /**
+     * Throws if an earlier write or fsync failed. Must be called with the lock held.
+     */
+    private void checkNotFailed() throws IOException {
+        if (this.failure != null) {
+            throw new IOException("The write-ahead log is unusable after an earlier write failed", this.failure);
+        }
+    }
+
+    /**
+     * Builds the body of a record.
+     */
+    private static byte[] body(byte type, long a, long b, byte[] value) {
+        int valueLength = value == null ? 0 : value.length;
+        ByteBuffer body = ByteBuffer.allocate(17 + valueLength);
+        body.put(type).putLong(a).putLong(b);
+        if (value != null) {
+            body.put(value);
+        }
+        return body.array();
+    }
+
+    /**
+     * Prefixes a record body with its length and checksum.
+     */
+    private static ByteBuffer frame(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + body.length);
+        record.putInt(body.length).putInt((int) crc.getValue()).put(body);
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Writes a whole buffer to a file.
+     */
+    private static void writeFully(FileChannel output, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            output.write(buffer);
+        }
+    }
+
+    /**
+     * Closes the current segment. Records that were not synced are lost.
+     */
+    void close() throws IOException {
+        synchronized (this.lock) {
+            this.channel.close();
+        }
+    }
+}
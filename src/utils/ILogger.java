@@ -1,18 +1,139 @@
 package utils;
 
+import java.util.function.Supplier;
+
 /**
  * The interface Logger contains methods that all types of loggers should support.
+ *
+ * Messages have a level, and a message below the level enabled for the logger is dropped. The
+ * parameterized and Supplier forms only build the message once its level is known to be enabled, so
+ * that a disabled message costs a level check: parameterized messages replace each {} of the pattern
+ * with the next argument.
  */
 public interface ILogger {
+
+  /**
+   * The levels of messages, from the most detailed to the most severe
+   */
+  enum Level {
+    // Every step of every request
+    DEBUG,
+    // Events worth knowing about in a normal run, such as elections and recoveries
+    INFO,
+    // Failures the system recovers from
+    WARN,
+    // Failures it does not recover from
+    ERROR,
+    // Disables logging
+    OFF
+  }
+
+  /**
+   * Logs an event at INFO level.
+   *
+   * @param msg the message to be logged
+   */
+  default void log(String msg) {
+    this.log(Level.INFO, msg);
+  }
+
   /**
-   * Logs an event.
+   * Logs an event at a level.
    *
+   * @param level the level of the message
    * @param msg the message to be logged
    */
-  void log(String msg);
+  void log(Level level, String msg);
+
+  /**
+   * Whether messages of a level are logged.
+   *
+   * @param level the level of a message
+   */
+  boolean isEnabled(Level level);
+
+  /**
+   * Logs an event whose message is only built if its level is enabled.
+   *
+   * @param level the level of the message
+   * @param message builds the message to be logged
+   */
+  default void log(Level level, Supplier<String> message) {
+    if (this.isEnabled(level)) {
+      this.log(level, message.get());
+    }
+  }
+
+  /**
+   * Logs an event with one argument, formatted only if its level is enabled.
+   *
+   * @param level the level of the message
+   * @param pattern the message, with {} standing for the argument
+   */
+  default void log(Level level, String pattern, Object arg) {
+    if (this.isEnabled(level)) {
+      this.log(level, format(pattern, arg));
+    }
+  }
+
+  /**
+   * Logs an event with two arguments, formatted only if its level is enabled.
+   *
+   * @param level the level of the message
+   * @param pattern the message, with each {} standing for the next argument
+   */
+  default void log(Level level, String pattern, Object arg1, Object arg2) {
+    if (this.isEnabled(level)) {
+      this.log(level, format(pattern, arg1, arg2));
+    }
+  }
+
+  /**
+   * Logs an event with three arguments, formatted only if its level is enabled.
+   *
+   * @param level the level of the message
+   * @param pattern the message, with each {} standing for the next argument
+   */
+  default void log(Level level, String pattern, Object arg1, Object arg2, Object arg3) {
+    if (this.isEnabled(level)) {
+      this.log(level, format(pattern, arg1, arg2, arg3));
+    }
+  }
+
+  /**
+   * Returns a logger for a component, writing to the same destination with the level configured for
+   * that component. Closing it does not close this logger.
+   *
+   * @param name the name of the component
+   */
+  ILogger component(String name);
 
   /**
    * Stops this logger.
    */
   void close();
+
+  /**
+   * Replaces each {} of a pattern with the next argument; extra placeholders are kept as they are.
+   * The arguments are converted first, so the message is built in a buffer of its exact size.
+   */
+  static String format(String pattern, Object... args) {
+    String[] values = new String[args.length];
+    int length = pattern.length();
+    for (int i = 0; i < args.length; i++) {
+      values[i] = String.valueOf(args[i]);
+      length += values[i].length();
+    }
+    StringBuilder message = new StringBuilder(length);
+    int start = 0;
+    for (String value : values) {
+      int placeholder = pattern.indexOf("{}", start);
+      if (placeholder < 0) {
+        break;
+      }
+      message.append(pattern, start, placeholder).append(value);
+      start = placeholder + 2;
+    }
+    return message.append(pattern, start, pattern.length()).toString();
+  }
 }
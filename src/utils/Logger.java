@@ -1,21 +1,77 @@
 package utils;
 
+import java.io.File;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.logging.FileHandler;
-import java.util.logging.LogRecord;
-import java.util.logging.SimpleFormatter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Implements a logging utility wrapping the standard Java logging framework to
- * provide a simplified interface for logging messages with timestamp precision
- * to a specified file. This class is designed to be easily integrated into
- * various projects needing file-based logging with a uniform timestamp format.
+ * Implements an asynchronous file logger. A call to log only stores the message and its time in a
+ * bounded ring buffer; one writer thread per logger takes every message waiting at once, formats them
+ * with a timestamp and appends them to the log file in a single FileChannel write, so callers never wait
+ * for the disk. What happens when the buffer is full is set by the overflow policy.
+ *
+ * The buffer size and the overflow policy are read from the system properties paxos.log.bufferSize and
+ * paxos.log.overflowPolicy. Messages below the level set by paxos.log.level (INFO by default) are
+ * dropped before they are buffered; the loggers returned by component share this logger's buffer and
+ * writer, with their own level set by paxos.log.level.&lt;component&gt; when it is given.
  */
 public class Logger implements ILogger {
-  private java.util.logging.Logger logger;
-  private FileHandler fileHandler;
-  private static final String format = "MM-dd-yyyy HH:mm:ss.SSS";
+  public static final String BUFFER_SIZE_PROPERTY = "paxos.log.bufferSize";
+  public static final String OVERFLOW_POLICY_PROPERTY = "paxos.log.overflowPolicy";
+  public static final String LEVEL_PROPERTY = "paxos.log.level";
+  private static final String format = "MM-dd-yyyy HH:mm:ss";
+
+  // Once the buffer is this full, the SAMPLE policy keeps one message in SAMPLE_EVERY
+  private static final double SAMPLE_THRESHOLD = 0.75;
+  private static final int SAMPLE_EVERY = 16;
+  private static final int WRITE_BUFFER_BYTES = 64 << 10;
+
+  /**
+   * What log does when the buffer is full
+   */
+  public enum OverflowPolicy {
+    // Wait for the writer to make room, so no message is lost
+    BLOCK,
+    // Drop the message
+    DROP,
+    // Drop all but one message in 16 once the buffer is three quarters full, and every message once it is full
+    SAMPLE
+  }
+
+  private final OverflowPolicy overflowPolicy;
+  private final Level level;
+
+  // The ring buffer, guarded by lock
+  private final String[] messages;
+  private final long[] timestamps;
+  private int head;
+  private int size;
+  private long dropped;
+  private long sampled;
+  private boolean closed;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = this.lock.newCondition();
+  private final Condition notFull = this.lock.newCondition();
+
+  // Only used by the writer thread
+  private FileChannel channel;
+  private final TimestampFormatter timestampFormatter = new TimestampFormatter();
+  private final Thread writer;
+  private final Thread shutdownHook;
 
   /**
    * Constructs a Logger instance with specified name and log file.
@@ -24,63 +80,341 @@ public class Logger implements ILogger {
    * @param logFileName Path and name of the log file where messages will be written.
    */
   public Logger(String loggerName, String logFileName) {
-    this.createLog(loggerName, logFileName);
+    this(loggerName, logFileName, Integer.getInteger(BUFFER_SIZE_PROPERTY, 8192),
+        OverflowPolicy.valueOf(System.getProperty(OVERFLOW_POLICY_PROPERTY, OverflowPolicy.BLOCK.name()).toUpperCase()));
   }
 
   /**
-   * Initializes the logger and its file handler.
-   * Sets up the file handler to append to the specified log file and formats log messages
-   * to include a precise timestamp followed by the message content.
+   * Constructs a Logger instance with an explicit buffer size and overflow policy.
+   *
+   * @param loggerName     Name of the logger, which names its writer thread.
+   * @param logFileName    Path and name of the log file where messages will be written.
+   * @param bufferSize     How many messages can wait for the writer.
+   * @param overflowPolicy What log does when that many messages are waiting.
+   */
+  public Logger(String loggerName, String logFileName, int bufferSize, OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+    this.level = levelOf(LEVEL_PROPERTY, Level.INFO);
+    this.messages = new String[bufferSize];
+    this.timestamps = new long[bufferSize];
+    this.createLog(logFileName);
+    this.writer = new Thread(this::writeLoop, "log-writer-" + loggerName);
+    this.writer.setDaemon(true);
+    this.writer.start();
+    // Write what is still buffered when the JVM exits without closing the logger
+    this.shutdownHook = new Thread(this::close, "log-flush-" + loggerName);
+    Runtime.getRuntime().addShutdownHook(this.shutdownHook);
+  }
+
+  /**
+   * Opens the log file for appending, creating the logs directory if needed.
    *
-   * @param loggerName  Name of the logger for internal identification.
    * @param logFileName Path and name of the log file for output.
    */
-  private void createLog(String loggerName, String logFileName) {
-    this.logger = java.util.logging.Logger.getLogger(loggerName);
+  private void createLog(String logFileName) {
     try {
       String directoryPath = "logs";
-      java.io.File directory = new java.io.File(directoryPath);
+      File directory = new File(directoryPath);
       if (!directory.exists()) {
         directory.mkdirs();
       }
+      String fullPath = directoryPath + File.separator + logFileName;
+      this.channel = FileChannel.open(Paths.get(fullPath), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    } catch (IOException e) {
+      System.err.println(this.timestampFormatter.format(System.currentTimeMillis()) + " - " + e.getMessage());
+      e.printStackTrace();
+    }
+  }
 
-      String fullPath = directoryPath + java.io.File.separator + logFileName;
+  /**
+   * Reads a level from a system property.
+   *
+   * @param property     The name of the property.
+   * @param defaultLevel The level when the property is not set.
+   */
+  private static Level levelOf(String property, Level defaultLevel) {
+    String level = System.getProperty(property);
+    return level == null ? defaultLevel : Level.valueOf(level.trim().toUpperCase());
+  }
 
-      this.fileHandler = new FileHandler(fullPath, true);
+  /**
+   * Logs a message if its level is enabled. Messages are written with the time of this call.
+   *
+   * @param level The level of the message.
+   * @param msg   The message string to log.
+   */
+  @Override
+  public void log(Level level, String msg) {
+    if (this.isEnabled(level)) {
+      this.append(msg);
+    }
+  }
 
-      this.fileHandler.setFormatter(new SimpleFormatter() {
-        @Override
-        public String format(LogRecord record) {
-          SimpleDateFormat simpleDateFormat = new SimpleDateFormat(Logger.format);
-          return simpleDateFormat.format(System.currentTimeMillis()) + " - " + record.getMessage() + "\n";
-        }
-      });
+  /**
+   * Whether messages of a level are logged.
+   *
+   * @param level The level of a message.
+   */
+  @Override
+  public boolean isEnabled(Level level) {
+    return level.compareTo(this.level) >= 0 && level != Level.OFF;
+  }
 
-      this.logger.addHandler(this.fileHandler);
-    } catch (IOException e) {
-      SimpleDateFormat simpleDateFormat = new SimpleDateFormat(Logger.format);
-      System.err.println(simpleDateFormat.format(System.currentTimeMillis()) + " - " + e.getMessage());
-      e.printStackTrace();
-    }
+  /**
+   * Returns a logger for a component, which writes through this logger at the level set by
+   * paxos.log.level.&lt;name&gt;, or at this logger's level.
+   *
+   * @param name The name of the component.
+   */
+  @Override
+  public ILogger component(String name) {
+    return new ComponentLogger(this, levelOf(LEVEL_PROPERTY + "." + name, this.level));
   }
 
   /**
-   * Logs a message at INFO level.
-   * Messages logged through this method are automatically formatted to include a timestamp.
+   * Stores a message in the buffer, with the time of this call.
    *
    * @param msg The message string to log.
    */
-  @Override
-  public void log(String msg) {
-    this.logger.info(msg);
+  private void append(String msg) {
+    long now = System.currentTimeMillis();
+    this.lock.lock();
+    try {
+      if (this.closed) {
+        return;
+      }
+      int capacity = this.messages.length;
+      if (this.overflowPolicy == OverflowPolicy.SAMPLE && this.size >= capacity * SAMPLE_THRESHOLD
+          && this.sampled++ % SAMPLE_EVERY != 0) {
+        this.dropped += 1;
+        return;
+      }
+      while (this.size == capacity) {
+        if (this.overflowPolicy != OverflowPolicy.BLOCK) {
+          this.dropped += 1;
+          return;
+        }
+        this.notFull.awaitUninterruptibly();
+        if (this.closed) {
+          return;
+        }
+      }
+      int tail = (this.head + this.size) % capacity;
+      this.messages[tail] = msg;
+      this.timestamps[tail] = now;
+      this.size += 1;
+      if (this.size == 1) {
+        this.notEmpty.signal();
+      }
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Runs the writer thread: takes every buffered message at once and writes them, until the logger is
+   * closed and the buffer drained.
+   */
+  private void writeLoop() {
+    int capacity = this.messages.length;
+    String[] batch = new String[capacity];
+    long[] batchTimestamps = new long[capacity];
+    StringBuilder text = new StringBuilder(WRITE_BUFFER_BYTES);
+    ByteBuffer bytes = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+    CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    while (true) {
+      int count;
+      long droppedMessages;
+      this.lock.lock();
+      try {
+        while (this.size == 0 && !this.closed) {
+          this.notEmpty.awaitUninterruptibly();
+        }
+        if (this.size == 0) {
+          return;
+        }
+        // Copy the messages out in at most two runs, as they may wrap around the end of the ring
+        count = this.size;
+        int firstRun = Math.min(count, capacity - this.head);
+        System.arraycopy(this.messages, this.head, batch, 0, firstRun);
+        System.arraycopy(this.timestamps, this.head, batchTimestamps, 0, firstRun);
+        System.arraycopy(this.messages, 0, batch, firstRun, count - firstRun);
+        System.arraycopy(this.timestamps, 0, batchTimestamps, firstRun, count - firstRun);
+        Arrays.fill(this.messages, this.head, this.head + firstRun, null);
+        Arrays.fill(this.messages, 0, count - firstRun, null);
+        this.head = (this.head + count) % capacity;
+        this.size = 0;
+        droppedMessages = this.dropped;
+        this.dropped = 0;
+        this.notFull.signalAll();
+      } finally {
+        this.lock.unlock();
+      }
+
+      text.setLength(0);
+      for (int i = 0; i < count; i++) {
+        this.timestampFormatter.appendTo(text, batchTimestamps[i]).append(" - ").append(batch[i]).append('\n');
+        batch[i] = null;
+      }
+      if (droppedMessages > 0) {
+        this.timestampFormatter.appendTo(text, System.currentTimeMillis())
+            .append(" - > ").append(droppedMessages).append(" log messages were dropped (buffer full)\n");
+      }
+      this.write(text, bytes, encoder);
+    }
+  }
+
+  /**
+   * Encodes the formatted messages and appends them to the log file.
+   */
+  private void write(StringBuilder text, ByteBuffer bytes, CharsetEncoder encoder) {
+    if (this.channel == null) {
+      return;
+    }
+    try {
+      CharBuffer chars = CharBuffer.wrap(text);
+      encoder.reset();
+      CoderResult result;
+      do {
+        result = encoder.encode(chars, bytes, true);
+        if (result.isUnderflow()) {
+          encoder.flush(bytes);
+        }
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+          this.channel.write(bytes);
+        }
+        bytes.clear();
+      } while (result.isOverflow());
+    } catch (IOException e) {
+      System.err.println("> Error: could not write the log: " + e.getMessage());
+    }
   }
 
   /**
-   * Closes the FileHandler to properly release resources and flush any buffered log entries to the file.
-   * Should be called before the Logger instance is discarded to ensure all messages are written to the log file.
+   * Writes the messages still buffered, then closes the log file. Messages logged afterwards are ignored.
    */
   @Override
   public void close() {
-    this.fileHandler.close();
+    this.lock.lock();
+    try {
+      if (this.closed) {
+        return;
+      }
+      this.closed = true;
+      this.notEmpty.signal();
+      this.notFull.signalAll();
+    } finally {
+      this.lock.unlock();
+    }
+    try {
+      this.writer.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (Thread.currentThread() != this.shutdownHook) {
+      try {
+        Runtime.getRuntime().removeShutdownHook(this.shutdownHook);
+      } catch (IllegalStateException e) {
+        // The JVM is already shutting down
+      }
+    }
+    if (this.channel != null) {
+      try {
+        this.channel.close();
+      } catch (IOException e) {
+        System.err.println("> Error: could not close the log: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * A logger for one component, with its own level, writing through the logger that created it
+   */
+  private static final class ComponentLogger implements ILogger {
+    private final Logger logger;
+    private final Level level;
+
+    ComponentLogger(Logger logger, Level level) {
+      this.logger = logger;
+      this.level = level;
+    }
+
+    @Override
+    public void log(Level level, String msg) {
+      if (this.isEnabled(level)) {
+        this.logger.append(msg);
+      }
+    }
+
+    @Override
+    public boolean isEnabled(Level level) {
+      return level.compareTo(this.level) >= 0 && level != Level.OFF;
+    }
+
+    @Override
+    public ILogger component(String name) {
+      return new ComponentLogger(this.logger, levelOf(LEVEL_PROPERTY + "." + name, this.level));
+    }
+
+    /**
+     * Does nothing: the logger the component writes through is shared with the other components and
+     * is closed by its owner.
+     */
+    @Override
+    public void close() {
+    }
+  }
+
+  /**
+   * Formats timestamps as "MM-dd-yyyy HH:mm:ss.SSS". The date and time down to the second is formatted
+   * once per second and cached; only the milliseconds are appended for each message. It is safe to share
+   * between threads, since the cache is replaced as a whole.
+   */
+  private static final class TimestampFormatter {
+    private static final DateTimeFormatter SECONDS = DateTimeFormatter.ofPattern(format).withZone(ZoneId.systemDefault());
+
+    private volatile CachedSecond cached = new CachedSecond(Long.MIN_VALUE, "");
+
+    /**
+     * Appends the timestamp of a time in milliseconds.
+     */
+    StringBuilder appendTo(StringBuilder text, long millis) {
+      long second = Math.floorDiv(millis, 1000);
+      CachedSecond current = this.cached;
+      if (current.second != second) {
+        current = new CachedSecond(second, SECONDS.format(Instant.ofEpochSecond(second)) + ".");
+        this.cached = current;
+      }
+      int milliOfSecond = Math.floorMod(millis, 1000);
+      text.append(current.prefix);
+      if (milliOfSecond < 100) {
+        text.append('0');
+      }
+      if (milliOfSecond < 10) {
+        text.append('0');
+      }
+      return text.append(milliOfSecond);
+    }
+
+    /**
+     * Formats a timestamp on its own.
+     */
+    String format(long millis) {
+      return this.appendTo(new StringBuilder(24), millis).toString();
+    }
+
+    /**
+     * A second and its formatted date and time
+     */
+    private static final class CachedSecond {
+      final long second;
+      final String prefix;
+
+      CachedSecond(long second, String prefix) {
+        this.second = second;
+        this.prefix = prefix;
+      }
+    }
   }
 }